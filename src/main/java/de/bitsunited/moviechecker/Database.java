@@ -17,21 +17,42 @@ package de.bitsunited.moviechecker;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLOutputFactory;
@@ -39,25 +60,45 @@ import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.XMLStreamWriter;
 
+import de.bitsunited.moviechecker.event.DatabaseLoadEvent;
+import de.bitsunited.moviechecker.event.DatabaseSaveEvent;
+import de.bitsunited.moviechecker.probe.MediaInfo;
+
 public class Database {
 
-    private static class Entry {
-        private final Path path;
+    public static class Entry {
+        private final PathTrie.Node node;
         private final Instant time;
+        private final Long size;
+        private final String fileKey;
         private final String stdOut;
         private final String errOut;
+        private final String digest;
+        private final Instant digestTime;
 
-        public Entry(Path path, Instant time, String stdOut, String errOut) {
-            this.path = Objects.requireNonNull(path);
+        Entry(PathTrie.Node node, Instant time, Long size, String fileKey, String stdOut, String errOut, String digest, Instant digestTime) {
+            this.node = Objects.requireNonNull(node);
             this.time = time;
+            this.size = size;
+            this.fileKey = fileKey;
             this.stdOut = stdOut;
             this.errOut = errOut;
+            this.digest = digest;
+            this.digestTime = digestTime;
         }
 
         public Instant getTime() {
             return time;
         }
 
+        public Long getSize() {
+            return size;
+        }
+
+        public String getFileKey() {
+            return fileKey;
+        }
+
         public String getStdOut() {
             return stdOut;
         }
@@ -66,16 +107,49 @@ public class Database {
             return errOut;
         }
 
+        public String getDigest() {
+            return digest;
+        }
+
+        /**
+         * Returns the modification time of the file when the digest was computed.
+         */
+        public Instant getDigestTime() {
+            return digestTime;
+        }
+
         public Path getPath() {
-            return path;
+            return node.toPath();
+        }
+
+        PathTrie.Node getNode() {
+            return node;
+        }
+
+        /**
+         * Returns the entry for the node of another trie.
+         */
+        Entry bind(PathTrie.Node otherNode) {
+            return otherNode == node ? this : new Entry(otherNode, time, size, fileKey, stdOut, errOut, digest, digestTime);
+        }
+
+        /**
+         * Parses the recorded probe output on every call, the result is not kept so entries stay small.
+         */
+        public MediaInfo getMediaInfo() {
+            return MediaInfo.parse(errOut);
         }
 
         @Override
         public int hashCode() {
             final int prime = 31;
             int result = 1;
+            result = prime * result + ((digest == null) ? 0 : digest.hashCode());
+            result = prime * result + ((digestTime == null) ? 0 : digestTime.hashCode());
             result = prime * result + ((errOut == null) ? 0 : errOut.hashCode());
-            result = prime * result + ((path == null) ? 0 : path.hashCode());
+            result = prime * result + ((fileKey == null) ? 0 : fileKey.hashCode());
+            result = prime * result + getPath().hashCode();
+            result = prime * result + ((size == null) ? 0 : size.hashCode());
             result = prime * result + ((stdOut == null) ? 0 : stdOut.hashCode());
             result = prime * result + ((time == null) ? 0 : time.hashCode());
             return result;
@@ -93,6 +167,20 @@ public class Database {
                 return false;
             }
             Entry other = (Entry) obj;
+            if (digest == null) {
+                if (other.digest != null) {
+                    return false;
+                }
+            } else if (!digest.equals(other.digest)) {
+                return false;
+            }
+            if (digestTime == null) {
+                if (other.digestTime != null) {
+                    return false;
+                }
+            } else if (!digestTime.equals(other.digestTime)) {
+                return false;
+            }
             if (errOut == null) {
                 if (other.errOut != null) {
                     return false;
@@ -100,11 +188,21 @@ public class Database {
             } else if (!errOut.equals(other.errOut)) {
                 return false;
             }
-            if (path == null) {
-                if (other.path != null) {
+            if (fileKey == null) {
+                if (other.fileKey != null) {
                     return false;
                 }
-            } else if (!path.equals(other.path)) {
+            } else if (!fileKey.equals(other.fileKey)) {
+                return false;
+            }
+            if (node != other.node && !getPath().equals(other.getPath())) {
+                return false;
+            }
+            if (size == null) {
+                if (other.size != null) {
+                    return false;
+                }
+            } else if (!size.equals(other.size)) {
                 return false;
             }
             if (stdOut == null) {
@@ -125,7 +223,166 @@ public class Database {
         }
     }
 
-    private final Map<Path, Entry> entryMap;
+    /**
+     * Record of a file that is not media, kept for its modification time and size so it is not classified again.
+     */
+    public static class NonMedia {
+        private final Instant time;
+        private final long size;
+
+        public NonMedia(Instant time, long size) {
+            this.time = Objects.requireNonNull(time);
+            this.size = size;
+        }
+
+        public Instant getTime() {
+            return time;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(time, size);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            NonMedia other = (NonMedia) obj;
+            return size == other.size && time.equals(other.time);
+        }
+    }
+
+    private static class Snapshot {
+        private final long version;
+        private final PathTrie trie;
+        private final ShardScheme shardScheme;
+        private final Map<String, Long> shardVersionMap;
+        private final boolean partial;
+        private final long bytes;
+
+        public Snapshot(long version, PathTrie trie, long bytes) {
+            this(version, trie, null, Collections.emptyMap(), false, bytes);
+        }
+
+        public Snapshot(long version, PathTrie trie, ShardScheme shardScheme, Map<String, Long> shardVersionMap, boolean partial, long bytes) {
+            this.version = version;
+            this.trie = trie;
+            this.shardScheme = shardScheme;
+            this.shardVersionMap = shardVersionMap;
+            this.partial = partial;
+            this.bytes = bytes;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public PathTrie getTrie() {
+            return trie;
+        }
+
+        public ShardScheme getShardScheme() {
+            return shardScheme;
+        }
+
+        /**
+         * Returns the versions of the shards read.
+         */
+        public Map<String, Long> getShardVersionMap() {
+            return shardVersionMap;
+        }
+
+        /**
+         * Returns true if some shards were left out.
+         */
+        public boolean isPartial() {
+            return partial;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    /**
+     * Content of the file of a sharded database, it lists the shard files next to it by their keys.
+     */
+    private static class Manifest {
+        private final long version;
+        private final ShardScheme shardScheme;
+        private final Map<String, Shard> shardMap;
+
+        public Manifest(long version, ShardScheme shardScheme, Map<String, Shard> shardMap) {
+            this.version = version;
+            this.shardScheme = shardScheme;
+            this.shardMap = shardMap;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public ShardScheme getShardScheme() {
+            return shardScheme;
+        }
+
+        public Map<String, Shard> getShardMap() {
+            return shardMap;
+        }
+    }
+
+    private static class Shard {
+        private final String file;
+        private final long version;
+        private final int entries;
+
+        public Shard(String file, long version, int entries) {
+            this.file = file;
+            this.version = version;
+            this.entries = entries;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+    }
+
+    private static final Map<Path, Lock> PROCESS_LOCK_MAP = new ConcurrentHashMap<>();
+
+    private static final int MAX_LOAD_ATTEMPTS = 3;
+
+    private static final int ENTRY_CHUNK_SIZE = 1024;
+
+    private PathTrie trie;
+
+    // Changes since the last load or save, removed entries are mapped to null
+    private final Map<Path, Entry> changeMap;
+    private final Map<Path, NonMedia> nonMediaChangeMap;
+
+    private long version;
+
+    // Null for a single file, otherwise the versions of the loaded shards
+    private ShardScheme shardScheme;
+    private final Map<String, Long> shardVersionMap;
+    private boolean partial;
+    private boolean reshard;
 
     private boolean dirty;
 
@@ -141,17 +398,25 @@ public class Database {
         this.persistencePath = Objects.requireNonNull(persistencePath);
         this.autoSaveExecutor = autoSaveExecutor;
 
-        this.entryMap = new HashMap<>();
+        this.trie = new PathTrie();
+        this.changeMap = new HashMap<>();
+        this.nonMediaChangeMap = new HashMap<>();
+        this.shardVersionMap = new HashMap<>();
         this.lock = new ReentrantReadWriteLock();
 
+        this.version = 0;
         this.dirty = false;
         this.autoSave = false;
     }
 
+    public Path getPersistencePath() {
+        return persistencePath;
+    }
+
     public boolean containsEntry(Path path) {
         lock.readLock().lock();
         try {
-            return entryMap.get(path) != null;
+            return trie.get(path) != null;
         } finally {
             lock.readLock().unlock();
         }
@@ -160,17 +425,37 @@ public class Database {
     public Instant getEntryTime(Path path) {
         lock.readLock().lock();
         try {
-            Entry entry = entryMap.get(path);
+            Entry entry = trie.get(path);
             return entry != null ? entry.getTime() : null;
         } finally {
             lock.readLock().unlock();
         }
     }
 
+    public Long getEntrySize(Path path) {
+        lock.readLock().lock();
+        try {
+            Entry entry = trie.get(path);
+            return entry != null ? entry.getSize() : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public String getEntryFileKey(Path path) {
+        lock.readLock().lock();
+        try {
+            Entry entry = trie.get(path);
+            return entry != null ? entry.getFileKey() : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     public String getEntryStdOut(Path path) {
         lock.readLock().lock();
         try {
-            Entry entry = entryMap.get(path);
+            Entry entry = trie.get(path);
             return entry != null ? entry.getStdOut() : null;
         } finally {
             lock.readLock().unlock();
@@ -180,7 +465,7 @@ public class Database {
     public String getEntryErrOut(Path path) {
         lock.readLock().lock();
         try {
-            Entry entry = entryMap.get(path);
+            Entry entry = trie.get(path);
             return entry != null ? entry.getErrOut() : null;
         } finally {
             lock.readLock().unlock();
@@ -188,22 +473,61 @@ public class Database {
     }
 
     public void addEntry(Path path, Instant time, String stdOut, String errOut) {
+        addEntry(path, time, null, null, stdOut, errOut);
+    }
+
+    public void addEntry(Path path, Instant time, Long size, String fileKey, String stdOut, String errOut) {
         Objects.requireNonNull(path);
 
         lock.writeLock().lock();
         try {
-            Entry entry = entryMap.get(path);
+            // The digest stays, it records the modification time it belongs to
+            PathTrie.Node node = trie.findOrCreate(path);
+            Entry oldEntry = node.getEntry();
+            putEntry(new Entry(node, time, size, fileKey, stdOut, errOut, oldEntry != null ? oldEntry.getDigest() : null,
+                    oldEntry != null ? oldEntry.getDigestTime() : null));
+            deleteNonMedia(path);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        autoSave();
+    }
+
+    public String getEntryDigest(Path path) {
+        lock.readLock().lock();
+        try {
+            Entry entry = trie.get(path);
+            return entry != null ? entry.getDigest() : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Instant getEntryDigestTime(Path path) {
+        lock.readLock().lock();
+        try {
+            Entry entry = trie.get(path);
+            return entry != null ? entry.getDigestTime() : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Records the digest of the file content at the given modification time. Does nothing if there is no entry.
+     */
+    public void setEntryDigest(Path path, String digest, Instant digestTime) {
+        Objects.requireNonNull(path);
+
+        lock.writeLock().lock();
+        try {
+            Entry entry = trie.get(path);
             if (entry == null) {
-                entry = new Entry(path, time, stdOut, errOut);
-                entryMap.put(path, entry);
-                dirty = true;
-            } else {
-                Entry newEntry = new Entry(path, time, stdOut, errOut);
-                if (!entry.equals(newEntry)) {
-                    entryMap.put(path, newEntry);
-                    dirty = true;
-                }
+                return;
             }
+            putEntry(new Entry(entry.getNode(), entry.getTime(), entry.getSize(), entry.getFileKey(), entry.getStdOut(), entry.getErrOut(), digest,
+                    digestTime));
         } finally {
             lock.writeLock().unlock();
         }
@@ -216,7 +540,154 @@ public class Database {
 
         lock.writeLock().lock();
         try {
-            dirty |= entryMap.remove(path) != null;
+            deleteEntry(path);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        autoSave();
+    }
+
+    public void addEntries(Database source, Predicate<Path> filter) {
+        addEntries(source, null, filter);
+    }
+
+    /**
+     * Copies the matching entries below the directory from the source, all matching entries if the directory is
+     * {@code null}.
+     */
+    public void addEntries(Database source, Path directory, Predicate<Path> filter) {
+        Objects.requireNonNull(source);
+        Objects.requireNonNull(filter);
+
+        List<Entry> list = new ArrayList<>();
+        Map<Path, NonMedia> nonMediaMap = new HashMap<>();
+        source.lock.readLock().lock();
+        try {
+            source.trie.forEachUnder(directory, e -> {
+                if (filter.test(e.getPath())) {
+                    list.add(e);
+                }
+            });
+            source.trie.forEachNonMediaUnder(directory, n -> {
+                Path path = n.toPath();
+                if (filter.test(path)) {
+                    nonMediaMap.put(path, n.getNonMedia());
+                }
+            });
+        } finally {
+            source.lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            list.forEach(e -> {
+                putEntry(e.bind(trie.findOrCreate(e.getPath())));
+                deleteNonMedia(e.getPath());
+            });
+            nonMediaMap.forEach((p, n) -> {
+                deleteEntry(p);
+                putNonMedia(p, n);
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        autoSave();
+    }
+
+    public void removeEntries(Predicate<Path> filter) {
+        removeEntries(null, filter);
+    }
+
+    /**
+     * Removes the matching entries below the directory, all matching entries if the directory is {@code null}. Returns
+     * the number of removed entries.
+     */
+    public int removeEntries(Path directory, Predicate<Path> filter) {
+        Objects.requireNonNull(filter);
+
+        int count;
+        lock.writeLock().lock();
+        try {
+            List<Path> pathList = trie.entriesUnder(directory).stream().map(Entry::getPath).filter(filter).collect(Collectors.toList());
+            pathList.forEach(p -> deleteEntry(p));
+            count = pathList.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        autoSave();
+        return count;
+    }
+
+    public int removeUnder(Path directory) {
+        return removeEntries(Objects.requireNonNull(directory), p -> true);
+    }
+
+    /**
+     * Returns the entries below the directory in path order.
+     */
+    public List<Entry> entriesUnder(Path directory) {
+        Objects.requireNonNull(directory);
+
+        lock.readLock().lock();
+        try {
+            return trie.entriesUnder(directory);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int countUnder(Path directory) {
+        Objects.requireNonNull(directory);
+
+        lock.readLock().lock();
+        try {
+            DirectoryStats stats = trie.getStats(directory);
+            return stats != null ? (int) stats.getFileCount() : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void putEntry(Entry entry) {
+        Entry oldEntry = trie.put(entry);
+        if (!entry.equals(oldEntry)) {
+            changeMap.put(entry.getPath(), entry);
+            dirty = true;
+        }
+    }
+
+    private void deleteEntry(Path path) {
+        if (trie.remove(path) != null) {
+            changeMap.put(path, null);
+            dirty = true;
+        }
+    }
+
+    /**
+     * Returns true if the file is recorded as not being media with the given modification time and size.
+     */
+    public boolean isNonMedia(Path path, Instant time, long size) {
+        lock.readLock().lock();
+        try {
+            return new NonMedia(time, size).equals(trie.getNonMedia(path));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Records the file as not being media and removes its entry.
+     */
+    public void addNonMedia(Path path, Instant time, long size) {
+        Objects.requireNonNull(path);
+
+        lock.writeLock().lock();
+        try {
+            deleteEntry(path);
+            putNonMedia(path, new NonMedia(time, size));
         } finally {
             lock.writeLock().unlock();
         }
@@ -224,17 +695,139 @@ public class Database {
         autoSave();
     }
 
+    /**
+     * Removes the non media records below the directory, all if it is {@code null}, whose path matches the filter.
+     */
+    public int removeNonMedia(Path directory, Predicate<Path> filter) {
+        Objects.requireNonNull(filter);
+
+        int count;
+        lock.writeLock().lock();
+        try {
+            List<Path> pathList = new ArrayList<>();
+            trie.forEachNonMediaUnder(directory, n -> pathList.add(n.toPath()));
+            pathList.removeIf(filter.negate());
+            pathList.forEach(p -> deleteNonMedia(p));
+            count = pathList.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        autoSave();
+        return count;
+    }
+
+    private void putNonMedia(Path path, NonMedia nonMedia) {
+        if (!nonMedia.equals(trie.putNonMedia(trie.findOrCreate(path), nonMedia))) {
+            nonMediaChangeMap.put(path, nonMedia);
+            dirty = true;
+        }
+    }
+
+    private void deleteNonMedia(Path path) {
+        if (trie.removeNonMedia(path) != null) {
+            nonMediaChangeMap.put(path, null);
+            dirty = true;
+        }
+    }
+
+    public boolean containsNonMedia(Path path) {
+        lock.readLock().lock();
+        try {
+            return trie.getNonMedia(path) != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getNonMediaCount() {
+        lock.readLock().lock();
+        try {
+            return trie.getNonMediaCount();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a copy of the rollup of all entries.
+     */
+    public DirectoryStats getStats() {
+        lock.readLock().lock();
+        try {
+            DirectoryStats stats = trie.getStats(null);
+            return stats != null ? new DirectoryStats(stats) : new DirectoryStats();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a copy of the rollup of all entries below the given directory or {@code null} if there are none.
+     */
+    public DirectoryStats getDirectoryStats(Path directory) {
+        lock.readLock().lock();
+        try {
+            DirectoryStats stats = trie.getStats(directory);
+            return stats != null ? new DirectoryStats(stats) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the directories directly below the given one that contain entries, sorted by path.
+     */
+    public List<Path> getSubdirectoryList(Path directory) {
+        lock.readLock().lock();
+        try {
+            PathTrie.Node node = trie.find(directory);
+            List<Path> list = new ArrayList<>();
+            if (node != null) {
+                node.getChildren().stream().filter(n -> n.getStats() != null).forEach(n -> list.add(n.toPath()));
+            }
+            return list;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     public List<Path> getPathList() {
         lock.readLock().lock();
         try {
-            List<Path> list = new ArrayList<>(entryMap.keySet());
-            Collections.sort(list);
+            List<Path> list = new ArrayList<>(trie.size());
+            trie.forEachPathUnder(null, (p, e) -> list.add(p));
             return list;
         } finally {
             lock.readLock().unlock();
         }
     }
 
+    /**
+     * Passes all entries in path order to the given action. The entries are taken in chunks under the read lock and
+     * passed without holding it, entries changed in the meantime may or may not be passed.
+     */
+    public void forEachEntry(Consumer<Entry> action) {
+        List<Entry> chunk = new ArrayList<>(ENTRY_CHUNK_SIZE);
+        Path lastPath = null;
+        do {
+            chunk.clear();
+            lock.readLock().lock();
+            try {
+                trie.forEachAfter(lastPath, e -> {
+                    chunk.add(e);
+                    return chunk.size() < ENTRY_CHUNK_SIZE;
+                });
+            } finally {
+                lock.readLock().unlock();
+            }
+            chunk.forEach(action);
+            if (!chunk.isEmpty()) {
+                lastPath = chunk.get(chunk.size() - 1).getPath();
+            }
+        } while (chunk.size() == ENTRY_CHUNK_SIZE);
+    }
+
     public boolean isDirty() {
         lock.readLock().lock();
         try {
@@ -244,55 +837,513 @@ public class Database {
         }
     }
 
+    public long getVersion() {
+        lock.readLock().lock();
+        try {
+            return version;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public ShardScheme getShardScheme() {
+        lock.readLock().lock();
+        try {
+            return shardScheme;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sets how the database is split into files, {@code null} for a single file. The next save writes all files again.
+     */
+    public void setShardScheme(ShardScheme shardScheme) {
+        lock.writeLock().lock();
+        try {
+            if (partial) {
+                throw new IllegalStateException("Only some shards are loaded.");
+            }
+            if (Objects.equals(shardScheme, this.shardScheme)) {
+                return;
+            }
+            this.shardScheme = shardScheme;
+            reshard = true;
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        autoSave();
+    }
+
+    /**
+     * Returns the number of shards loaded or saved, zero for a single file.
+     */
+    public int getShardCount() {
+        lock.readLock().lock();
+        try {
+            return shardVersionMap.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns true if only the shards of some directories are loaded.
+     */
+    public boolean isPartial() {
+        lock.readLock().lock();
+        try {
+            return partial;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     public void save() throws IOException {
         if (isDirty()) {
+            DatabaseSaveEvent event = new DatabaseSaveEvent();
+            event.begin();
+            long waitStart = System.nanoTime();
             lock.writeLock().lock();
             try {
                 if (!dirty) {
                     return;
                 }
 
-                List<Entry> list = new ArrayList<>(entryMap.values());
-                Collections.sort(list, (e1, e2) -> e1.getPath().compareTo(e2.getPath()));
-                doSave(list);
+                // Only writers take the file lock, readers always see complete files because they are replaced atomically
+                Lock processLock = PROCESS_LOCK_MAP.computeIfAbsent(persistencePath, p -> new ReentrantLock());
+                processLock.lock();
+                try (FileChannel lockChannel = FileChannel.open(getLockPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    FileLock fileLock = lockChannel.lock();
+                    try {
+                        event.lockWait = System.nanoTime() - waitStart;
+                        Manifest manifest = doLoadManifest();
+                        long currentVersion = manifest != null ? manifest.getVersion() : doLoadVersion();
+                        ShardScheme fileScheme = manifest != null ? manifest.getShardScheme() : null;
+                        if (currentVersion != version && Files.isRegularFile(persistencePath)
+                                && (reshard || shardScheme == null || !shardScheme.equals(fileScheme))) {
+                            event.merged = true;
+                            // Another process saved in the meantime, apply our changes on top of its state
+                            Snapshot snapshot = doLoadSnapshot(null);
+                            trie = snapshot.getTrie();
+                            if (!reshard) {
+                                shardScheme = snapshot.getShardScheme();
+                            }
+                            shardVersionMap.clear();
+                            shardVersionMap.putAll(snapshot.getShardVersionMap());
+                            partial = false;
+                            applyChanges(p -> true);
+                        }
+
+                        long bytes;
+                        if (shardScheme == null) {
+                            doSave(persistencePath, currentVersion + 1, trie);
+                            if (manifest != null) {
+                                deleteShardFiles(Collections.emptySet());
+                            }
+                            shardVersionMap.clear();
+                            bytes = Files.size(persistencePath);
+                        } else {
+                            bytes = doSaveShards(manifest, currentVersion + 1, event);
+                        }
+
+                        version = currentVersion + 1;
+                        changeMap.clear();
+                        nonMediaChangeMap.clear();
+                        reshard = false;
+                        dirty = false;
 
-                dirty = false;
+                        if (event.shouldCommit()) {
+                            event.path = persistencePath.toString();
+                            event.entries = trie.size();
+                            event.bytes = bytes;
+                            event.commit();
+                        }
+                    } finally {
+                        fileLock.release();
+                    }
+                } finally {
+                    processLock.unlock();
+                }
             } finally {
                 lock.writeLock().unlock();
             }
         }
     }
 
-    private List<Entry> doLoad() throws IOException {
-        List<Entry> entryList = new LinkedList<>();
+    // Puts the changes since the last load or save of the matching paths into the trie again
+    private void applyChanges(Predicate<Path> filter) {
+        changeMap.forEach((p, e) -> {
+            if (!filter.test(p)) {
+                return;
+            }
+            if (e != null) {
+                trie.put(e.bind(trie.findOrCreate(p)));
+            } else {
+                trie.remove(p);
+            }
+        });
+        nonMediaChangeMap.forEach((p, n) -> {
+            if (!filter.test(p)) {
+                return;
+            }
+            if (n != null) {
+                trie.putNonMedia(trie.findOrCreate(p), n);
+            } else {
+                trie.removeNonMedia(p);
+            }
+        });
+    }
+
+    /**
+     * Writes the changed shards and a new manifest, or all shards after the scheme was set or without a manifest. Returns the bytes written.
+     */
+    private long doSaveShards(Manifest manifest, long newVersion, DatabaseSaveEvent event) throws IOException {
+        Set<String> keySet = new TreeSet<>();
+        Map<String, Shard> shardMap = new TreeMap<>();
+        boolean all = reshard || manifest == null;
+        if (all) {
+            trie.forEachPathUnder(null, (p, e) -> keySet.add(getShardKey(p)));
+            trie.forEachNonMediaPathUnder(null, (p, n) -> keySet.add(getShardKey(p)));
+            shardVersionMap.clear();
+        } else {
+            changeMap.keySet().forEach(p -> keySet.add(getShardKey(p)));
+            nonMediaChangeMap.keySet().forEach(p -> keySet.add(getShardKey(p)));
+            if (manifest != null) {
+                shardMap.putAll(manifest.getShardMap());
+            }
+
+            // Shards saved by another process since they were read, or not read at all, are read before our changes go on top
+            for (String key : keySet) {
+                Shard shard = shardMap.get(key);
+                if (shard != null && !Long.valueOf(shard.getVersion()).equals(shardVersionMap.get(key))) {
+                    event.merged = true;
+                    replaceShard(key, doLoad(getShardDirectory().resolve(shard.getFile())).getTrie());
+                    applyChanges(p -> key.equals(getShardKey(p)));
+                }
+            }
+        }
+
+        Files.createDirectories(getShardDirectory());
+        List<Path> replacedList = new ArrayList<>();
+        long bytes = 0;
+        for (String key : keySet) {
+            Shard oldShard = shardMap.remove(key);
+            if (oldShard != null) {
+                replacedList.add(getShardDirectory().resolve(oldShard.getFile()));
+            }
+            PathTrie shardTrie = copyShard(key);
+            if (shardTrie.size() > 0 || shardTrie.getNonMediaCount() > 0) {
+                // Every version goes to a new file, so readers of the previous manifest still find their shards
+                String file = getShardFileName(key, newVersion);
+                Path shardPath = getShardDirectory().resolve(file);
+                doSave(shardPath, newVersion, shardTrie);
+                shardMap.put(key, new Shard(file, newVersion, shardTrie.size()));
+                shardVersionMap.put(key, newVersion);
+                bytes += Files.size(shardPath);
+            } else {
+                shardVersionMap.remove(key);
+            }
+        }
+        doSaveManifest(new Manifest(newVersion, shardScheme, shardMap));
+        bytes += Files.size(persistencePath);
+
+        if (all) {
+            deleteShardFiles(shardMap.values().stream().map(Shard::getFile).collect(Collectors.toSet()));
+        } else {
+            for (Path replaced : replacedList) {
+                Files.deleteIfExists(replaced);
+            }
+        }
+        event.shards = keySet.size();
+        return bytes;
+    }
+
+    private String getShardKey(Path path) {
+        return shardScheme.getKey(path.getParent());
+    }
+
+    private PathTrie copyShard(String key) {
+        PathTrie shardTrie = new PathTrie();
+        Path scope = shardScheme.getScope(key);
+        trie.forEachPathUnder(scope, (path, e) -> {
+            if (key.equals(getShardKey(path))) {
+                shardTrie.put(e.bind(shardTrie.findOrCreate(path)));
+            }
+        });
+        trie.forEachNonMediaPathUnder(scope, (path, n) -> {
+            if (key.equals(getShardKey(path))) {
+                shardTrie.putNonMedia(shardTrie.findOrCreate(path), n.getNonMedia());
+            }
+        });
+        return shardTrie;
+    }
+
+    private void replaceShard(String key, PathTrie shardTrie) {
+        Path scope = shardScheme.getScope(key);
+        List<Path> pathList = new ArrayList<>();
+        trie.forEachPathUnder(scope, (p, e) -> pathList.add(p));
+        pathList.removeIf(p -> !key.equals(getShardKey(p)));
+        pathList.forEach(p -> trie.remove(p));
+
+        pathList.clear();
+        trie.forEachNonMediaPathUnder(scope, (p, n) -> pathList.add(p));
+        pathList.removeIf(p -> !key.equals(getShardKey(p)));
+        pathList.forEach(p -> trie.removeNonMedia(p));
+
+        trie.addAll(shardTrie);
+    }
+
+    private Path getLockPath() {
+        return persistencePath.resolveSibling(persistencePath.getFileName() + ".lock");
+    }
+
+    private Path getShardDirectory() {
+        return persistencePath.resolveSibling(persistencePath.getFileName() + ".shards");
+    }
+
+    // The name is derived from the key, which may be a path or contain characters not allowed in file names
+    private static String getShardFileName(String key, long shardVersion) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                builder.append(String.format("%02x", hash[i]));
+            }
+            return builder.append('-').append(shardVersion).append(".xml").toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Removes the shard files that are not in the set, left by a previous scheme
+    private void deleteShardFiles(Set<String> keepSet) throws IOException {
+        Path shardDirectory = getShardDirectory();
+        if (!Files.isDirectory(shardDirectory)) {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(shardDirectory, "*.xml")) {
+            for (Path file : stream) {
+                if (!keepSet.contains(file.getFileName().toString())) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        if (keepSet.isEmpty()) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(shardDirectory)) {
+                if (!stream.iterator().hasNext()) {
+                    Files.delete(shardDirectory);
+                }
+            }
+        }
+    }
+
+    private long doLoadVersion() throws IOException {
+        if (!Files.isRegularFile(persistencePath)) {
+            return 0;
+        }
+
+        try {
+            XMLInputFactory factory = XMLInputFactory.newFactory();
+            BufferedReader bufferedReader = Files.newBufferedReader(persistencePath);
+            try {
+                XMLStreamReader reader = factory.createXMLStreamReader(bufferedReader);
+                try {
+                    while (reader.hasNext()) {
+                        if (reader.next() == XMLStreamReader.START_ELEMENT) {
+                            return parseVersion(getAttributes(reader).get("version"));
+                        }
+                    }
+                    return 0;
+                } finally {
+                    reader.close();
+                }
+            } finally {
+                bufferedReader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static long parseVersion(String versionValue) {
+        return versionValue != null ? Long.parseLong(versionValue) : 0;
+    }
+
+    /**
+     * Reads the manifest of a sharded database, returns {@code null} if there is no file or it holds the whole database.
+     */
+    private Manifest doLoadManifest() throws IOException {
+        if (!Files.isRegularFile(persistencePath)) {
+            return null;
+        }
 
         try {
             XMLInputFactory factory = XMLInputFactory.newFactory();
             BufferedReader bufferedReader = Files.newBufferedReader(persistencePath);
+            try {
+                XMLStreamReader reader = factory.createXMLStreamReader(bufferedReader);
+                try {
+                    long manifestVersion = 0;
+                    ShardScheme scheme = null;
+                    Map<String, Shard> shardMap = new TreeMap<>();
+                    while (reader.hasNext()) {
+                        if (reader.next() == XMLStreamReader.START_ELEMENT) {
+                            String elementName = reader.getLocalName();
+                            Map<String, String> attributeMap = getAttributes(reader);
+                            if ("manifest".equals(elementName)) {
+                                manifestVersion = parseVersion(attributeMap.get("version"));
+                                scheme = ShardScheme.parse(attributeMap.get("scheme"));
+                            } else if ("shard".equals(elementName) && scheme != null) {
+                                shardMap.put(attributeMap.get("key"), new Shard(attributeMap.get("file"), parseVersion(attributeMap.get("version")),
+                                        Integer.parseInt(attributeMap.get("entries"))));
+                            } else {
+                                return null;
+                            }
+                        }
+                    }
+                    return scheme != null ? new Manifest(manifestVersion, scheme, shardMap) : null;
+                } finally {
+                    reader.close();
+                }
+            } finally {
+                bufferedReader.close();
+            }
+        } catch (XMLStreamException | IllegalArgumentException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void doSaveManifest(Manifest manifest) throws IOException {
+        writeFile(persistencePath, writer -> {
+            writer.writeStartElement("manifest");
+            writer.writeAttribute("version", Long.toString(manifest.getVersion()));
+            writer.writeAttribute("scheme", manifest.getShardScheme().toString());
+            for (Map.Entry<String, Shard> entry : manifest.getShardMap().entrySet()) {
+                Shard shard = entry.getValue();
+                writer.writeEmptyElement("shard");
+                writer.writeAttribute("key", entry.getKey());
+                writer.writeAttribute("file", shard.getFile());
+                writer.writeAttribute("version", Long.toString(shard.getVersion()));
+                writer.writeAttribute("entries", Integer.toString(shard.getEntries()));
+            }
+            writer.writeEndElement();
+        });
+    }
+
+    /**
+     * Reads the database, of a sharded database only the shards that can hold files below one of the directories, all
+     * shards if they are {@code null}.
+     */
+    private Snapshot doLoadSnapshot(List<Path> directories) throws IOException {
+        for (int attempt = 1;; attempt++) {
+            Manifest manifest = doLoadManifest();
+            if (manifest == null) {
+                return doLoad(persistencePath);
+            }
+            try {
+                return doLoadShards(manifest, directories);
+            } catch (NoSuchFileException e) {
+                // A writer replaced the shard after the manifest was read
+                if (attempt == MAX_LOAD_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private Snapshot doLoadShards(Manifest manifest, List<Path> directories) throws IOException {
+        ShardScheme scheme = manifest.getShardScheme();
+        List<String> keyList = new ArrayList<>();
+        for (String key : manifest.getShardMap().keySet()) {
+            if (directories == null || directories.stream().anyMatch(d -> scheme.covers(key, d))) {
+                keyList.add(key);
+            }
+        }
+
+        // The shards are parsed in parallel, only putting them together is sequential
+        List<Snapshot> snapshotList;
+        try {
+            snapshotList = keyList.parallelStream().map(k -> {
+                try {
+                    return doLoad(getShardDirectory().resolve(manifest.getShardMap().get(k).getFile()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        PathTrie loadTrie = new PathTrie();
+        Map<String, Long> versionMap = new HashMap<>();
+        long bytes = 0;
+        for (int i = 0; i < keyList.size(); i++) {
+            Snapshot snapshot = snapshotList.get(i);
+            loadTrie.addAll(snapshot.getTrie());
+            versionMap.put(keyList.get(i), snapshot.getVersion());
+            bytes += snapshot.getBytes();
+        }
+        return new Snapshot(manifest.getVersion(), loadTrie, scheme, versionMap, keyList.size() < manifest.getShardMap().size(), bytes);
+    }
+
+    private Snapshot doLoad(Path file) throws IOException {
+        PathTrie loadTrie = new PathTrie();
+        Deque<PathTrie.Node> nodeStack = new ArrayDeque<>();
+        nodeStack.push(loadTrie.getRoot());
+        long fileVersion = 0;
+
+        try {
+            XMLInputFactory factory = XMLInputFactory.newFactory();
+            BufferedReader bufferedReader = Files.newBufferedReader(file);
             try {
                 XMLStreamReader reader = factory.createXMLStreamReader(bufferedReader);
 
                 while (reader.hasNext()) {
                     int type = reader.next();
-                    if (type == XMLStreamReader.START_ELEMENT) {
+                    if (type == XMLStreamReader.END_ELEMENT && "dir".equals(reader.getLocalName())) {
+                        nodeStack.pop();
+                    } else if (type == XMLStreamReader.START_ELEMENT) {
                         String elementName = reader.getLocalName();
                         Map<String, String> attributeMap = getAttributes(reader);
 
-                        if ("entry".equals(elementName)) {
+                        if ("database".equals(elementName)) {
+                            fileVersion = parseVersion(attributeMap.get("version"));
+                        } else if ("dir".equals(elementName)) {
+                            nodeStack.push(loadTrie.getChild(nodeStack.peek(), attributeMap.get("name"), true));
+                        } else if ("entry".equals(elementName)) {
+                            // Files of older versions have flat entries with the complete path
+                            String nameValue = attributeMap.get("name");
                             String pathValue = attributeMap.get("path");
-                            if (pathValue != null) {
-                                URI pathURI = URI.create(pathValue);
-                                Path path = Paths.get(pathURI);
-
+                            PathTrie.Node node = null;
+                            if (nameValue != null) {
+                                node = loadTrie.getChild(nodeStack.peek(), nameValue, false);
+                            } else if (pathValue != null) {
+                                node = loadTrie.findOrCreate(Paths.get(URI.create(pathValue)));
+                            }
+                            if (node != null) {
                                 String timeValue = attributeMap.get("time");
                                 Instant time = timeValue != null ? Instant.parse(timeValue) : null;
 
+                                String sizeValue = attributeMap.get("size");
+                                Long size = sizeValue != null ? Long.valueOf(sizeValue) : null;
+
+                                String fileKey = attributeMap.get("filekey");
+
                                 String stdOut = attributeMap.get("stdout");
                                 String errOut = attributeMap.get("errout");
 
-                                Entry entry = new Entry(path, time, stdOut, errOut);
-                                entryList.add(entry);
+                                String digest = attributeMap.get("digest");
+                                String digestTimeValue = attributeMap.get("digesttime");
+                                Instant digestTime = digestTimeValue != null && !digestTimeValue.isEmpty() ? Instant.parse(digestTimeValue) : null;
+
+                                loadTrie.put(new Entry(node, time, size, fileKey, stdOut, errOut, digest, digestTime));
                             }
+                        } else if ("skip".equals(elementName)) {
+                            PathTrie.Node node = loadTrie.getChild(nodeStack.peek(), attributeMap.get("name"), false);
+                            loadTrie.putNonMedia(node, new NonMedia(Instant.parse(attributeMap.get("time")), Long.parseLong(attributeMap.get("size"))));
                         }
                     }
                 }
@@ -304,7 +1355,7 @@ public class Database {
         } catch (XMLStreamException e) {
             throw new IOException(e);
         }
-        return entryList;
+        return new Snapshot(fileVersion, loadTrie, Files.size(file));
     }
 
     private static Map<String, String> getAttributes(XMLStreamReader reader) {
@@ -318,50 +1369,129 @@ public class Database {
     }
 
     public void load() throws IOException {
-        List<Entry> entryList = doLoad();
+        load(null);
+    }
 
+    /**
+     * Loads the database. Of a sharded database only the shards that can hold files below one of the directories are
+     * loaded, all shards if they are {@code null}.
+     */
+    public void load(List<Path> directories) throws IOException {
+        DatabaseLoadEvent event = new DatabaseLoadEvent();
+        event.begin();
+        Snapshot snapshot = doLoadSnapshot(directories);
+
+        long waitStart = System.nanoTime();
         lock.writeLock().lock();
         try {
-            entryMap.clear();
-            entryList.forEach(e -> entryMap.put(e.getPath(), e));
+            event.lockWait = System.nanoTime() - waitStart;
+            trie = snapshot.getTrie();
 
+            version = snapshot.getVersion();
+            shardScheme = snapshot.getShardScheme();
+            shardVersionMap.clear();
+            shardVersionMap.putAll(snapshot.getShardVersionMap());
+            partial = snapshot.isPartial();
+            reshard = false;
+            changeMap.clear();
+            nonMediaChangeMap.clear();
             dirty = false;
         } finally {
             lock.writeLock().unlock();
         }
+
+        if (event.shouldCommit()) {
+            event.path = persistencePath.toString();
+            event.entries = snapshot.getTrie().size();
+            event.shards = snapshot.getShardVersionMap().size();
+            event.bytes = snapshot.getBytes();
+            event.commit();
+        }
+    }
+
+    private interface XmlContent {
+        void write(XMLStreamWriter writer) throws XMLStreamException;
     }
 
-    private void doSave(List<Entry> entryList) throws IOException {
+    private static void doSave(Path file, long newVersion, PathTrie saveTrie) throws IOException {
+        writeFile(file, writer -> {
+            writer.writeStartElement("database");
+            writer.writeAttribute("version", Long.toString(newVersion));
+
+            writeChildren(writer, saveTrie.getRoot());
+
+            writer.writeEndElement();
+        });
+    }
+
+    // Writes a temporary file next to the target first, so the target is replaced atomically
+    private static void writeFile(Path file, XmlContent content) throws IOException {
         XMLOutputFactory factory = XMLOutputFactory.newFactory();
+        Path tempPath = Files.createTempFile(file.toAbsolutePath().getParent(), "." + file.getFileName(), ".tmp");
         try {
-            BufferedWriter bufferedWriter = Files.newBufferedWriter(persistencePath);
+            BufferedWriter bufferedWriter = Files.newBufferedWriter(tempPath);
             try {
                 XMLStreamWriter writer = factory.createXMLStreamWriter(bufferedWriter);
 
                 writer.writeStartDocument("UTF-8", "1.0");
-                writer.writeStartElement("database");
-
-                for (Entry entry : entryList) {
-                    String path = entry.getPath().toUri().toString();
-                    String time = entry.getTime() != null ? entry.getTime().toString() : "";
-
-                    writer.writeStartElement("entry");
-                    writer.writeAttribute("path", path);
-                    writer.writeAttribute("time", time);
-                    writer.writeAttribute("stdout", entry.getStdOut());
-                    writer.writeAttribute("errout", entry.getErrOut());
-                    writer.writeEndElement();
-                }
-
-                writer.writeEndElement();
+                content.write(writer);
                 writer.writeEndDocument();
 
                 writer.close();
             } finally {
                 bufferedWriter.close();
             }
+
+            try {
+                Files.move(tempPath, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempPath, file, StandardCopyOption.REPLACE_EXISTING);
+            }
         } catch (XMLStreamException e) {
             throw new IOException(e);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    // Directories are nested elements, so every name is written only once
+    private static void writeChildren(XMLStreamWriter writer, PathTrie.Node node) throws XMLStreamException {
+        for (PathTrie.Node child : node.getChildren()) {
+            Entry entry = child.getEntry();
+            if (entry != null) {
+                String time = entry.getTime() != null ? entry.getTime().toString() : "";
+
+                writer.writeStartElement("entry");
+                writer.writeAttribute("name", child.getName());
+                writer.writeAttribute("time", time);
+                if (entry.getSize() != null) {
+                    writer.writeAttribute("size", entry.getSize().toString());
+                }
+                if (entry.getFileKey() != null) {
+                    writer.writeAttribute("filekey", entry.getFileKey());
+                }
+                if (entry.getDigest() != null) {
+                    writer.writeAttribute("digest", entry.getDigest());
+                    writer.writeAttribute("digesttime", entry.getDigestTime() != null ? entry.getDigestTime().toString() : "");
+                }
+                writer.writeAttribute("stdout", entry.getStdOut());
+                writer.writeAttribute("errout", entry.getErrOut());
+                writer.writeEndElement();
+            }
+            NonMedia nonMedia = child.getNonMedia();
+            if (nonMedia != null) {
+                writer.writeStartElement("skip");
+                writer.writeAttribute("name", child.getName());
+                writer.writeAttribute("time", nonMedia.getTime().toString());
+                writer.writeAttribute("size", Long.toString(nonMedia.getSize()));
+                writer.writeEndElement();
+            }
+            if (!child.getChildren().isEmpty()) {
+                writer.writeStartElement("dir");
+                writer.writeAttribute("name", child.getName());
+                writeChildren(writer, child);
+                writer.writeEndElement();
+            }
         }
     }
 
@@ -0,0 +1,98 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import de.bitsunited.moviechecker.Database.Entry;
+import de.bitsunited.moviechecker.probe.MediaInfo;
+import de.bitsunited.moviechecker.probe.StreamInfo;
+
+/**
+ * Aggregated counters of all entries below a directory. The database keeps them up to date on every change.
+ */
+public class DirectoryStats {
+
+    public static final String UNKNOWN_CODEC = "unknown";
+
+    private long fileCount;
+    private long totalSize;
+    private long totalDurationMillis;
+
+    // Video codec to file count and total size
+    private final Map<String, long[]> codecMap;
+
+    DirectoryStats() {
+        this.codecMap = new TreeMap<>();
+    }
+
+    DirectoryStats(DirectoryStats source) {
+        this();
+        this.fileCount = source.fileCount;
+        this.totalSize = source.totalSize;
+        this.totalDurationMillis = source.totalDurationMillis;
+        source.codecMap.forEach((codec, values) -> codecMap.put(codec, values.clone()));
+    }
+
+    void update(Entry entry, int sign) {
+        long size = entry.getSize() != null ? entry.getSize() : 0;
+        MediaInfo info = entry.getMediaInfo();
+
+        fileCount += sign;
+        totalSize += sign * size;
+        if (info != null && info.getDuration() != null) {
+            totalDurationMillis += sign * info.getDuration().toMillis();
+        }
+
+        StreamInfo video = info != null ? info.getVideoStream() : null;
+        String codec = video != null ? video.getCodec() : UNKNOWN_CODEC;
+        long[] values = codecMap.computeIfAbsent(codec, c -> new long[2]);
+        values[0] += sign;
+        values[1] += sign * size;
+        if (values[0] == 0) {
+            codecMap.remove(codec);
+        }
+    }
+
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    public Duration getTotalDuration() {
+        return Duration.ofMillis(totalDurationMillis);
+    }
+
+    public List<String> getCodecList() {
+        return new ArrayList<>(codecMap.keySet());
+    }
+
+    public long getCodecCount(String codec) {
+        long[] values = codecMap.get(codec);
+        return values != null ? values[0] : 0;
+    }
+
+    public long getCodecSize(String codec) {
+        long[] values = codecMap.get(codec);
+        return values != null ? values[1] : 0;
+    }
+}
@@ -0,0 +1,187 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import de.bitsunited.moviechecker.Database.Entry;
+import de.bitsunited.moviechecker.probe.MediaInfo;
+import de.bitsunited.moviechecker.probe.StreamInfo;
+import de.bitsunited.moviechecker.probe.StreamInfo.StreamType;
+
+/**
+ * Writes one record per database entry, in path order, with the media attributes parsed from the recorded ffprobe
+ * output.
+ */
+public class Exporter {
+
+    public enum Format {
+        CSV, JSONL
+    }
+
+    private static final String[] COLUMNS = { "path", "size", "time", "container", "duration", "bitrate", "video_codec", "width", "height",
+            "audio_codecs", "audio_languages", "subtitle_languages" };
+
+    private final Format format;
+    private final Writer writer;
+    private int count;
+
+    public Exporter(Format format, Writer writer) {
+        this.format = format;
+        this.writer = writer;
+    }
+
+    public int export(Database database) throws IOException {
+        if (format == Format.CSV) {
+            writer.write(String.join(",", COLUMNS));
+            writer.write('\n');
+        }
+        try {
+            database.forEachEntry(entry -> {
+                try {
+                    write(entry);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+        return count;
+    }
+
+    private void write(Entry entry) throws IOException {
+        MediaInfo info = entry.getMediaInfo();
+        StreamInfo video = info != null ? info.getVideoStream() : null;
+        List<StreamInfo> audioList = info != null ? info.getStreams(StreamType.AUDIO) : null;
+        List<StreamInfo> subtitleList = info != null ? info.getStreams(StreamType.SUBTITLE) : null;
+
+        Object[] values = { entry.getPath().toString(), entry.getSize(), entry.getTime(), info != null ? info.getContainer() : null,
+                info != null && info.getDuration() != null ? info.getDuration().toMillis() / 1000.0 : null, info != null ? info.getBitrate() : null,
+                video != null ? video.getCodec() : null, video != null && video.getWidth() > 0 ? video.getWidth() : null,
+                video != null && video.getHeight() > 0 ? video.getHeight() : null,
+                audioList != null ? audioList.stream().map(StreamInfo::getCodec).collect(Collectors.toList()) : null,
+                audioList != null ? audioList.stream().map(s -> s.getLanguage() != null ? s.getLanguage() : "").collect(Collectors.toList()) : null,
+                subtitleList != null ? subtitleList.stream().map(s -> s.getLanguage() != null ? s.getLanguage() : "").collect(Collectors.toList())
+                        : null };
+
+        if (format == Format.CSV) {
+            writeCsv(values);
+        } else {
+            writeJson(values);
+        }
+        count++;
+    }
+
+    private void writeCsv(Object[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            Object value = values[i];
+            if (value instanceof List) {
+                value = String.join("|", toStrings((List<?>) value));
+            }
+            if (value != null) {
+                writer.write(quoteCsv(value.toString()));
+            }
+        }
+        writer.write('\n');
+    }
+
+    private void writeJson(Object[] values) throws IOException {
+        writer.write('{');
+        boolean first = true;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                continue;
+            }
+            if (!first) {
+                writer.write(',');
+            }
+            first = false;
+            writer.write(quoteJson(COLUMNS[i]));
+            writer.write(':');
+            writeJsonValue(values[i]);
+        }
+        writer.write("}\n");
+    }
+
+    private void writeJsonValue(Object value) throws IOException {
+        if (value instanceof Number) {
+            writer.write(value.toString());
+        } else if (value instanceof List) {
+            writer.write('[');
+            List<String> list = toStrings((List<?>) value);
+            for (int i = 0; i < list.size(); i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(quoteJson(list.get(i)));
+            }
+            writer.write(']');
+        } else {
+            writer.write(quoteJson(value.toString()));
+        }
+    }
+
+    private static List<String> toStrings(List<?> list) {
+        return list.stream().map(Object::toString).collect(Collectors.toList());
+    }
+
+    static String quoteCsv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    static String quoteJson(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    sb.append(String.format("\\u%04x", (int) c));
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
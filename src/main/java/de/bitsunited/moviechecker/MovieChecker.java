@@ -14,28 +14,62 @@
 //
 package de.bitsunited.moviechecker;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.time.Instant;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
-
-import de.bitsunited.moviechecker.scan.FileCheck;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import de.bitsunited.moviechecker.convert.ConvertHistory;
+import de.bitsunited.moviechecker.convert.ConvertPlanner;
+import de.bitsunited.moviechecker.convert.Converter;
+import de.bitsunited.moviechecker.convert.LoadGovernor;
+import de.bitsunited.moviechecker.convert.PresetAdvisor;
+import de.bitsunited.moviechecker.probe.MediaInfo;
+import de.bitsunited.moviechecker.probe.ProbeTiers;
+import de.bitsunited.moviechecker.scan.CooperativeScan;
+import de.bitsunited.moviechecker.scan.FileListScan;
 import de.bitsunited.moviechecker.scan.FolderWalker;
+import de.bitsunited.moviechecker.scan.LeaseDirectory;
+import de.bitsunited.moviechecker.scan.ProbeOrder;
+import de.bitsunited.moviechecker.scan.ProbeQueue;
+import de.bitsunited.moviechecker.scan.ProbeScheduler;
 import de.bitsunited.moviechecker.scan.Result;
 import de.bitsunited.moviechecker.scan.Result.ResultState;
+import de.bitsunited.moviechecker.verify.Verifier;
 
 public class MovieChecker {
 
+    private static final String DEFAULT_PRESETS = "medium,slow,slower,veryslow";
+
     public static void main(String[] args) throws IOException {
         if (args == null || args.length == 0) {
             printHelp();
@@ -52,6 +86,20 @@ public class MovieChecker {
             findMode(args);
         } else if ("list".equalsIgnoreCase(mode)) {
             listMode(args);
+        } else if ("stats".equalsIgnoreCase(mode)) {
+            statsMode(args);
+        } else if ("merge".equalsIgnoreCase(mode)) {
+            mergeMode(args);
+        } else if ("serve".equalsIgnoreCase(mode)) {
+            serveMode(args);
+        } else if ("verify".equalsIgnoreCase(mode)) {
+            verifyMode(args);
+        } else if ("shard".equalsIgnoreCase(mode)) {
+            shardMode(args);
+        } else if ("export".equalsIgnoreCase(mode)) {
+            // Keep the standard output clean for the exported records
+            exportMode(args);
+            return;
         } else {
             printHelp();
             return;
@@ -61,10 +109,12 @@ public class MovieChecker {
     }
 
     private static void convertMode(String[] args) throws IOException {
-        Database database = loadDatabase(args, true);
+        boolean verify = Util.hasParameter(args, "--verify");
+        Database database = loadDatabase(args, true, verify);
 
         String encoding = Util.findParameter(args, "-e", "--encoding");
-        if (encoding == null) {
+        ConvertPlanner planner = createConvertPlanner(args);
+        if (encoding == null && planner == null) {
             System.err.println("Missing video encoding argument.");
             return;
         }
@@ -81,7 +131,15 @@ public class MovieChecker {
         List<Path> filteredList = new LinkedList<>();
         for (Path path : pathList) {
             String errOut = database.getEntryErrOut(path);
-            if (errOut != null && errOut.contains("Video: " + encoding)) {
+            if (errOut == null || (encoding != null && !errOut.contains("Video: " + encoding))) {
+                continue;
+            }
+            // Files without probe data or with nothing to do are left out
+            MediaInfo info = planner != null ? MediaInfo.parse(errOut) : null;
+            if (planner != null && (info == null || planner.plan(path, info).getAction() == ConvertPlanner.Action.SKIP)) {
+                continue;
+            }
+            if (verify || Files.isRegularFile(path)) {
                 filteredList.add(path);
             }
         }
@@ -90,9 +148,65 @@ public class MovieChecker {
             filteredList = filteredList.subList(0, count);
         }
 
-        for (Path path : filteredList) {
-            convert(path, database, logPath);
+        Converter converter = new Converter(database, logPath, verify);
+        converter.setPlanner(planner);
+        ConvertHistory history = new ConvertHistory(logPath.resolveSibling("convert-history.tsv"));
+        converter.setHistory(history);
+
+        String crfValue = Util.findParameter(args, "--crf");
+        if (crfValue != null) {
+            converter.setCrf(Integer.parseInt(crfValue));
+        }
+        String targetValue = Util.findParameter(args, "--target");
+        if (targetValue != null) {
+            String presetsValue = Util.findParameter(args, "--presets");
+            List<String> presetList = Arrays.asList((presetsValue != null ? presetsValue : DEFAULT_PRESETS).split(","));
+            double targetBytesPerCpuHour = Double.parseDouble(targetValue) * 1024 * 1024;
+            converter.setAdvisor(new PresetAdvisor(history.load(), presetList, targetBytesPerCpuHour, converter.getCrf()));
+        }
+        String scratchValue = Util.findParameter(args, "--scratch");
+        if (scratchValue != null) {
+            converter.setScratchDirectory(Paths.get(scratchValue).toAbsolutePath());
+        }
+        LoadGovernor governor = createLoadGovernor(args);
+        if (governor == null) {
+            return;
+        }
+        converter.setGovernor(governor);
+        converter.convert(filteredList);
+    }
+
+    private static ConvertPlanner createConvertPlanner(String[] args) {
+        if (!Util.hasParameter(args, "--plan")) {
+            return null;
+        }
+        String videoValue = Util.findParameter(args, "--accept-video");
+        String audioValue = Util.findParameter(args, "--accept-audio");
+        String audioCodec = Util.findParameter(args, "--audio-codec");
+        return new ConvertPlanner(videoValue != null ? Arrays.asList(videoValue.split(",")) : ConvertPlanner.DEFAULT_VIDEO_CODECS,
+                audioValue != null ? Arrays.asList(audioValue.split(",")) : ConvertPlanner.DEFAULT_AUDIO_CODECS,
+                audioCodec != null ? audioCodec : ConvertPlanner.DEFAULT_AUDIO_ENCODER);
+    }
+
+    private static LoadGovernor createLoadGovernor(String[] args) {
+        String jobsValue = Util.findParameter(args, "-j", "--jobs");
+        String maxLoadValue = Util.findParameter(args, "--max-load");
+        String windowValue = Util.findParameter(args, "--window");
+
+        LocalTime windowStart = null;
+        LocalTime windowEnd = null;
+        if (windowValue != null) {
+            String[] times = windowValue.split("-");
+            try {
+                windowStart = LocalTime.parse(times[0]);
+                windowEnd = LocalTime.parse(times[1]);
+            } catch (DateTimeParseException | ArrayIndexOutOfBoundsException e) {
+                System.err.println("Invalid time window: " + windowValue);
+                return null;
+            }
         }
+        return new LoadGovernor(jobsValue != null ? Integer.parseInt(jobsValue) : 1, maxLoadValue != null ? Double.valueOf(maxLoadValue) : null,
+                windowStart, windowEnd);
     }
 
     private static Path getLogPath(String[] args) throws IOException {
@@ -115,25 +229,160 @@ public class MovieChecker {
             System.err.println("Missing video encoding argument.");
             return;
         }
+        if (queryServer(args)) {
+            return;
+        }
+
+        Database database = loadDatabase(args, true, Util.hasParameter(args, "--verify"));
+        find(database, args, System.out);
+    }
+
+    private static void listMode(String[] args) throws IOException {
+        if (queryServer(args)) {
+            return;
+        }
+
+        Database database = loadDatabase(args, true, Util.hasParameter(args, "--verify"));
+        list(database, args, System.out);
+    }
+
+    private static void statsMode(String[] args) throws IOException {
+        if (queryServer(args)) {
+            return;
+        }
+
+        // Only the shards of the directory are needed for its rollup
+        String directoryValue = Util.findParameter(args, "--dir", "--directory");
+        List<Path> scope = directoryValue != null ? Collections.singletonList(Paths.get(directoryValue).toAbsolutePath().normalize()) : null;
+        Database database = loadDatabase(args, true, Util.hasParameter(args, "--verify"), scope);
+        stats(database, args, System.out);
+    }
+
+    private static void exportMode(String[] args) throws IOException {
+        String formatValue = Util.findParameter(args, "-f", "--format");
+        Exporter.Format format;
+        try {
+            format = formatValue != null ? Exporter.Format.valueOf(formatValue.toUpperCase()) : Exporter.Format.CSV;
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown export format: " + formatValue);
+            return;
+        }
 
-        Database database = loadDatabase(args, true);
+        Database database = loadDatabase(args, true, false);
+
+        String output = Util.findParameter(args, "-o", "--output");
+        int counter;
+        if (output == null) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+            counter = new Exporter(format, writer).export(database);
+        } else {
+            try (FileChannel channel = FileChannel.open(Paths.get(output), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+                    Writer writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), 1 << 16), 1 << 16)) {
+                counter = new Exporter(format, writer).export(database);
+            }
+        }
+        System.err.println("Exported: " + counter);
+    }
+
+    private static void verifyMode(String[] args) throws IOException {
+        String directoryValue = Util.findParameter(args, "--dir");
+        Path directory = directoryValue != null ? Paths.get(directoryValue).toAbsolutePath().normalize() : null;
+
+        Database database = loadDatabase(args, true, false, directory != null ? Collections.singletonList(directory) : null);
+        database.setAutoSave(false);
+        List<Path> pathList;
+        if (directory == null) {
+            pathList = database.getPathList();
+        } else {
+            pathList = new ArrayList<>();
+            for (Database.Entry entry : database.entriesUnder(directory)) {
+                pathList.add(entry.getPath());
+            }
+        }
+
+        String threadsValue = Util.findParameter(args, "--threads");
+        String deviceThreadsValue = Util.findParameter(args, "--device-threads");
+        String deviceRateValue = Util.findParameter(args, "--device-rate");
+        int threads = threadsValue != null ? Integer.parseInt(threadsValue) : Runtime.getRuntime().availableProcessors();
+        int deviceThreads = deviceThreadsValue != null ? Integer.parseInt(deviceThreadsValue) : Verifier.DEFAULT_DEVICE_THREADS;
+        Long deviceBytesPerSecond = deviceRateValue != null ? (long) (Double.parseDouble(deviceRateValue) * 1024 * 1024) : null;
+
+        Instant startTime = Instant.now();
+        List<Verifier.Outcome> outcomeList = new Verifier(database, threads, deviceThreads, deviceBytesPerSecond).verify(pathList);
+        Duration duration = Duration.between(startTime, Instant.now());
+
+        Map<Verifier.Status, Integer> countMap = new EnumMap<>(Verifier.Status.class);
+        long bytes = 0;
+        for (Verifier.Outcome outcome : outcomeList) {
+            countMap.merge(outcome.getStatus(), 1, Integer::sum);
+            bytes += outcome.getSize();
+            if (outcome.getStatus() == Verifier.Status.MISMATCH || outcome.getStatus() == Verifier.Status.FAILED) {
+                System.out.println(outcome.getStatus() + ": " + outcome.getPath() + " (" + outcome.getMessage() + ")");
+            }
+        }
+        for (Map.Entry<Verifier.Status, Integer> entry : countMap.entrySet()) {
+            System.out.println(entry.getKey() + ": " + entry.getValue());
+        }
+        long millis = Math.max(duration.toMillis(), 1);
+        System.out.println("Read: " + Util.printFileSize(bytes) + " (" + Util.printFileSize(bytes * 1000 / millis) + "/s)");
+    }
+
+    private static boolean queryServer(String[] args) throws IOException {
+        String portValue = Util.findParameter(args, "-c", "--connect");
+        if (portValue == null) {
+            return false;
+        }
+        // The server resolves relative paths against its own working directory
+        String[] queryArgs = args.clone();
+        for (int i = 0; i < queryArgs.length - 1; i++) {
+            if ("--dir".equals(queryArgs[i]) || "--directory".equals(queryArgs[i])) {
+                queryArgs[i + 1] = Paths.get(queryArgs[i + 1]).toAbsolutePath().normalize().toString();
+            }
+        }
+        QueryServer.query(Integer.parseInt(portValue), queryArgs, System.out);
+        return true;
+    }
+
+    static boolean query(Database database, String[] args, PrintStream out) throws IOException {
+        String mode = args.length > 0 ? args[0] : "";
+        if ("find".equalsIgnoreCase(mode)) {
+            find(database, args, out);
+        } else if ("list".equalsIgnoreCase(mode)) {
+            list(database, args, out);
+        } else if ("stats".equalsIgnoreCase(mode)) {
+            stats(database, args, out);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private static void find(Database database, String[] args, PrintStream out) throws IOException {
+        String encoding = Util.findParameter(args, "-e", "--encoding");
+        if (encoding == null) {
+            out.println("Missing video encoding argument.");
+            return;
+        }
+        boolean verify = Util.hasParameter(args, "--verify");
 
         List<Path> pathList = database.getPathList();
         int counter = 0;
         for (Path path : pathList) {
             String errOut = database.getEntryErrOut(path);
             if (errOut != null && errOut.contains("Video: " + encoding)) {
-                long size = Files.size(path);
-                System.out.println(path + " [" + Util.printFileSize(size) + "]");
+                Long size = database.getEntrySize(path);
+                if (verify || size == null) {
+                    size = Files.size(path);
+                }
+                out.println(path + " [" + Util.printFileSize(size) + "]");
                 counter++;
             }
         }
-        System.out.println("Found: " + counter);
+        out.println("Found: " + counter);
     }
 
-    private static void listMode(String[] args) throws IOException {
-        Database database = loadDatabase(args, true);
-
+    private static void list(Database database, String[] args, PrintStream out) {
         Set<String> encodingSet = new HashSet<>();
 
         String pattern = "Video: ";
@@ -158,89 +407,290 @@ public class MovieChecker {
         List<String> encodingList = new ArrayList<String>(encodingSet);
         Collections.sort(encodingList);
         for (String encoding : encodingList) {
-            System.out.println("  " + encoding);
+            out.println("  " + encoding);
         }
-        System.out.println("Found: " + encodingList.size());
+        out.println("Found: " + encodingList.size());
     }
 
-    private static void convert(Path inputPath, Database database, Path logPath) throws IOException {
-        System.out.println(inputPath + ": Start encoding...");
+    private static void stats(Database database, String[] args, PrintStream out) {
+        String directoryValue = Util.findParameter(args, "--dir", "--directory");
+        Path directory = directoryValue != null ? Paths.get(directoryValue).toAbsolutePath().normalize() : null;
 
-        Instant startTime = Instant.now();
+        DirectoryStats stats = directory != null ? database.getDirectoryStats(directory) : database.getStats();
+        if (stats == null) {
+            out.println("No entries below " + directory);
+            return;
+        }
+        out.println("Entries: " + stats.getFileCount());
+        out.println("Size: " + Util.printFileSize(stats.getTotalSize()));
+        out.println("Duration: " + Util.print(stats.getTotalDuration()));
+        for (String codec : stats.getCodecList()) {
+            out.println("  " + codec + ": " + stats.getCodecCount(codec) + " [" + Util.printFileSize(stats.getCodecSize(codec)) + "]");
+        }
 
-        Path newPath = inputPath.resolveSibling(".temp." + inputPath.getFileName());
-        if (!Util.hasFileExtension(newPath, "mkv")) {
-            newPath = Util.replaceFileExtension(newPath, "mkv");
+        if (directory != null && Util.hasParameter(args, "--children")) {
+            for (Path child : database.getSubdirectoryList(directory)) {
+                DirectoryStats childStats = database.getDirectoryStats(child);
+                if (childStats != null) {
+                    out.println(child + ": " + childStats.getFileCount() + " [" + Util.printFileSize(childStats.getTotalSize()) + "]"
+                            + printCodecs(childStats));
+                }
+            }
         }
+        out.println("Version: " + database.getVersion());
+    }
 
-        Path oldPath = inputPath.resolveSibling(inputPath.getFileName() + ".old");
-        Path finalPath = inputPath;
-        if (!Util.hasFileExtension(finalPath, "mkv")) {
-            finalPath = Util.replaceFileExtension(finalPath, "mkv");
+    private static String printCodecs(DirectoryStats stats) {
+        StringBuilder sb = new StringBuilder();
+        for (String codec : stats.getCodecList()) {
+            sb.append(' ').append(codec).append('=').append(Util.printFileSize(stats.getCodecSize(codec)));
         }
+        return sb.toString();
+    }
 
-        if (Files.isRegularFile(newPath)) {
-            Files.delete(newPath);
+    private static void scanMode(String[] args) throws IOException {
+        List<Path> directories = getScanDirectories(args);
+        String filesValue = Util.findParameter(args, "--files");
+        if (directories.isEmpty() && filesValue == null) {
+            System.err.println("Missing scan path argument.");
+            return;
         }
 
-        String[] ffmpegCommand = new String[] { "ffmpeg", "-hide_banner", "-loglevel", "quiet", "-i", inputPath.toString(), "-crf", "20", "-map", "0",
-                "-acodec", "copy", "-scodec", "copy", "-c:v", "libx264", "-threads", "0", "-preset", "veryslow", newPath.toString() };
-        Process process = Runtime.getRuntime().exec(ffmpegCommand);
+        Result result;
+        ProbeScheduler scheduler = createProbeScheduler(args);
+        String timeLimitValue = Util.findParameter(args, "--time-limit");
+        if (timeLimitValue != null) {
+            scheduler.setDeadline(Instant.now().plus(Duration.ofMinutes(Long.parseLong(timeLimitValue))));
+        }
 
-        try {
-            process.waitFor();
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+        LeaseDirectory leases = getLeaseDirectory(args);
+        if (filesValue != null) {
+            // Only the listed files are checked, entries of missing files elsewhere stay
+            Database database = loadDatabase(args, false, false);
+
+            String inFlightValue = Util.findParameter(args, "--in-flight");
+            int inFlight = inFlightValue != null ? Integer.parseInt(inFlightValue) : FileListScan.DEFAULT_IN_FLIGHT;
+            boolean nullSeparated = Util.hasParameter(args, "-0", "--null");
+            FileListScan scan = new FileListScan(database, scheduler, inFlight);
+            if ("-".equals(filesValue)) {
+                result = scan.scan(new InputStreamReader(System.in, StandardCharsets.UTF_8), nullSeparated);
+            } else {
+                try (Reader reader = Files.newBufferedReader(Paths.get(filesValue), StandardCharsets.UTF_8)) {
+                    result = scan.scan(reader, nullSeparated);
+                }
+            }
+        } else if (leases != null) {
+            // The main database is only read, the results go to the shard of this worker
+            Database database = new Database(getDatabasePath(args), null);
+            if (Files.isRegularFile(database.getPersistencePath())) {
+                database.load();
+            }
+
+            CooperativeScan scan = new CooperativeScan(directories, leases, scheduler);
+            result = scan.scan(database);
+        } else {
+            Database database = loadDatabase(args, false, true, directories);
+
+            result = ForkJoinPool.commonPool().invoke(FolderWalker.of(directories, database, scheduler));
         }
+        scheduler.shutdown();
+        saveProbeTiers(scheduler);
 
-        long newSize = Files.size(newPath);
-        long oldSize = Files.size(inputPath);
-        long percent100 = newSize * 10000 / oldSize;
-        String percent = (percent100 / 100.0) + "%";
+        for (ResultState state : ResultState.values()) {
+            System.out.println(state.name() + ": " + result.getCount(state));
+        }
+        for (ProbeQueue queue : scheduler.getQueues()) {
+            System.out.println(queue);
+        }
+        System.out.println(scheduler.getProber());
+    }
 
-        String line = inputPath + ": " + Util.printFileSize(oldSize) + " => " + Util.printFileSize(newSize) + ". " + percent + " in "
-                + Util.print(Duration.between(startTime, Instant.now())) + "\n";
-        System.out.println(line);
+    private static ProbeScheduler createProbeScheduler(String[] args) throws IOException {
+        String probesValue = Util.findParameter(args, "--probes");
+        int defaultLimit = probesValue != null ? Integer.parseInt(probesValue) : Runtime.getRuntime().availableProcessors();
+
+        Map<Path, Integer> rootLimitMap = new HashMap<>();
+        String storeProbesValue = Util.findParameter(args, "--store-probes");
+        if (storeProbesValue != null) {
+            for (String rootValue : storeProbesValue.split(",")) {
+                int i = rootValue.lastIndexOf('=');
+                if (i <= 0) {
+                    throw new IllegalArgumentException("Invalid store probes: " + rootValue);
+                }
+                rootLimitMap.put(Paths.get(rootValue.substring(0, i)), Integer.parseInt(rootValue.substring(i + 1)));
+            }
+        }
 
-        Files.write(logPath, line.getBytes(), StandardOpenOption.APPEND, StandardOpenOption.CREATE);
+        ProbeScheduler scheduler = new ProbeScheduler(defaultLimit, rootLimitMap);
+        scheduler.getProber().setNativeParsing(!Util.hasParameter(args, "--ffprobe-only"));
+        if (Util.hasParameter(args, "--no-classify")) {
+            scheduler.getProber().setClassifier(null);
+        }
+        if (!Util.hasParameter(args, "--no-tiers")) {
+            // The tiers that worked are shared by all scans of the database
+            ProbeTiers tiers = new ProbeTiers(getDatabasePath(args).resolveSibling("probe-tiers.tsv"));
+            tiers.load();
+            scheduler.getProber().setTiers(tiers);
+        }
 
-        Files.move(inputPath, oldPath);
-        Files.move(newPath, finalPath);
+        String orderValue = Util.findParameter(args, "--order");
+        if (orderValue != null) {
+            scheduler.setOrder(ProbeOrder.valueOf(orderValue.toUpperCase()));
+        }
+        if (Util.hasParameter(args, "--adaptive")) {
+            String maxProbesValue = Util.findParameter(args, "--max-probes");
+            String maxLoadValue = Util.findParameter(args, "--max-load");
+            scheduler.setAdaptive(maxProbesValue != null ? Integer.valueOf(maxProbesValue) : null,
+                    maxLoadValue != null ? Double.valueOf(maxLoadValue) : null);
+        }
+        return scheduler;
+    }
 
-        database.load();
-        if (!inputPath.equals(finalPath)) {
-            database.removeEntry(inputPath);
+    private static void mergeMode(String[] args) throws IOException {
+        LeaseDirectory leases = getLeaseDirectory(args);
+        if (leases == null) {
+            System.err.println("Missing work directory argument.");
+            return;
         }
-        FileCheck check = new FileCheck(finalPath, database);
-        check.compute();
+
+        Database database = loadDatabase(args, false, false);
+        database.setAutoSave(false);
+
+        int counter = CooperativeScan.merge(database, leases);
+        database.save();
+
+        System.out.println("Merged: " + counter);
     }
 
-    private static void scanMode(String[] args) throws IOException {
-        String scanPath = Util.findParameter(args, "-s", "--scan");
-        if (scanPath == null) {
+    /**
+     * Returns the absolute scan roots given with -s, leaving out roots inside other roots.
+     */
+    private static List<Path> getScanDirectories(String[] args) {
+        List<Path> list = new ArrayList<>();
+        for (String scanPath : Util.findParameters(args, "-s", "--scan")) {
+            list.add(Paths.get(scanPath).toAbsolutePath().normalize());
+        }
+        Collections.sort(list);
+
+        List<Path> directories = new ArrayList<>();
+        for (Path directory : list) {
+            if (directories.isEmpty() || !directory.startsWith(directories.get(directories.size() - 1))) {
+                directories.add(directory);
+            }
+        }
+        return directories;
+    }
+
+    private static void serveMode(String[] args) throws IOException {
+        List<Path> directories = getScanDirectories(args);
+        if (directories.isEmpty()) {
             System.err.println("Missing scan path argument.");
             return;
         }
-        Path directory = Paths.get(scanPath);
 
-        Database database = loadDatabase(args, false);
+        String portValue = Util.findParameter(args, "-p", "--port");
+        int port = portValue != null ? Integer.parseInt(portValue) : QueryServer.DEFAULT_PORT;
 
-        FolderWalker baseTask = new FolderWalker(directory, database);
+        String intervalValue = Util.findParameter(args, "-i", "--interval");
+        Duration interval = Duration.ofMinutes(intervalValue != null ? Long.parseLong(intervalValue) : 60);
 
-        Result result = ForkJoinPool.commonPool().invoke(baseTask);
+        Database database = loadDatabase(args, false, true);
+        ProbeScheduler scheduler = createProbeScheduler(args);
 
-        for (ResultState state : ResultState.values()) {
-            System.out.println(state.name() + ": " + result.getCount(state));
+        QueryServer server = new QueryServer(database, port);
+        server.start();
+        System.out.println("Listening on port " + server.getPort());
+
+        // Keep the resident database up to date, only new and changed files are probed again
+        ScheduledExecutorService scanExecutor = Executors.newSingleThreadScheduledExecutor();
+        scanExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                for (Path directory : directories) {
+                    database.removeEntries(directory, p -> !Files.isRegularFile(p));
+                    database.removeNonMedia(directory, p -> !Files.isRegularFile(p));
+                }
+                Result result = ForkJoinPool.commonPool().invoke(FolderWalker.of(directories, database, scheduler));
+                saveProbeTiers(scheduler);
+                System.out.println(Instant.now() + ": Scan finished, " + ResultState.NEW.name() + ": " + result.getCount(ResultState.NEW) + ", "
+                        + ResultState.UPDATED.name() + ": " + result.getCount(ResultState.UPDATED));
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+
+        try {
+            server.awaitTermination();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            scanExecutor.shutdownNow();
         }
     }
 
-    private static Database loadDatabase(String[] args, boolean mustExist) throws IOException {
+    private static void saveProbeTiers(ProbeScheduler scheduler) {
+        ProbeTiers tiers = scheduler.getProber().getTiers();
+        if (tiers != null && Files.isDirectory(tiers.getTiersPath().getParent())) {
+            try {
+                tiers.save();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static LeaseDirectory getLeaseDirectory(String[] args) throws IOException {
+        String workDirectoryName = Util.findParameter(args, "-w", "--workdir");
+        if (workDirectoryName == null) {
+            return null;
+        }
+
+        String workerId = Util.findParameter(args, "--worker");
+        if (workerId == null) {
+            workerId = ManagementFactory.getRuntimeMXBean().getName();
+        }
+
+        String leaseValue = Util.findParameter(args, "--lease");
+        Duration leaseDuration = Duration.ofMinutes(leaseValue != null ? Long.parseLong(leaseValue) : 10);
+
+        return new LeaseDirectory(Paths.get(workDirectoryName).toAbsolutePath(), workerId, leaseDuration);
+    }
+
+    private static Path getDatabasePath(String[] args) {
         String databaseName = Util.findParameter(args, "-d", "--database");
         if (databaseName == null) {
             databaseName = System.getProperty("user.home") + "/.moviechecker/database.xml";
         }
         Path databasePath = Paths.get(databaseName);
-        databasePath = databasePath.toAbsolutePath();
+        return databasePath.toAbsolutePath();
+    }
+
+    private static void shardMode(String[] args) throws IOException {
+        String schemeValue = Util.findParameter(args, "--scheme");
+        if (schemeValue == null) {
+            System.err.println("Missing shard scheme argument.");
+            return;
+        }
+        ShardScheme scheme = "none".equalsIgnoreCase(schemeValue) ? null : ShardScheme.parse(schemeValue);
+
+        Database database = loadDatabase(args, true, false);
+        database.setAutoSave(false);
+
+        database.setShardScheme(scheme);
+        database.save();
+
+        System.out.println("Shards: " + database.getShardCount());
+    }
+
+    private static Database loadDatabase(String[] args, boolean mustExist, boolean verify) throws IOException {
+        return loadDatabase(args, mustExist, verify, null);
+    }
+
+    /**
+     * Loads the database, of a sharded database only the shards that can hold files below the directories if they are
+     * given.
+     */
+    private static Database loadDatabase(String[] args, boolean mustExist, boolean verify, List<Path> directories) throws IOException {
+        Path databasePath = getDatabasePath(args);
 
         if (mustExist && !Files.isRegularFile(databasePath)) {
             throw new IOException("Database file is missing.");
@@ -251,26 +701,45 @@ public class MovieChecker {
 
         Database database = new Database(databasePath, null);
         if (Files.isRegularFile(databasePath)) {
-            database.load();
+            database.load(directories);
         }
 
         database.setAutoSave(true);
 
-        List<Path> pathList = database.getPathList();
-        for (Path path : pathList) {
-            if (!Files.isRegularFile(path)) {
-                database.removeEntry(path);
+        if (verify) {
+            List<Path> pathList = database.getPathList();
+            for (Path path : pathList) {
+                if (!Files.isRegularFile(path)) {
+                    database.removeEntry(path);
+                }
             }
+            database.removeNonMedia(null, p -> !Files.isRegularFile(p));
         }
 
         return database;
     }
 
     private static void printHelp() {
-        System.out.println("Command: scan [-d | --database <databasefile>] (-s | --scan <directory>)");
-        System.out.println("Command: list [-d | --database <databasefile>]");
-        System.out.println("Command: find [-d | --database <databasefile>] (-e | --encoding <videoencoding>)");
-        System.out
-                .println("Command: convert [-d | --database <databasefile>] [-l | --logfile <logfile>] [-m | --max <max-count>] (-e | --encoding <videoencoding>)");
+        System.out.println(
+                "Command: scan [-d | --database <databasefile>] [-w | --workdir <directory> [--worker <id>] [--lease <minutes>]] [--time-limit <minutes>] (-s | --scan <directory>)...");
+        System.out.println("Command: merge [-d | --database <databasefile>] (-w | --workdir <directory>)");
+        System.out.println("Command: list [-d | --database <databasefile>] [-c | --connect <port>] [--verify]");
+        System.out.println("Command: find [-d | --database <databasefile>] [-c | --connect <port>] [--verify] (-e | --encoding <videoencoding>)");
+        System.out.println("Command: stats [-d | --database <databasefile>] [-c | --connect <port>] [--verify] [--dir <directory> [--children]]");
+        System.out.println("Command: export [-d | --database <databasefile>] [-f | --format (csv | jsonl)] [-o | --output <file>]");
+        System.out.println("Command: verify [-d | --database <databasefile>] [--dir <directory>] [--threads <count>] [--device-threads <count>]"
+                + " [--device-rate <MB-per-second>]");
+        System.out.println("Command: shard [-d | --database <databasefile>] --scheme (depth:<names> | hash:<shards> | none)");
+        System.out.println(
+                "Command: serve [-d | --database <databasefile>] [-p | --port <port>] [-i | --interval <minutes>] (-s | --scan <directory>)...");
+        System.out.println(
+                "Command: convert [-d | --database <databasefile>] [-l | --logfile <logfile>] [-m | --max <max-count>] [--scratch <directory>] [--verify] [--plan] (-e | --encoding <videoencoding>)");
+        System.out.println("Encoder options of convert: [--crf <crf>] [--target <saved-MB-per-cpu-hour> [--presets <preset>[,<preset>...]]]");
+        System.out.println("Plan options of convert, -e is optional with --plan: [--accept-video <codec>[,<codec>...]] [--accept-audio <codec>[,<codec>...]]"
+                + " [--audio-codec <encoder>]");
+        System.out.println("Load options of convert: [-j | --jobs <count>] [--max-load <cpu-share-of-other-processes>] [--window <HH:mm>-<HH:mm>]");
+        System.out.println("Probe options of scan and serve: [--probes <count>] [--store-probes <root>=<count>[,<root>=<count>...]]"
+                + " [--adaptive [--max-probes <count>] [--max-load <load-per-cpu>]] [--order (value | fifo | locality)] [--ffprobe-only] [--no-tiers] [--no-classify]");
+        System.out.println("File list options of scan, instead of -s: --files (<listfile> | -) [-0 | --null] [--in-flight <count>]");
     }
 }
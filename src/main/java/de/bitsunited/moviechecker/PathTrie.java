@@ -0,0 +1,384 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import de.bitsunited.moviechecker.Database.Entry;
+import de.bitsunited.moviechecker.Database.NonMedia;
+
+/**
+ * Entries keyed by path, stored as a tree of name segments. Directory names are interned, so the few hundred distinct
+ * directories are held once however many files they contain. Every node keeps the rollup of the entries below it, and
+ * the nodes of a directory are ordered by name so that a traversal visits the entries in path order. The order compares
+ * name by name, unlike {@link Path#compareTo}: {@code a/b} comes before {@code a.b/c}. Files known not to be media have
+ * a small record instead of an entry, they are not part of the rollups.
+ */
+class PathTrie {
+
+    static class Node {
+        private final Node parent;
+        private final String name;
+        private TreeMap<String, Node> childMap;
+        private Entry entry;
+        private NonMedia nonMedia;
+        private DirectoryStats stats;
+
+        private Node(Node parent, String name) {
+            this.parent = parent;
+            this.name = name;
+        }
+
+        public Node getParent() {
+            return parent;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Entry getEntry() {
+            return entry;
+        }
+
+        public NonMedia getNonMedia() {
+            return nonMedia;
+        }
+
+        public DirectoryStats getStats() {
+            return stats;
+        }
+
+        public Collection<Node> getChildren() {
+            return childMap != null ? childMap.values() : Collections.emptyList();
+        }
+
+        /**
+         * Returns the path of the node, the root of the trie has none.
+         */
+        public Path toPath() {
+            if (parent == null) {
+                return null;
+            }
+            int depth = 0;
+            for (Node node = this; node.parent.parent != null; node = node.parent) {
+                depth++;
+            }
+            String[] names = new String[depth];
+            Node node = this;
+            for (int i = depth - 1; i >= 0; i--) {
+                names[i] = node.name;
+                node = node.parent;
+            }
+            return Paths.get(node.name, names);
+        }
+    }
+
+    // The children of the root are the roots of the paths, relative paths have an empty root
+    private final Node root = new Node(null, null);
+
+    private final Map<String, String> segmentMap = new HashMap<>();
+
+    private int nonMediaCount;
+
+    public Node getRoot() {
+        return root;
+    }
+
+    public Node find(Path path) {
+        Node node = root.childMap != null ? root.childMap.get(getRootName(path)) : null;
+        for (int i = 0; node != null && i < path.getNameCount(); i++) {
+            node = node.childMap != null ? node.childMap.get(path.getName(i).toString()) : null;
+        }
+        return node;
+    }
+
+    public Node findOrCreate(Path path) {
+        Node node = getChild(root, getRootName(path), true);
+        int count = path.getNameCount();
+        for (int i = 0; i < count; i++) {
+            // Only directory names repeat, file names are not worth interning
+            node = getChild(node, path.getName(i).toString(), i < count - 1);
+        }
+        return node;
+    }
+
+    public Node getChild(Node node, String name, boolean intern) {
+        if (node.childMap == null) {
+            node.childMap = new TreeMap<>();
+        }
+        Node child = node.childMap.get(name);
+        if (child == null) {
+            child = new Node(node, intern ? segmentMap.computeIfAbsent(name, n -> n) : name);
+            node.childMap.put(child.name, child);
+        }
+        return child;
+    }
+
+    public Entry get(Path path) {
+        Node node = find(path);
+        return node != null ? node.entry : null;
+    }
+
+    /**
+     * Sets the entry of its node and returns the previous one.
+     */
+    public Entry put(Entry entry) {
+        Node node = entry.getNode();
+        Entry oldEntry = node.entry;
+        if (oldEntry != null) {
+            updateStats(node, oldEntry, -1);
+        }
+        node.entry = entry;
+        updateStats(node, entry, 1);
+        return oldEntry;
+    }
+
+    public Entry remove(Path path) {
+        Node node = find(path);
+        if (node == null || node.entry == null) {
+            return null;
+        }
+        Entry oldEntry = node.entry;
+        node.entry = null;
+        updateStats(node, oldEntry, -1);
+        prune(node);
+        return oldEntry;
+    }
+
+    /**
+     * Sets the non media record of the node and returns the previous one.
+     */
+    public NonMedia putNonMedia(Node node, NonMedia nonMedia) {
+        NonMedia oldNonMedia = node.nonMedia;
+        node.nonMedia = nonMedia;
+        if (oldNonMedia == null) {
+            nonMediaCount++;
+        }
+        return oldNonMedia;
+    }
+
+    public NonMedia removeNonMedia(Path path) {
+        Node node = find(path);
+        if (node == null || node.nonMedia == null) {
+            return null;
+        }
+        NonMedia oldNonMedia = node.nonMedia;
+        node.nonMedia = null;
+        nonMediaCount--;
+        prune(node);
+        return oldNonMedia;
+    }
+
+    /**
+     * Adds the entries and records of the other trie, replacing those at the same paths.
+     */
+    public void addAll(PathTrie other) {
+        addChildren(root, other.root);
+    }
+
+    private void addChildren(Node node, Node otherNode) {
+        for (Node otherChild : otherNode.getChildren()) {
+            Node child = getChild(node, otherChild.name, !otherChild.getChildren().isEmpty());
+            if (otherChild.entry != null) {
+                put(otherChild.entry.bind(child));
+            }
+            if (otherChild.nonMedia != null) {
+                putNonMedia(child, otherChild.nonMedia);
+            }
+            addChildren(child, otherChild);
+        }
+    }
+
+    public NonMedia getNonMedia(Path path) {
+        Node node = find(path);
+        return node != null ? node.nonMedia : null;
+    }
+
+    public int getNonMediaCount() {
+        return nonMediaCount;
+    }
+
+    /**
+     * Passes the nodes with a non media record below the directory, all if it is {@code null}, in path order.
+     */
+    public void forEachNonMediaUnder(Path directory, Consumer<Node> action) {
+        Node node = directory != null ? find(directory) : root;
+        if (node != null) {
+            forEachNonMediaChild(node, action);
+        }
+    }
+
+    /**
+     * Passes the nodes with a non media record below the directory, all if it is {@code null}, with their paths in path
+     * order.
+     */
+    public void forEachNonMediaPathUnder(Path directory, BiConsumer<Path, Node> action) {
+        Node node = directory != null ? find(directory) : root;
+        if (node != null) {
+            forEachNonMediaChild(node, node.toPath(), action);
+        }
+    }
+
+    private static void forEachNonMediaChild(Node node, Path path, BiConsumer<Path, Node> action) {
+        for (Node child : node.getChildren()) {
+            Path childPath = resolve(path, child);
+            if (child.nonMedia != null) {
+                action.accept(childPath, child);
+            }
+            forEachNonMediaChild(child, childPath, action);
+        }
+    }
+
+    private static void forEachNonMediaChild(Node node, Consumer<Node> action) {
+        for (Node child : node.getChildren()) {
+            if (child.nonMedia != null) {
+                action.accept(child);
+            }
+            forEachNonMediaChild(child, action);
+        }
+    }
+
+    // Drops the nodes which are left without entries or records
+    private static void prune(Node node) {
+        while (node.parent != null && node.entry == null && node.nonMedia == null && (node.childMap == null || node.childMap.isEmpty())) {
+            node.parent.childMap.remove(node.name);
+            node = node.parent;
+        }
+    }
+
+    private static void updateStats(Node node, Entry entry, int sign) {
+        for (Node directory = node.parent; directory != null; directory = directory.parent) {
+            if (directory.stats == null) {
+                directory.stats = new DirectoryStats();
+            }
+            directory.stats.update(entry, sign);
+            if (directory.stats.getFileCount() == 0) {
+                directory.stats = null;
+            }
+        }
+    }
+
+    public DirectoryStats getStats(Path directory) {
+        Node node = directory != null ? find(directory) : root;
+        return node != null ? node.stats : null;
+    }
+
+    public int size() {
+        return root.stats != null ? (int) root.stats.getFileCount() : 0;
+    }
+
+    /**
+     * Passes the entries below the directory, all entries if it is {@code null}, in path order.
+     */
+    public void forEachUnder(Path directory, Consumer<Entry> action) {
+        Node node = directory != null ? find(directory) : root;
+        if (node != null) {
+            forEachChild(node, action);
+        }
+    }
+
+    /**
+     * Passes the entries below the directory, all entries if it is {@code null}, with their paths in path order. The
+     * path of every node is resolved once from the path of its parent, paths are not kept on the nodes.
+     */
+    public void forEachPathUnder(Path directory, BiConsumer<Path, Entry> action) {
+        Node node = directory != null ? find(directory) : root;
+        if (node != null) {
+            forEachChild(node, node.toPath(), action);
+        }
+    }
+
+    private static void forEachChild(Node node, Path path, BiConsumer<Path, Entry> action) {
+        for (Node child : node.getChildren()) {
+            Path childPath = resolve(path, child);
+            if (child.entry != null) {
+                action.accept(childPath, child.entry);
+            }
+            forEachChild(child, childPath, action);
+        }
+    }
+
+    // The children of the root are the roots of the paths
+    private static Path resolve(Path path, Node child) {
+        return path != null ? path.resolve(child.name) : Paths.get(child.name);
+    }
+
+    private static void forEachChild(Node node, Consumer<Entry> action) {
+        for (Node child : node.getChildren()) {
+            if (child.entry != null) {
+                action.accept(child.entry);
+            }
+            forEachChild(child, action);
+        }
+    }
+
+    /**
+     * Passes the entries after the path, all entries if it is {@code null}, in path order until the action returns
+     * false.
+     */
+    public void forEachAfter(Path path, Predicate<Entry> action) {
+        List<String> names = null;
+        if (path != null) {
+            names = new ArrayList<>(path.getNameCount() + 1);
+            names.add(getRootName(path));
+            for (Path name : path) {
+                names.add(name.toString());
+            }
+        }
+        forEachChildAfter(root, names, 0, action);
+    }
+
+    private static boolean forEachChildAfter(Node node, List<String> names, int index, Predicate<Entry> action) {
+        if (node.childMap == null) {
+            return true;
+        }
+        String name = names != null && index < names.size() ? names.get(index) : null;
+        Collection<Node> children = name != null ? node.childMap.tailMap(name, true).values() : node.childMap.values();
+        for (Node child : children) {
+            // A node on the path comes before it, only the nodes below it may come after
+            boolean onPath = name != null && child.name.equals(name);
+            if (!onPath && child.entry != null && !action.test(child.entry)) {
+                return false;
+            }
+            if (!forEachChildAfter(child, onPath ? names : null, index + 1, action)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public List<Entry> entriesUnder(Path directory) {
+        List<Entry> list = new ArrayList<>();
+        forEachUnder(directory, list::add);
+        return list;
+    }
+
+    private static String getRootName(Path path) {
+        Path pathRoot = path.getRoot();
+        return pathRoot != null ? pathRoot.toString() : "";
+    }
+}
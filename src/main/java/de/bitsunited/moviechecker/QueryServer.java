@@ -0,0 +1,127 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers list, find and stats queries from a resident database. Clients send their command line arguments one per
+ * line followed by an empty line and receive the output until the connection is closed.
+ */
+public class QueryServer {
+
+    public static final int DEFAULT_PORT = 47110;
+
+    private final Database database;
+
+    private final ServerSocket serverSocket;
+
+    private final ExecutorService executor;
+
+    public QueryServer(Database database, int port) throws IOException {
+        this.database = Objects.requireNonNull(database);
+        // Only local clients may connect
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.executor = Executors.newCachedThreadPool();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public void start() {
+        executor.execute(() -> accept());
+    }
+
+    public void stop() throws IOException {
+        serverSocket.close();
+        executor.shutdown();
+    }
+
+    public void awaitTermination() throws InterruptedException {
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                executor.execute(() -> handle(socket));
+            } catch (SocketException e) {
+                // Server socket was closed
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try {
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                List<String> argList = new ArrayList<>();
+                String line = reader.readLine();
+                while (line != null && !line.isEmpty()) {
+                    argList.add(line);
+                    line = reader.readLine();
+                }
+
+                PrintStream out = new PrintStream(socket.getOutputStream(), false, StandardCharsets.UTF_8.name());
+                if (!MovieChecker.query(database, argList.toArray(new String[argList.size()]), out)) {
+                    out.println("Unknown query: " + argList);
+                }
+                out.flush();
+            } finally {
+                socket.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static void query(int port, String[] args, PrintStream out) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            PrintWriter writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            for (String arg : args) {
+                writer.println(arg);
+            }
+            writer.println();
+            writer.flush();
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line = reader.readLine();
+            while (line != null) {
+                out.println(line);
+                line = reader.readLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+
+/**
+ * Assigns the files of a database to shards by their directory, so all files of a directory are in the same shard.
+ * Shards by depth hold the directories below the first names of their path, e.g. one shard per library folder, and can
+ * be loaded for a single folder. Shards by hash spread the directories evenly but always have to be loaded together.
+ */
+public abstract class ShardScheme {
+
+    private static final String DEPTH = "depth";
+    private static final String HASH = "hash";
+
+    private final String type;
+    private final int value;
+
+    private ShardScheme(String type, int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("Invalid shard scheme: " + type + ":" + value);
+        }
+        this.type = type;
+        this.value = value;
+    }
+
+    public static ShardScheme byDepth(int depth) {
+        return new ShardScheme(DEPTH, depth) {
+
+            @Override
+            public String getKey(Path directory) {
+                if (directory == null) {
+                    return "";
+                }
+                if (directory.getNameCount() <= depth) {
+                    return directory.toString();
+                }
+                Path prefix = directory.subpath(0, depth);
+                return directory.getRoot() != null ? directory.getRoot().resolve(prefix).toString() : prefix.toString();
+            }
+
+            @Override
+            public Path getScope(String key) {
+                return Paths.get(key);
+            }
+
+            @Override
+            public boolean covers(String key, Path directory) {
+                Path scope = getScope(key);
+                // A shard of a shallow directory only holds the files directly inside it
+                return scope.startsWith(directory) || (scope.getNameCount() == depth && directory.startsWith(scope));
+            }
+        };
+    }
+
+    public static ShardScheme byHash(int count) {
+        return new ShardScheme(HASH, count) {
+
+            @Override
+            public String getKey(Path directory) {
+                return Integer.toString(Math.floorMod(directory != null ? directory.toString().hashCode() : 0, count));
+            }
+
+            @Override
+            public Path getScope(String key) {
+                return null;
+            }
+
+            @Override
+            public boolean covers(String key, Path directory) {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Parses a scheme written as {@code depth:<names>} or {@code hash:<shards>}.
+     */
+    public static ShardScheme parse(String value) {
+        int i = value.indexOf(':');
+        try {
+            if (i > 0 && DEPTH.equalsIgnoreCase(value.substring(0, i))) {
+                return byDepth(Integer.parseInt(value.substring(i + 1)));
+            } else if (i > 0 && HASH.equalsIgnoreCase(value.substring(0, i))) {
+                return byHash(Integer.parseInt(value.substring(i + 1)));
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid shard scheme: " + value);
+    }
+
+    /**
+     * Returns the key of the shard holding the files of the directory.
+     */
+    public abstract String getKey(Path directory);
+
+    /**
+     * Returns the directory all files of the shard are in, {@code null} if they are spread over the whole tree.
+     */
+    public abstract Path getScope(String key);
+
+    /**
+     * Returns true if the shard can hold files below the directory.
+     */
+    public abstract boolean covers(String key, Path directory);
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, value);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ShardScheme)) {
+            return false;
+        }
+        ShardScheme other = (ShardScheme) obj;
+        return type.equals(other.type) && value == other.value;
+    }
+
+    @Override
+    public String toString() {
+        return type + ":" + value;
+    }
+}
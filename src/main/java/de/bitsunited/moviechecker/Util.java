@@ -19,6 +19,9 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
 import java.util.stream.Collectors;
 
@@ -101,6 +104,16 @@ public class Util {
         return path.getFileName().toString().endsWith("." + extension);
     }
 
+    /**
+     * Returns the lower case extension of the file name, or an empty string if there is none. The name of a hidden file
+     * like {@code .profile} is no extension.
+     */
+    public static String getFileExtension(Path path) {
+        String fileNameString = path.getFileName().toString();
+        int i = fileNameString.lastIndexOf('.');
+        return i > 0 ? fileNameString.substring(i + 1).toLowerCase(Locale.ROOT) : "";
+    }
+
     public static Path replaceFileExtension(Path path, String newExtension) {
         String fileNameString = path.getFileName().toString();
         int i = fileNameString.lastIndexOf('.');
@@ -142,4 +155,23 @@ public class Util {
         }
         return null;
     }
+
+    /**
+     * Returns the values of all occurrences of the option, for options that may be given several times.
+     */
+    public static List<String> findParameters(String[] args, String... optionVariants) {
+        Objects.requireNonNull(args);
+        Objects.requireNonNull(optionVariants);
+
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < args.length - 1; i++) {
+            for (String option : optionVariants) {
+                if (Objects.equals(args[i], option)) {
+                    list.add(args[++i]);
+                    break;
+                }
+            }
+        }
+        return list;
+    }
 }
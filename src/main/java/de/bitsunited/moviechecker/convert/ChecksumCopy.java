@@ -0,0 +1,79 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.convert;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Copies a file through a buffer, computing the checksum of the source while copying, and verifies the written copy by
+ * reading it back.
+ * <p>
+ * The target is forced to the device before it is read back, but the read may still be served from the page cache. The
+ * check catches errors on the way to the file system, not a device that loses data it reported as written.
+ */
+public class ChecksumCopy {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private ChecksumCopy() {
+    }
+
+    /**
+     * Copies the source to the target, replacing an existing target, and returns the checksum of the content. Throws an
+     * {@link IOException} if the target does not read back the same content.
+     */
+    public static long copy(Path source, Path target) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+            }
+            out.force(true);
+        }
+
+        long sourceChecksum = crc.getValue();
+        long targetChecksum = checksum(target);
+        if (sourceChecksum != targetChecksum) {
+            throw new IOException("Checksum mismatch after copying " + source + " to " + target);
+        }
+        return sourceChecksum;
+    }
+
+    public static long checksum(Path path) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+}
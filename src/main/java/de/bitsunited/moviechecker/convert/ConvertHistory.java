@@ -0,0 +1,216 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.convert;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tab separated log of finished encodes, used to estimate how long future conversions take and which preset pays off.
+ */
+public class ConvertHistory {
+
+    private static final String HEADER = "time\tpath\tcodec\tinput_size\tmedia_seconds\tencode_seconds\toutput_size\twidth\theight\tbitrate\tpreset\tcrf"
+            + "\tcpu_seconds";
+
+    // Records written before the preset was recorded used the fixed settings
+    private static final String LEGACY_PRESET = "veryslow";
+    private static final int LEGACY_CRF = 20;
+
+    public static class Sample {
+        private final Instant time;
+        private final Path path;
+        private final String codec;
+        private final int width;
+        private final int height;
+        private final Long bitrate;
+        private final long inputSize;
+        private final Duration mediaDuration;
+        private final String preset;
+        private final int crf;
+        private final Duration encodeDuration;
+        private final Duration cpuDuration;
+        private final long outputSize;
+
+        public Sample(Instant time, Path path, String codec, int width, int height, Long bitrate, long inputSize, Duration mediaDuration, String preset,
+                int crf, Duration encodeDuration, Duration cpuDuration, long outputSize) {
+            this.time = time;
+            this.path = path;
+            this.codec = codec;
+            this.width = width;
+            this.height = height;
+            this.bitrate = bitrate;
+            this.inputSize = inputSize;
+            this.mediaDuration = mediaDuration;
+            this.preset = preset;
+            this.crf = crf;
+            this.encodeDuration = encodeDuration;
+            this.cpuDuration = cpuDuration;
+            this.outputSize = outputSize;
+        }
+
+        public Instant getTime() {
+            return time;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public String getCodec() {
+            return codec;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public Long getBitrate() {
+            return bitrate;
+        }
+
+        public long getInputSize() {
+            return inputSize;
+        }
+
+        public Duration getMediaDuration() {
+            return mediaDuration;
+        }
+
+        public String getPreset() {
+            return preset;
+        }
+
+        public int getCrf() {
+            return crf;
+        }
+
+        public Duration getEncodeDuration() {
+            return encodeDuration;
+        }
+
+        /**
+         * Returns the CPU time of the encoder, {@code null} if it could not be measured.
+         */
+        public Duration getCpuDuration() {
+            return cpuDuration;
+        }
+
+        public long getOutputSize() {
+            return outputSize;
+        }
+
+        /**
+         * Media seconds encoded per wall clock second.
+         */
+        public double getSpeed() {
+            return encodeDuration.isZero() ? 0 : (double) mediaDuration.toMillis() / encodeDuration.toMillis();
+        }
+
+        /**
+         * Output size relative to the input size.
+         */
+        public double getSizeRatio() {
+            return inputSize > 0 ? (double) outputSize / inputSize : 1;
+        }
+    }
+
+    private final Path historyPath;
+
+    public ConvertHistory(Path historyPath) {
+        this.historyPath = historyPath;
+    }
+
+    public Path getHistoryPath() {
+        return historyPath;
+    }
+
+    public synchronized void append(Sample sample) throws IOException {
+        boolean exists = Files.isRegularFile(historyPath);
+        try (BufferedWriter writer = Files.newBufferedWriter(historyPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND)) {
+            if (!exists) {
+                writer.write(HEADER);
+                writer.write('\n');
+            }
+            writer.write(sample.getTime() + "\t" + sample.getPath().toUri() + "\t" + sample.getCodec() + "\t" + sample.getInputSize() + "\t"
+                    + toSeconds(sample.getMediaDuration()) + "\t" + toSeconds(sample.getEncodeDuration()) + "\t" + sample.getOutputSize() + "\t"
+                    + sample.getWidth() + "\t" + sample.getHeight() + "\t" + (sample.getBitrate() != null ? sample.getBitrate() : "") + "\t"
+                    + sample.getPreset() + "\t" + sample.getCrf() + "\t" + (sample.getCpuDuration() != null ? toSeconds(sample.getCpuDuration()) : ""));
+            writer.write('\n');
+        }
+    }
+
+    public synchronized List<Sample> load() throws IOException {
+        List<Sample> list = new ArrayList<>();
+        if (!Files.isRegularFile(historyPath)) {
+            return list;
+        }
+        for (String line : Files.readAllLines(historyPath, StandardCharsets.UTF_8)) {
+            // Keep trailing empty values
+            String[] values = line.split("\t", -1);
+            if (values.length < 7 || values[0].equals("time")) {
+                continue;
+            }
+            try {
+                boolean legacy = values.length < 13;
+                list.add(new Sample(Instant.parse(values[0]), Paths.get(URI.create(values[1])), values[2], legacy ? 0 : Integer.parseInt(values[7]),
+                        legacy ? 0 : Integer.parseInt(values[8]), legacy || values[9].isEmpty() ? null : Long.valueOf(values[9]),
+                        Long.parseLong(values[3]), toDuration(values[4]), legacy ? LEGACY_PRESET : values[10],
+                        legacy ? LEGACY_CRF : Integer.parseInt(values[11]), toDuration(values[5]),
+                        legacy || values[12].isEmpty() ? null : toDuration(values[12]), Long.parseLong(values[6])));
+            } catch (RuntimeException e) {
+                // Skip damaged lines
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Returns the overall speed of all recorded encodes in media seconds per wall clock second, {@code null} without
+     * history.
+     */
+    public Double getAverageSpeed() throws IOException {
+        long mediaMillis = 0;
+        long encodeMillis = 0;
+        for (Sample sample : load()) {
+            mediaMillis += sample.getMediaDuration().toMillis();
+            encodeMillis += sample.getEncodeDuration().toMillis();
+        }
+        return encodeMillis > 0 ? (double) mediaMillis / encodeMillis : null;
+    }
+
+    private static double toSeconds(Duration duration) {
+        return duration.toMillis() / 1000.0;
+    }
+
+    private static Duration toDuration(String seconds) {
+        return Duration.ofMillis(Math.round(Double.parseDouble(seconds) * 1000));
+    }
+}
@@ -0,0 +1,130 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.convert;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import de.bitsunited.moviechecker.Util;
+import de.bitsunited.moviechecker.probe.MediaInfo;
+import de.bitsunited.moviechecker.probe.StreamInfo;
+import de.bitsunited.moviechecker.probe.StreamInfo.StreamType;
+
+/**
+ * Decides per file from its probe output how much a conversion to Matroska has to do. Streams in an accepted codec are
+ * copied, so a file with acceptable video is only remuxed or gets its audio transcoded, which runs at disk speed
+ * instead of taking hours of CPU.
+ */
+public class ConvertPlanner {
+
+    public static final List<String> DEFAULT_VIDEO_CODECS = Arrays.asList("h264", "hevc");
+
+    public static final List<String> DEFAULT_AUDIO_CODECS = Arrays.asList("aac", "ac3", "eac3", "dts", "truehd", "flac", "mp3", "opus",
+            "vorbis");
+
+    public static final String DEFAULT_AUDIO_ENCODER = "aac";
+
+    private static final int AUDIO_KBITS_PER_CHANNEL = 64;
+
+    // Matroska has no MP4 text subtitles, they are converted to SubRip
+    private static final String MP4_SUBTITLE_CODEC = "mov_text";
+
+    public enum Action {
+        SKIP, REMUX, AUDIO, ENCODE
+    }
+
+    public static class Plan {
+        private final Action action;
+        private final List<String> streamOptions;
+
+        public Plan(Action action, List<String> streamOptions) {
+            this.action = action;
+            this.streamOptions = Collections.unmodifiableList(new ArrayList<>(streamOptions));
+        }
+
+        public Action getAction() {
+            return action;
+        }
+
+        /**
+         * Returns the ffmpeg codec options of the audio and subtitle streams, the video options depend on the action.
+         */
+        public List<String> getStreamOptions() {
+            return streamOptions;
+        }
+    }
+
+    private final Set<String> videoCodecs;
+
+    private final Set<String> audioCodecs;
+
+    private final String audioEncoder;
+
+    public ConvertPlanner(Collection<String> videoCodecs, Collection<String> audioCodecs, String audioEncoder) {
+        this.videoCodecs = new HashSet<>(videoCodecs);
+        this.audioCodecs = new HashSet<>(audioCodecs);
+        this.audioEncoder = audioEncoder;
+    }
+
+    /**
+     * Plans the conversion of the file, without probe output the video is encoded and everything else copied.
+     */
+    public Plan plan(Path path, MediaInfo info) {
+        List<String> options = new ArrayList<>(Arrays.asList("-c:a", "copy", "-c:s", "copy"));
+        if (info == null) {
+            return new Plan(Action.ENCODE, options);
+        }
+
+        // The stream specifiers count the streams of a type, all streams are mapped in their order
+        boolean transcodeAudio = false;
+        List<StreamInfo> audioList = info.getStreams(StreamType.AUDIO);
+        for (int i = 0; i < audioList.size(); i++) {
+            StreamInfo audio = audioList.get(i);
+            if (!audioCodecs.contains(audio.getCodec())) {
+                transcodeAudio = true;
+                options.addAll(Arrays.asList("-c:a:" + i, audioEncoder));
+                if (audio.getChannels() > 0) {
+                    options.addAll(Arrays.asList("-b:a:" + i, audio.getChannels() * AUDIO_KBITS_PER_CHANNEL + "k"));
+                }
+            }
+        }
+        boolean convertSubtitles = false;
+        List<StreamInfo> subtitleList = info.getStreams(StreamType.SUBTITLE);
+        for (int i = 0; i < subtitleList.size(); i++) {
+            if (MP4_SUBTITLE_CODEC.equals(subtitleList.get(i).getCodec())) {
+                convertSubtitles = true;
+                options.addAll(Arrays.asList("-c:s:" + i, "srt"));
+            }
+        }
+
+        StreamInfo video = info.getVideoStream();
+        if (video != null && !videoCodecs.contains(video.getCodec())) {
+            return new Plan(Action.ENCODE, options);
+        }
+        if (transcodeAudio) {
+            return new Plan(Action.AUDIO, options);
+        }
+        if (convertSubtitles || !info.getContainer().startsWith("matroska") || !Util.hasFileExtension(path, "mkv")) {
+            return new Plan(Action.REMUX, options);
+        }
+        return new Plan(Action.SKIP, options);
+    }
+}
@@ -0,0 +1,497 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.convert;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.bitsunited.moviechecker.Database;
+import de.bitsunited.moviechecker.DirectoryStats;
+import de.bitsunited.moviechecker.Util;
+import de.bitsunited.moviechecker.event.ConvertEvent;
+import de.bitsunited.moviechecker.event.ConvertFinishEvent;
+import de.bitsunited.moviechecker.probe.MediaInfo;
+import de.bitsunited.moviechecker.probe.StreamInfo;
+import de.bitsunited.moviechecker.scan.FileCheck;
+
+/**
+ * Re-encodes movie files with ffmpeg and replaces the originals. With a {@link ConvertPlanner} files whose video is
+ * acceptable are only remuxed or get their audio transcoded. With a scratch directory the encode is written to local
+ * storage and copied back while the next file is encoded. A {@link LoadGovernor} may run several encodes in parallel.
+ */
+public class Converter {
+
+    public static final int DEFAULT_CRF = 20;
+
+    private static final Duration REPORT_INTERVAL = Duration.ofSeconds(10);
+
+    // Linux reports process CPU time in USER_HZ ticks, which are 100 per second
+    private static final long MILLIS_PER_TICK = 10;
+
+    private final Database database;
+    private final Path logPath;
+    private final boolean verify;
+    private Path scratchDirectory;
+    private ConvertHistory history;
+
+    // Aggregate progress of the running batch
+    private Duration totalMedia = Duration.ZERO;
+    private Duration doneMedia = Duration.ZERO;
+    private Instant batchStart;
+    private Double historySpeed;
+    private final Map<Path, FfmpegProgress> progressMap = new ConcurrentHashMap<>();
+
+    private LoadGovernor governor;
+    private PresetAdvisor advisor;
+    private ConvertPlanner planner;
+    private int crf = DEFAULT_CRF;
+
+    private static class Job {
+        private final Path inputPath;
+        private final Path outputPath;
+        private final Instant startTime;
+        private final Duration mediaDuration;
+        private final int exitValue;
+
+        public Job(Path inputPath, Path outputPath, Instant startTime, Duration mediaDuration, int exitValue) {
+            this.inputPath = inputPath;
+            this.outputPath = outputPath;
+            this.startTime = startTime;
+            this.mediaDuration = mediaDuration;
+            this.exitValue = exitValue;
+        }
+
+        public Path getInputPath() {
+            return inputPath;
+        }
+
+        public Path getOutputPath() {
+            return outputPath;
+        }
+
+        public Instant getStartTime() {
+            return startTime;
+        }
+
+        public Duration getMediaDuration() {
+            return mediaDuration;
+        }
+
+        public int getExitValue() {
+            return exitValue;
+        }
+    }
+
+    public Converter(Database database, Path logPath, boolean verify) {
+        this.database = database;
+        this.logPath = logPath;
+        this.verify = verify;
+    }
+
+    public Path getScratchDirectory() {
+        return scratchDirectory;
+    }
+
+    public void setScratchDirectory(Path scratchDirectory) {
+        this.scratchDirectory = scratchDirectory;
+    }
+
+    public ConvertHistory getHistory() {
+        return history;
+    }
+
+    public void setHistory(ConvertHistory history) {
+        this.history = history;
+    }
+
+    public LoadGovernor getGovernor() {
+        return governor;
+    }
+
+    /**
+     * Sets the governor that decides how many encodes run in parallel, one at a time without.
+     */
+    public void setGovernor(LoadGovernor governor) {
+        this.governor = governor;
+    }
+
+    public PresetAdvisor getAdvisor() {
+        return advisor;
+    }
+
+    /**
+     * Sets the advisor choosing the preset per file, without it every file is encoded with the default preset.
+     */
+    public void setAdvisor(PresetAdvisor advisor) {
+        this.advisor = advisor;
+    }
+
+    public ConvertPlanner getPlanner() {
+        return planner;
+    }
+
+    /**
+     * Sets the planner choosing between remux, audio transcode and encode per file, without it every file is encoded.
+     */
+    public void setPlanner(ConvertPlanner planner) {
+        this.planner = planner;
+    }
+
+    public int getCrf() {
+        return crf;
+    }
+
+    public void setCrf(int crf) {
+        this.crf = crf;
+    }
+
+    public void convert(List<Path> pathList) throws IOException {
+        totalMedia = Duration.ZERO;
+        doneMedia = Duration.ZERO;
+        batchStart = Instant.now();
+        for (Path path : pathList) {
+            // Remuxes take little time compared to encodes, only encodes count for the estimate
+            MediaInfo info = MediaInfo.parse(database.getEntryErrOut(path));
+            if (info != null && info.getDuration() != null && isEncode(getPlan(path, info))) {
+                totalMedia = totalMedia.plus(info.getDuration());
+            }
+        }
+        historySpeed = history != null ? history.getAverageSpeed() : null;
+        if (historySpeed != null && !totalMedia.isZero()) {
+            System.out.println("Estimated encoding time: " + Util.print(divide(totalMedia, historySpeed)));
+        }
+
+        if (scratchDirectory != null) {
+            Files.createDirectories(scratchDirectory);
+        }
+
+        LoadGovernor batchGovernor = governor != null ? governor : new LoadGovernor(1, null, null, null);
+        int jobs = batchGovernor.getMaxJobs();
+        Iterator<Path> iterator = pathList.iterator();
+        AtomicReference<IOException> failure = new AtomicReference<>();
+
+        // Files are finished one after the other, only as many as there are encodes may wait so the scratch directory
+        // holds no more than twice the number of jobs
+        ExecutorService finishExecutor = Executors.newSingleThreadExecutor();
+        Semaphore pendingFinishes = new Semaphore(jobs);
+
+        ExecutorService encodeExecutor = Executors.newFixedThreadPool(jobs);
+        List<Future<Void>> futureList = new ArrayList<>();
+        batchGovernor.start();
+        try {
+            for (int i = 0; i < jobs; i++) {
+                futureList.add(encodeExecutor.submit(() -> {
+                    Path path;
+                    while ((path = next(iterator, failure)) != null) {
+                        Job job = encode(path, batchGovernor);
+                        pendingFinishes.acquire();
+                        finishExecutor.execute(() -> {
+                            try {
+                                if (failure.get() == null) {
+                                    finish(job);
+                                } else {
+                                    // The batch stopped, the output of a job that is not finished is dropped
+                                    Files.deleteIfExists(job.getOutputPath());
+                                }
+                            } catch (IOException e) {
+                                failure.compareAndSet(null, e);
+                            } finally {
+                                pendingFinishes.release();
+                            }
+                        });
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<Void> future : futureList) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        failure.compareAndSet(null, (IOException) e.getCause());
+                    } else {
+                        throw new RuntimeException(e.getCause());
+                    }
+                }
+            }
+            finishExecutor.shutdown();
+            finishExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } finally {
+            batchGovernor.stop();
+            encodeExecutor.shutdownNow();
+            finishExecutor.shutdownNow();
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    private static Path next(Iterator<Path> iterator, AtomicReference<IOException> failure) {
+        synchronized (iterator) {
+            return failure.get() == null && iterator.hasNext() ? iterator.next() : null;
+        }
+    }
+
+    private Job encode(Path inputPath, LoadGovernor governor) throws IOException, InterruptedException {
+        ConvertEvent event = new ConvertEvent();
+        event.begin();
+        long waitStart = System.nanoTime();
+        governor.acquire();
+        event.slotWait = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - waitStart);
+
+        Path newPath = getTempPath(inputPath);
+        if (scratchDirectory != null) {
+            newPath = scratchDirectory.resolve(newPath.getFileName());
+        }
+        EncodeProcess process = null;
+        try {
+            MediaInfo info = MediaInfo.parse(database.getEntryErrOut(inputPath));
+            Duration mediaDuration = info != null ? info.getDuration() : null;
+            StreamInfo video = info != null ? info.getVideoStream() : null;
+            String codec = video != null ? video.getCodec() : DirectoryStats.UNKNOWN_CODEC;
+            long inputSize = Files.size(inputPath);
+            ConvertPlanner.Plan plan = getPlan(inputPath, info);
+            boolean encodeVideo = isEncode(plan);
+            String preset = null;
+            if (encodeVideo) {
+                preset = advisor != null ? advisor.select(codec, video != null ? video.getHeight() : 0, inputSize, mediaDuration)
+                        : PresetAdvisor.DEFAULT_PRESET;
+                System.out.println(inputPath + ": Start encoding with preset " + preset + "...");
+            } else {
+                System.out.println(inputPath + (plan.getAction() == ConvertPlanner.Action.REMUX ? ": Start remuxing..." : ": Start transcoding audio..."));
+            }
+            Instant startTime = Instant.now();
+
+            if (Files.isRegularFile(newPath)) {
+                Files.delete(newPath);
+            }
+
+            String[] ffmpegCommand;
+            if (plan == null) {
+                ffmpegCommand = new String[] { "ffmpeg", "-hide_banner", "-loglevel", "quiet", "-nostdin", "-nostats", "-progress", "pipe:1", "-i",
+                        inputPath.toString(), "-crf", Integer.toString(crf), "-map", "0", "-acodec", "copy", "-scodec", "copy", "-c:v", "libx264",
+                        "-threads", "0", "-preset", preset, newPath.toString() };
+            } else {
+                ffmpegCommand = getCommand(inputPath, newPath, plan, preset);
+            }
+            process = EncodeProcess.start(ffmpegCommand);
+            governor.attach(process);
+
+            long cpuTicks = -1;
+            FfmpegProgress progress = new FfmpegProgress();
+            progressMap.put(inputPath, progress);
+            Instant nextReport = startTime.plus(REPORT_INTERVAL);
+            try (BufferedReader reader = process.getReader()) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!progress.update(line)) {
+                        continue;
+                    }
+                    // The process is gone after it ended, keep the last reading
+                    long ticks = process.getCpuTicks();
+                    if (ticks >= 0) {
+                        cpuTicks = ticks;
+                    }
+                    if (!progress.isEnd() && Instant.now().isAfter(nextReport)) {
+                        report(inputPath, mediaDuration, progress);
+                        nextReport = Instant.now().plus(REPORT_INTERVAL);
+                    }
+                }
+            }
+            int exitValue = process.waitFor();
+            event.exitValue = exitValue;
+
+            // Suspended time does not count for the throughput
+            Duration elapsed = Duration.between(startTime, Instant.now()).minus(process.getPausedDuration());
+            Duration encoded = mediaDuration != null ? mediaDuration : progress.getOutTime();
+            synchronized (this) {
+                progressMap.remove(inputPath);
+                if (encodeVideo) {
+                    doneMedia = doneMedia.plus(encoded);
+                }
+            }
+            if (event.shouldCommit()) {
+                event.path = inputPath.toString();
+                event.action = plan != null ? plan.getAction().name() : ConvertPlanner.Action.ENCODE.name();
+                event.preset = preset;
+                event.inputSize = inputSize;
+                event.outputSize = Files.isRegularFile(newPath) ? Files.size(newPath) : 0;
+                event.mediaDuration = encoded.toMillis();
+                event.cpuTime = cpuTicks >= 0 ? cpuTicks * MILLIS_PER_TICK : 0;
+                event.paused = process.getPausedDuration().toMillis();
+                event.commit();
+            }
+            // Remuxes would distort the encoding speed of the history
+            if (encodeVideo && exitValue == 0 && Files.isRegularFile(newPath) && !encoded.isZero()) {
+                ConvertHistory.Sample sample = new ConvertHistory.Sample(Instant.now(), inputPath, codec, video != null ? video.getWidth() : 0,
+                        video != null ? video.getHeight() : 0, info != null ? info.getBitrate() : null, inputSize, encoded, preset, crf, elapsed,
+                        cpuTicks >= 0 ? Duration.ofMillis(cpuTicks * MILLIS_PER_TICK) : null, Files.size(newPath));
+                if (history != null) {
+                    history.append(sample);
+                }
+                if (advisor != null) {
+                    advisor.add(sample);
+                }
+            }
+
+            return new Job(inputPath, newPath, startTime, mediaDuration, exitValue);
+        } finally {
+            progressMap.remove(inputPath);
+            governor.release(process);
+        }
+    }
+
+    private void report(Path inputPath, Duration mediaDuration, FfmpegProgress progress) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(inputPath).append(": ");
+        if (mediaDuration != null && !mediaDuration.isZero()) {
+            sb.append(String.format(Locale.ROOT, "%.1f%%, ", 100.0 * progress.getOutTime().toMillis() / mediaDuration.toMillis()));
+        }
+        sb.append(String.format(Locale.ROOT, "%.1f fps, %.2fx", progress.getFps(), progress.getSpeed()));
+        if (progress.getBitrate() != null) {
+            sb.append(", ").append(progress.getBitrate());
+        }
+        Duration remaining = progress.estimateRemaining(mediaDuration);
+        if (remaining != null) {
+            sb.append(", ETA ").append(Util.print(remaining));
+        }
+
+        // The batch speed so far includes the running jobs, the history is used until enough was encoded
+        Duration batchMedia;
+        synchronized (this) {
+            batchMedia = doneMedia;
+            for (FfmpegProgress running : progressMap.values()) {
+                batchMedia = batchMedia.plus(running.getOutTime());
+            }
+        }
+        Duration batchTime = Duration.between(batchStart, Instant.now());
+        Double speed = !batchTime.isZero() && !batchMedia.isZero() ? (double) batchMedia.toMillis() / batchTime.toMillis() : historySpeed;
+        Duration batchRemaining = totalMedia.minus(batchMedia);
+        if (speed != null && speed > 0 && !batchRemaining.isNegative() && !batchRemaining.isZero()) {
+            sb.append(", total ETA ").append(Util.print(divide(batchRemaining, speed)));
+        }
+        System.out.println(sb);
+    }
+
+    private ConvertPlanner.Plan getPlan(Path path, MediaInfo info) {
+        return planner != null ? planner.plan(path, info) : null;
+    }
+
+    private static boolean isEncode(ConvertPlanner.Plan plan) {
+        return plan == null || plan.getAction() == ConvertPlanner.Action.ENCODE;
+    }
+
+    // Video, audio and subtitle streams are copied unless the plan converts them. Data streams like the tmcd or bin_data
+    // tracks of MP4 files cannot be muxed into Matroska and are dropped
+    private String[] getCommand(Path inputPath, Path newPath, ConvertPlanner.Plan plan, String preset) {
+        List<String> command = new ArrayList<>(Arrays.asList("ffmpeg", "-hide_banner", "-loglevel", "quiet", "-nostdin", "-nostats", "-progress",
+                "pipe:1", "-i", inputPath.toString(), "-map", "0:v", "-map", "0:a?", "-map", "0:s?", "-c", "copy"));
+        if (isEncode(plan)) {
+            command.addAll(Arrays.asList("-c:v", "libx264", "-crf", Integer.toString(crf), "-threads", "0", "-preset", preset));
+        }
+        command.addAll(plan.getStreamOptions());
+        command.add(newPath.toString());
+        return command.toArray(new String[0]);
+    }
+
+    private static Duration divide(Duration duration, double speed) {
+        return Duration.ofMillis((long) (duration.toMillis() / speed));
+    }
+
+    private void finish(Job job) throws IOException {
+        ConvertFinishEvent event = new ConvertFinishEvent();
+        event.begin();
+
+        Path inputPath = job.getInputPath();
+        Path newPath = job.getOutputPath();
+        // A failed ffmpeg run leaves a partial output, the original is kept
+        if (job.getExitValue() != 0) {
+            System.out.println(inputPath + ": ffmpeg failed with exit value " + job.getExitValue() + ", keeping the original");
+            Files.deleteIfExists(newPath);
+            return;
+        }
+        if (scratchDirectory != null) {
+            Path tempPath = getTempPath(inputPath);
+            ChecksumCopy.copy(newPath, tempPath);
+            Files.delete(newPath);
+            newPath = tempPath;
+        }
+
+        Path oldPath = inputPath.resolveSibling(inputPath.getFileName() + ".old");
+        Path finalPath = inputPath;
+        if (!Util.hasFileExtension(finalPath, "mkv")) {
+            finalPath = Util.replaceFileExtension(finalPath, "mkv");
+        }
+
+        long newSize = Files.size(newPath);
+        Long oldSize = database.getEntrySize(inputPath);
+        if (verify || oldSize == null) {
+            oldSize = Files.size(inputPath);
+        }
+        long percent100 = newSize * 10000 / oldSize;
+        String percent = (percent100 / 100.0) + "%";
+
+        String line = inputPath + ": " + Util.printFileSize(oldSize) + " => " + Util.printFileSize(newSize) + ". " + percent + " in "
+                + Util.print(Duration.between(job.getStartTime(), Instant.now())) + "\n";
+        System.out.println(line);
+
+        Files.write(logPath, line.getBytes(), StandardOpenOption.APPEND, StandardOpenOption.CREATE);
+
+        Files.move(inputPath, oldPath);
+        Files.move(newPath, finalPath);
+
+        database.load();
+        if (!inputPath.equals(finalPath)) {
+            database.removeEntry(inputPath);
+        }
+        FileCheck check = new FileCheck(finalPath, database);
+        check.compute();
+
+        event.path = inputPath.toString();
+        event.scratchCopy = scratchDirectory != null;
+        event.commit();
+    }
+
+    private static Path getTempPath(Path inputPath) {
+        Path newPath = inputPath.resolveSibling(".temp." + inputPath.getFileName());
+        if (!Util.hasFileExtension(newPath, "mkv")) {
+            newPath = Util.replaceFileExtension(newPath, "mkv");
+        }
+        return newPath;
+    }
+}
@@ -0,0 +1,151 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.convert;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+/**
+ * A running encoder process that can be suspended and resumed. On Unix the command is started through a shell that
+ * prints its process id before it replaces itself with the command, so the process can be signalled.
+ */
+public class EncodeProcess {
+
+    private static final Path SHELL = Paths.get("/bin/sh");
+
+    private final Process process;
+    private final BufferedReader reader;
+    private final Long pid;
+
+    private boolean suspended;
+    private long suspendTime;
+    private long pausedNanos;
+
+    private EncodeProcess(Process process, BufferedReader reader, Long pid) {
+        this.process = process;
+        this.reader = reader;
+        this.pid = pid;
+    }
+
+    public static EncodeProcess start(String[] command) throws IOException {
+        if (!Files.isExecutable(SHELL)) {
+            Process process = Runtime.getRuntime().exec(command);
+            return new EncodeProcess(process, new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.US_ASCII)), null);
+        }
+
+        String[] shellCommand = new String[command.length + 4];
+        shellCommand[0] = SHELL.toString();
+        shellCommand[1] = "-c";
+        shellCommand[2] = "echo $$; exec \"$@\"";
+        shellCommand[3] = "sh";
+        System.arraycopy(command, 0, shellCommand, 4, command.length);
+
+        Process process = Runtime.getRuntime().exec(shellCommand);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.US_ASCII));
+        Long pid = null;
+        String line = reader.readLine();
+        try {
+            pid = line != null ? Long.valueOf(line.trim()) : null;
+        } catch (NumberFormatException e) {
+            // Not signalled then
+        }
+        return new EncodeProcess(process, reader, pid);
+    }
+
+    /**
+     * Returns the standard output of the process.
+     */
+    public BufferedReader getReader() {
+        return reader;
+    }
+
+    public Long getPid() {
+        return pid;
+    }
+
+    public int waitFor() throws InterruptedException {
+        return process.waitFor();
+    }
+
+    public synchronized boolean isSuspended() {
+        return suspended;
+    }
+
+    public synchronized boolean suspend() {
+        if (suspended || pid == null || !signal("-STOP")) {
+            return false;
+        }
+        suspended = true;
+        suspendTime = System.nanoTime();
+        return true;
+    }
+
+    public synchronized boolean resume() {
+        if (!suspended || !signal("-CONT")) {
+            return false;
+        }
+        suspended = false;
+        pausedNanos += System.nanoTime() - suspendTime;
+        return true;
+    }
+
+    /**
+     * Returns the time the process spent suspended.
+     */
+    public synchronized Duration getPausedDuration() {
+        long nanos = pausedNanos;
+        if (suspended) {
+            nanos += System.nanoTime() - suspendTime;
+        }
+        return Duration.ofNanos(nanos);
+    }
+
+    /**
+     * Returns the CPU time of the process in clock ticks, {@code -1} if unknown.
+     */
+    public long getCpuTicks() {
+        if (pid == null) {
+            return -1;
+        }
+        try {
+            String stat = new String(Files.readAllBytes(Paths.get("/proc", pid.toString(), "stat")), StandardCharsets.US_ASCII);
+            // The command name may contain blanks, the fields after it are fixed: utime and stime are 14 and 15
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            return Long.parseLong(fields[11]) + Long.parseLong(fields[12]);
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private boolean signal(String signal) {
+        if (!process.isAlive()) {
+            return false;
+        }
+        try {
+            return Runtime.getRuntime().exec(new String[] { "kill", signal, pid.toString() }).waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
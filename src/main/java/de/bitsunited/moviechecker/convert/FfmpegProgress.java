@@ -0,0 +1,117 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.convert;
+
+import java.time.Duration;
+
+/**
+ * State of a running ffmpeg encode, read from the key/value lines written by {@code -progress}.
+ */
+public class FfmpegProgress {
+
+    private long frame;
+    private double fps;
+    private String bitrate;
+    private long totalSize;
+    private Duration outTime = Duration.ZERO;
+    private double speed;
+    private boolean end;
+
+    /**
+     * Applies one line of the progress stream and returns {@code true} if it completes a report.
+     */
+    public boolean update(String line) {
+        int i = line.indexOf('=');
+        if (i < 0) {
+            return false;
+        }
+        String key = line.substring(0, i).trim();
+        String value = line.substring(i + 1).trim();
+        try {
+            switch (key) {
+            case "frame":
+                frame = Long.parseLong(value);
+                break;
+            case "fps":
+                fps = Double.parseDouble(value);
+                break;
+            case "bitrate":
+                bitrate = "N/A".equals(value) ? null : value;
+                break;
+            case "total_size":
+                totalSize = Long.parseLong(value);
+                break;
+            case "out_time_us":
+            case "out_time_ms":
+                // Both are microseconds, out_time_ms is misnamed by ffmpeg
+                outTime = Duration.ofNanos(Long.parseLong(value) * 1000);
+                break;
+            case "speed":
+                speed = value.endsWith("x") ? Double.parseDouble(value.substring(0, value.length() - 1)) : 0;
+                break;
+            case "progress":
+                end = "end".equals(value);
+                return true;
+            default:
+                break;
+            }
+        } catch (NumberFormatException e) {
+            // N/A and other placeholders before the first frame
+        }
+        return false;
+    }
+
+    public long getFrame() {
+        return frame;
+    }
+
+    public double getFps() {
+        return fps;
+    }
+
+    public String getBitrate() {
+        return bitrate;
+    }
+
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    public Duration getOutTime() {
+        return outTime;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    public boolean isEnd() {
+        return end;
+    }
+
+    /**
+     * Estimates the remaining wall clock time to encode the given media duration, {@code null} if the speed is unknown.
+     */
+    public Duration estimateRemaining(Duration mediaDuration) {
+        if (mediaDuration == null || speed <= 0) {
+            return null;
+        }
+        Duration remaining = mediaDuration.minus(outTime);
+        if (remaining.isNegative()) {
+            return Duration.ZERO;
+        }
+        return Duration.ofMillis((long) (remaining.toMillis() / speed));
+    }
+}
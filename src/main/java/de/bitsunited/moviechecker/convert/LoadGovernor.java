@@ -0,0 +1,258 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.convert;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of running encodes to the spare capacity of the machine. The CPU share used by other processes is
+ * sampled from {@code /proc}; when it exceeds the maximum the most recently started encode is suspended, when it drops
+ * again suspended encodes are resumed before new ones start. Outside the time window all encodes are suspended.
+ */
+public class LoadGovernor {
+
+    private static final Path PROC_STAT = Paths.get("/proc/stat");
+
+    private static final long SAMPLE_SECONDS = 5;
+
+    // Resume only when the foreign load dropped clearly below the maximum
+    private static final double RESUME_FACTOR = 0.75;
+
+    private final int maxJobs;
+    private final Double maxLoad;
+    private final LocalTime windowStart;
+    private final LocalTime windowEnd;
+
+    private int allowed;
+    // Slots in use by encodes that are not suspended, including encodes that are still starting
+    private int running;
+    private final LinkedList<EncodeProcess> processList;
+    private final LinkedList<EncodeProcess> suspendedList;
+
+    private ScheduledExecutorService sampler;
+    private Thread shutdownHook;
+
+    private long lastTotalTicks = -1;
+    private long lastIdleTicks;
+    private Map<EncodeProcess, Long> lastProcessTicks = new HashMap<>();
+
+    public LoadGovernor(int maxJobs, Double maxLoad, LocalTime windowStart, LocalTime windowEnd) {
+        if (maxJobs < 1) {
+            throw new IllegalArgumentException("maxJobs must be positive: " + maxJobs);
+        }
+        this.maxJobs = maxJobs;
+        this.maxLoad = maxLoad;
+        this.windowStart = windowStart;
+        this.windowEnd = windowEnd;
+        this.allowed = isInWindow(LocalTime.now()) ? maxJobs : 0;
+        this.processList = new LinkedList<>();
+        this.suspendedList = new LinkedList<>();
+    }
+
+    public int getMaxJobs() {
+        return maxJobs;
+    }
+
+    public synchronized int getAllowed() {
+        return allowed;
+    }
+
+    public synchronized void start() {
+        if (sampler != null || (maxLoad == null && windowStart == null)) {
+            return;
+        }
+        sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "LoadGovernor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleWithFixedDelay(this::sample, SAMPLE_SECONDS, SAMPLE_SECONDS, TimeUnit.SECONDS);
+
+        // Never leave stopped encoders behind
+        shutdownHook = new Thread(this::resumeAll);
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    public synchronized void stop() {
+        if (sampler == null) {
+            return;
+        }
+        sampler.shutdownNow();
+        sampler = null;
+        resumeAll();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Already shutting down
+        }
+    }
+
+    /**
+     * Waits for a slot to start a new encode.
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (!suspendedList.isEmpty() || running >= allowed) {
+            wait();
+        }
+        running++;
+    }
+
+    public synchronized void attach(EncodeProcess process) {
+        processList.add(process);
+    }
+
+    /**
+     * Frees the slot of a finished encode, the process is {@code null} if it failed to start.
+     */
+    public synchronized void release(EncodeProcess process) {
+        if (process != null && suspendedList.remove(process)) {
+            process.resume();
+        } else {
+            running--;
+            if (process != null) {
+                processList.remove(process);
+            }
+        }
+        notifyAll();
+    }
+
+    private void sample() {
+        Double foreignLoad = maxLoad != null ? readForeignLoad() : null;
+        update(foreignLoad, LocalTime.now());
+    }
+
+    synchronized void update(Double foreignLoad, LocalTime time) {
+        int newAllowed = computeAllowed(allowed, foreignLoad, time);
+        if (newAllowed != allowed) {
+            System.out.println("Encodes allowed: " + newAllowed + (foreignLoad != null ? String.format(Locale.ROOT, " (other load %.2f)", foreignLoad) : ""));
+            allowed = newAllowed;
+        }
+
+        while (running > allowed && !processList.isEmpty()) {
+            EncodeProcess process = processList.removeLast();
+            if (process.suspend()) {
+                suspendedList.push(process);
+                running--;
+            } else {
+                // Cannot be signalled, let it finish
+                processList.addLast(process);
+                break;
+            }
+        }
+        while (running < allowed && !suspendedList.isEmpty()) {
+            EncodeProcess process = suspendedList.pop();
+            process.resume();
+            processList.add(process);
+            running++;
+        }
+        notifyAll();
+    }
+
+    int computeAllowed(int current, Double foreignLoad, LocalTime time) {
+        if (!isInWindow(time)) {
+            return 0;
+        }
+        if (maxLoad == null || foreignLoad == null) {
+            return maxJobs;
+        }
+        if (foreignLoad > maxLoad) {
+            return Math.max(0, current - 1);
+        }
+        if (foreignLoad < maxLoad * RESUME_FACTOR) {
+            return Math.min(maxJobs, current + 1);
+        }
+        return current;
+    }
+
+    boolean isInWindow(LocalTime time) {
+        if (windowStart == null || windowEnd == null) {
+            return true;
+        }
+        if (windowStart.isBefore(windowEnd)) {
+            return !time.isBefore(windowStart) && time.isBefore(windowEnd);
+        }
+        // Over midnight
+        return !time.isBefore(windowStart) || time.isBefore(windowEnd);
+    }
+
+    /**
+     * Returns the share of the CPU time since the last sample that was used by other processes than the encodes,
+     * {@code null} on the first sample or without {@code /proc}.
+     */
+    private Double readForeignLoad() {
+        long totalTicks = 0;
+        long idleTicks = 0;
+        try {
+            String line = Files.readAllLines(PROC_STAT, StandardCharsets.US_ASCII).get(0);
+            String[] fields = line.trim().split("\\s+");
+            for (int i = 1; i < fields.length && i <= 8; i++) {
+                totalTicks += Long.parseLong(fields[i]);
+            }
+            // idle and iowait
+            idleTicks = Long.parseLong(fields[4]) + Long.parseLong(fields[5]);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+
+        long ownTicks = 0;
+        Map<EncodeProcess, Long> processTicks = new HashMap<>();
+        synchronized (this) {
+            for (EncodeProcess process : processList) {
+                processTicks.put(process, process.getCpuTicks());
+            }
+            for (EncodeProcess process : suspendedList) {
+                processTicks.put(process, process.getCpuTicks());
+            }
+        }
+        for (Map.Entry<EncodeProcess, Long> entry : processTicks.entrySet()) {
+            Long last = lastProcessTicks.get(entry.getKey());
+            if (last != null && last >= 0 && entry.getValue() >= last) {
+                ownTicks += entry.getValue() - last;
+            }
+        }
+
+        Double load = null;
+        if (lastTotalTicks >= 0 && totalTicks > lastTotalTicks) {
+            long busyTicks = (totalTicks - lastTotalTicks) - (idleTicks - lastIdleTicks);
+            load = Math.max(0, busyTicks - ownTicks) / (double) (totalTicks - lastTotalTicks);
+        }
+        lastTotalTicks = totalTicks;
+        lastIdleTicks = idleTicks;
+        lastProcessTicks = processTicks;
+        return load;
+    }
+
+    private synchronized void resumeAll() {
+        while (!suspendedList.isEmpty()) {
+            EncodeProcess process = suspendedList.pop();
+            process.resume();
+            processList.add(process);
+            running++;
+        }
+        notifyAll();
+    }
+}
@@ -0,0 +1,126 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.convert;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.bitsunited.moviechecker.convert.ConvertHistory.Sample;
+
+/**
+ * Chooses the x264 preset per file from the convert history: the preset saving the most bytes whose expected savings
+ * per CPU hour still reach the target. Presets with too little history are tried first to learn about them.
+ */
+public class PresetAdvisor {
+
+    public static final String DEFAULT_PRESET = "veryslow";
+
+    static final int MIN_SAMPLES = 3;
+
+    private static final double NANOS_PER_HOUR = 3600e9;
+
+    private final List<Sample> sampleList;
+    private final List<String> presetList;
+    private final double targetBytesPerCpuHour;
+    private final int crf;
+
+    public PresetAdvisor(List<Sample> sampleList, List<String> presetList, double targetBytesPerCpuHour, int crf) {
+        this.sampleList = new ArrayList<>(sampleList);
+        this.presetList = new ArrayList<>(presetList);
+        this.targetBytesPerCpuHour = targetBytesPerCpuHour;
+        this.crf = crf;
+    }
+
+    public synchronized void add(Sample sample) {
+        sampleList.add(sample);
+    }
+
+    public synchronized String select(String codec, int height, long inputSize, Duration mediaDuration) {
+        String bestPreset = null;
+        double bestSaved = Double.NEGATIVE_INFINITY;
+        String fallbackPreset = null;
+        double fallbackRate = Double.NEGATIVE_INFINITY;
+        for (String preset : presetList) {
+            List<Sample> list = findSamples(preset, codec, height);
+            if (list.size() < MIN_SAMPLES) {
+                return preset;
+            }
+
+            long inputTotal = 0;
+            long outputTotal = 0;
+            long mediaNanos = 0;
+            long cpuNanos = 0;
+            for (Sample sample : list) {
+                inputTotal += sample.getInputSize();
+                outputTotal += sample.getOutputSize();
+                mediaNanos += sample.getMediaDuration().toNanos();
+                Duration cpuDuration = sample.getCpuDuration();
+                cpuNanos += (cpuDuration != null && !cpuDuration.isZero() ? cpuDuration : sample.getEncodeDuration()).toNanos();
+            }
+            if (inputTotal == 0 || cpuNanos == 0) {
+                continue;
+            }
+
+            double saved = inputSize * (1 - (double) outputTotal / inputTotal);
+            double cpuHours = mediaDuration != null && mediaNanos > 0 ? mediaDuration.toNanos() * ((double) cpuNanos / mediaNanos) / NANOS_PER_HOUR
+                    : inputSize * ((double) cpuNanos / inputTotal) / NANOS_PER_HOUR;
+            double rate = cpuHours > 0 ? saved / cpuHours : 0;
+            if (rate >= targetBytesPerCpuHour && saved > bestSaved) {
+                bestPreset = preset;
+                bestSaved = saved;
+            }
+            if (rate > fallbackRate) {
+                fallbackPreset = preset;
+                fallbackRate = rate;
+            }
+        }
+
+        if (bestPreset != null) {
+            return bestPreset;
+        }
+        return fallbackPreset != null ? fallbackPreset : DEFAULT_PRESET;
+    }
+
+    /**
+     * Returns the samples of the preset for comparable input, or for all input if there are not enough.
+     */
+    private List<Sample> findSamples(String preset, String codec, int height) {
+        List<Sample> list = new ArrayList<>();
+        List<Sample> comparableList = new ArrayList<>();
+        for (Sample sample : sampleList) {
+            if (sample.getPreset().equals(preset) && sample.getCrf() == crf && !sample.getMediaDuration().isZero()) {
+                list.add(sample);
+                if (sample.getCodec().equals(codec) && getHeightClass(sample.getHeight()) == getHeightClass(height)) {
+                    comparableList.add(sample);
+                }
+            }
+        }
+        return comparableList.size() >= MIN_SAMPLES ? comparableList : list;
+    }
+
+    private static int getHeightClass(int height) {
+        if (height <= 0) {
+            return 0;
+        }
+        if (height < 720) {
+            return 1;
+        }
+        if (height < 1080) {
+            return 2;
+        }
+        return height < 2160 ? 3 : 4;
+    }
+}
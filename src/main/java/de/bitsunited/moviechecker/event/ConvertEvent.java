@@ -0,0 +1,67 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.event;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("de.bitsunited.moviechecker.Convert")
+@Label("Convert")
+@Category("MovieChecker")
+@Description("Encodes a file with ffmpeg, from waiting for a job slot until the process ended")
+public class ConvertEvent extends Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("Action")
+    @Description("Encode, audio transcode or remux")
+    public String action;
+
+    @Label("Preset")
+    public String preset;
+
+    @Label("Exit Value")
+    public int exitValue;
+
+    @Label("Input Size")
+    @DataAmount
+    public long inputSize;
+
+    @Label("Output Size")
+    @DataAmount
+    public long outputSize;
+
+    @Label("Media Duration")
+    @Timespan(Timespan.MILLISECONDS)
+    public long mediaDuration;
+
+    @Label("Slot Wait")
+    @Timespan(Timespan.MILLISECONDS)
+    public long slotWait;
+
+    @Label("CPU Time")
+    @Timespan(Timespan.MILLISECONDS)
+    public long cpuTime;
+
+    @Label("Paused")
+    @Timespan(Timespan.MILLISECONDS)
+    public long paused;
+}
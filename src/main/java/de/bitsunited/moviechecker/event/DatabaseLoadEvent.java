@@ -0,0 +1,47 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.event;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("de.bitsunited.moviechecker.DatabaseLoad")
+@Label("Database Load")
+@Category("MovieChecker")
+public class DatabaseLoadEvent extends Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("Entries")
+    public int entries;
+
+    @Label("Shards")
+    @Description("Shards read, none for a single file")
+    public int shards;
+
+    @Label("Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Lock Wait")
+    @Timespan
+    public long lockWait;
+}
@@ -0,0 +1,44 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.event;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("de.bitsunited.moviechecker.Probe")
+@Label("Probe")
+@Category("MovieChecker")
+@Description("Reads the media information of a file with a container parser or ffprobe")
+public class ProbeEvent extends Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("Method")
+    @Description("parser or ffprobe")
+    public String method;
+
+    @Label("Tier")
+    @Description("Tier of the probe limits of the last ffprobe run")
+    public int tier;
+
+    @Label("Output")
+    @DataAmount
+    public long outputLength;
+}
@@ -0,0 +1,87 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.probe;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Positional reads on a file channel through a small window, so the many tiny reads of a header parser only cause a
+ * few system calls.
+ */
+class ChannelReader {
+
+    private static final int WINDOW_SIZE = 16 * 1024;
+
+    private static final int MAX_READ_SIZE = 1024 * 1024;
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    private final ByteBuffer window;
+
+    private long windowPosition;
+
+    ChannelReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.window = ByteBuffer.allocate(WINDOW_SIZE);
+        this.windowPosition = -1;
+    }
+
+    long size() {
+        return size;
+    }
+
+    int readUnsignedByte(long position) throws IOException {
+        if (windowPosition < 0 || position < windowPosition || position >= windowPosition + window.limit()) {
+            fill(position);
+        }
+        return window.get((int) (position - windowPosition)) & 0xFF;
+    }
+
+    long readUnsigned(long position, int length) throws IOException {
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value = (value << 8) | readUnsignedByte(position + i);
+        }
+        return value;
+    }
+
+    byte[] readBytes(long position, int length) throws IOException {
+        if (length < 0 || length > MAX_READ_SIZE) {
+            throw new IOException("Invalid read size " + length + " at " + position);
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) readUnsignedByte(position + i);
+        }
+        return bytes;
+    }
+
+    private void fill(long position) throws IOException {
+        if (position < 0 || position >= size) {
+            throw new IOException("Read beyond end of file at " + position);
+        }
+        window.clear();
+        while (window.hasRemaining() && channel.read(window, position + window.position()) > 0) {
+            // Fill the complete window
+        }
+        window.flip();
+        windowPosition = position;
+    }
+}
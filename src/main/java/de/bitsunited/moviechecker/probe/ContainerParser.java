@@ -0,0 +1,28 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.probe;
+
+import java.io.IOException;
+
+/**
+ * In-process reader for the header of a container format. Parsers throw an {@link IOException} for everything they
+ * do not understand, the caller then falls back to ffprobe.
+ */
+interface ContainerParser {
+
+    boolean accepts(ChannelReader reader) throws IOException;
+
+    MediaInfo parse(ChannelReader reader) throws IOException;
+}
@@ -0,0 +1,364 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.probe;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.bitsunited.moviechecker.probe.StreamInfo.StreamType;
+
+/**
+ * Reads container, duration and tracks from the EBML header of Matroska and WebM files.
+ */
+class MatroskaParser implements ContainerParser {
+
+    private static final long EBML = 0x1A45DFA3L;
+    private static final long DOC_TYPE = 0x4282L;
+    private static final long SEGMENT = 0x18538067L;
+    private static final long SEEK_HEAD = 0x114D9B74L;
+    private static final long SEEK = 0x4DBBL;
+    private static final long SEEK_ID = 0x53ABL;
+    private static final long SEEK_POSITION = 0x53ACL;
+    private static final long INFO = 0x1549A966L;
+    private static final long TIMECODE_SCALE = 0x2AD7B1L;
+    private static final long DURATION = 0x4489L;
+    private static final long TRACKS = 0x1654AE6BL;
+    private static final long TRACK_ENTRY = 0xAEL;
+    private static final long TRACK_TYPE = 0x83L;
+    private static final long CODEC_ID = 0x86L;
+    private static final long CODEC_PRIVATE = 0x63A2L;
+    private static final long LANGUAGE = 0x22B59CL;
+    private static final long VIDEO = 0xE0L;
+    private static final long PIXEL_WIDTH = 0xB0L;
+    private static final long PIXEL_HEIGHT = 0xBAL;
+    private static final long AUDIO = 0xE1L;
+    private static final long SAMPLING_FREQUENCY = 0xB5L;
+    private static final long CHANNELS = 0x9FL;
+    private static final long CLUSTER = 0x1F43B675L;
+
+    private static final Map<String, String> CODEC_MAP = new HashMap<>();
+
+    static {
+        CODEC_MAP.put("V_MPEG4/ISO/AVC", "h264");
+        CODEC_MAP.put("V_MPEGH/ISO/HEVC", "hevc");
+        CODEC_MAP.put("V_MPEG4/ISO/ASP", "mpeg4");
+        CODEC_MAP.put("V_MPEG4/ISO/SP", "mpeg4");
+        CODEC_MAP.put("V_MPEG4/ISO/AP", "mpeg4");
+        CODEC_MAP.put("V_MPEG1", "mpeg1video");
+        CODEC_MAP.put("V_MPEG2", "mpeg2video");
+        CODEC_MAP.put("V_VP8", "vp8");
+        CODEC_MAP.put("V_VP9", "vp9");
+        CODEC_MAP.put("V_AV1", "av1");
+        CODEC_MAP.put("V_THEORA", "theora");
+        CODEC_MAP.put("A_AAC", "aac");
+        CODEC_MAP.put("A_AC3", "ac3");
+        CODEC_MAP.put("A_EAC3", "eac3");
+        CODEC_MAP.put("A_DTS", "dts");
+        CODEC_MAP.put("A_TRUEHD", "truehd");
+        CODEC_MAP.put("A_MPEG/L3", "mp3");
+        CODEC_MAP.put("A_MPEG/L2", "mp2");
+        CODEC_MAP.put("A_FLAC", "flac");
+        CODEC_MAP.put("A_OPUS", "opus");
+        CODEC_MAP.put("A_VORBIS", "vorbis");
+        CODEC_MAP.put("A_PCM/INT/LIT", "pcm_s16le");
+        CODEC_MAP.put("S_TEXT/UTF8", "subrip");
+        CODEC_MAP.put("S_TEXT/ASS", "ass");
+        CODEC_MAP.put("S_TEXT/SSA", "ass");
+        CODEC_MAP.put("S_TEXT/WEBVTT", "webvtt");
+        CODEC_MAP.put("S_VOBSUB", "dvd_subtitle");
+        CODEC_MAP.put("S_HDMV/PGS", "hdmv_pgs_subtitle");
+        CODEC_MAP.put("S_DVBSUB", "dvb_subtitle");
+    }
+
+    private static final Map<String, String> FOURCC_MAP = new HashMap<>();
+
+    static {
+        FOURCC_MAP.put("XVID", "mpeg4");
+        FOURCC_MAP.put("DIVX", "mpeg4");
+        FOURCC_MAP.put("DX50", "mpeg4");
+        FOURCC_MAP.put("FMP4", "mpeg4");
+        FOURCC_MAP.put("H264", "h264");
+        FOURCC_MAP.put("AVC1", "h264");
+        FOURCC_MAP.put("X264", "h264");
+    }
+
+    private static class Element {
+        private final long id;
+        private final long dataPosition;
+        private final long dataSize;
+
+        public Element(long id, long dataPosition, long dataSize) {
+            this.id = id;
+            this.dataPosition = dataPosition;
+            this.dataSize = dataSize;
+        }
+
+        public boolean hasUnknownSize() {
+            return dataSize < 0;
+        }
+
+        public long getEnd() {
+            return dataPosition + dataSize;
+        }
+    }
+
+    @Override
+    public boolean accepts(ChannelReader reader) throws IOException {
+        return reader.size() >= 4 && reader.readUnsigned(0, 4) == EBML;
+    }
+
+    @Override
+    public MediaInfo parse(ChannelReader reader) throws IOException {
+        Element header = readElement(reader, 0);
+        if (header.id != EBML || header.hasUnknownSize()) {
+            throw new IOException("Missing EBML header");
+        }
+        String docType = "matroska";
+        for (long position = header.dataPosition; position < header.getEnd();) {
+            Element element = readElement(reader, position);
+            if (element.id == DOC_TYPE) {
+                docType = readString(reader, element);
+            }
+            position = element.getEnd();
+        }
+        if (!"matroska".equals(docType) && !"webm".equals(docType)) {
+            throw new IOException("Unsupported document type " + docType);
+        }
+
+        Element segment = readElement(reader, header.getEnd());
+        if (segment.id != SEGMENT) {
+            throw new IOException("Missing segment");
+        }
+        long segmentEnd = segment.hasUnknownSize() ? reader.size() : Math.min(segment.getEnd(), reader.size());
+
+        Map<Long, Long> seekMap = new HashMap<>();
+        Element info = null;
+        Element tracks = null;
+        for (long position = segment.dataPosition; position < segmentEnd && (info == null || tracks == null);) {
+            Element element = readElement(reader, position);
+            if (element.id == CLUSTER) {
+                break;
+            }
+            if (element.hasUnknownSize()) {
+                throw new IOException("Element of unknown size at " + position);
+            }
+            if (element.id == SEEK_HEAD) {
+                readSeekHead(reader, element, segment.dataPosition, seekMap);
+            } else if (element.id == INFO) {
+                info = element;
+            } else if (element.id == TRACKS) {
+                tracks = element;
+            }
+            position = element.getEnd();
+        }
+
+        // Some muxers write the header elements behind the clusters
+        if (info == null && seekMap.containsKey(INFO)) {
+            info = readElement(reader, seekMap.get(INFO));
+        }
+        if (tracks == null && seekMap.containsKey(TRACKS)) {
+            tracks = readElement(reader, seekMap.get(TRACKS));
+        }
+        if (tracks == null || tracks.id != TRACKS) {
+            throw new IOException("Missing tracks");
+        }
+
+        Duration duration = info != null && info.id == INFO ? readDuration(reader, info) : null;
+        List<StreamInfo> streamList = readTracks(reader, tracks);
+
+        return new MediaInfo("matroska,webm", duration, streamList);
+    }
+
+    private static void readSeekHead(ChannelReader reader, Element seekHead, long segmentPosition, Map<Long, Long> seekMap) throws IOException {
+        for (Element seek : children(reader, seekHead)) {
+            if (seek.id == SEEK) {
+                Long id = null;
+                Long seekPosition = null;
+                for (Element element : children(reader, seek)) {
+                    if (element.id == SEEK_ID) {
+                        id = readUnsigned(reader, element);
+                    } else if (element.id == SEEK_POSITION) {
+                        seekPosition = readUnsigned(reader, element);
+                    }
+                }
+                if (id != null && seekPosition != null) {
+                    seekMap.put(id, segmentPosition + seekPosition);
+                }
+            }
+        }
+    }
+
+    private static Duration readDuration(ChannelReader reader, Element info) throws IOException {
+        long timecodeScale = 1000000;
+        Double duration = null;
+        for (Element element : children(reader, info)) {
+            if (element.id == TIMECODE_SCALE) {
+                timecodeScale = readUnsigned(reader, element);
+            } else if (element.id == DURATION) {
+                duration = readFloat(reader, element);
+            }
+        }
+        return duration != null ? Duration.ofNanos((long) (duration * timecodeScale)) : null;
+    }
+
+    private static List<StreamInfo> readTracks(ChannelReader reader, Element tracks) throws IOException {
+        List<StreamInfo> streamList = new ArrayList<>();
+        for (Element trackEntry : children(reader, tracks)) {
+            if (trackEntry.id != TRACK_ENTRY) {
+                continue;
+            }
+
+            long trackType = 0;
+            String codecId = null;
+            byte[] codecPrivate = null;
+            String language = "eng";
+            int width = 0;
+            int height = 0;
+            int sampleRate = 8000;
+            int channels = 1;
+            for (Element element : children(reader, trackEntry)) {
+                if (element.id == TRACK_TYPE) {
+                    trackType = readUnsigned(reader, element);
+                } else if (element.id == CODEC_ID) {
+                    codecId = readString(reader, element);
+                } else if (element.id == CODEC_PRIVATE) {
+                    codecPrivate = reader.readBytes(element.dataPosition, (int) element.dataSize);
+                } else if (element.id == LANGUAGE) {
+                    language = readString(reader, element);
+                } else if (element.id == VIDEO) {
+                    for (Element video : children(reader, element)) {
+                        if (video.id == PIXEL_WIDTH) {
+                            width = (int) readUnsigned(reader, video);
+                        } else if (video.id == PIXEL_HEIGHT) {
+                            height = (int) readUnsigned(reader, video);
+                        }
+                    }
+                } else if (element.id == AUDIO) {
+                    for (Element audio : children(reader, element)) {
+                        if (audio.id == SAMPLING_FREQUENCY) {
+                            sampleRate = (int) readFloat(reader, audio);
+                        } else if (audio.id == CHANNELS) {
+                            channels = (int) readUnsigned(reader, audio);
+                        }
+                    }
+                }
+            }
+
+            if (codecId == null) {
+                throw new IOException("Track without codec");
+            }
+            String codec = getCodec(codecId, codecPrivate);
+
+            if (trackType == 1) {
+                streamList.add(new StreamInfo(StreamType.VIDEO, codec, language, width, height, 0, 0));
+            } else if (trackType == 2) {
+                streamList.add(new StreamInfo(StreamType.AUDIO, codec, language, 0, 0, sampleRate, channels));
+            } else if (trackType == 17) {
+                streamList.add(new StreamInfo(StreamType.SUBTITLE, codec, language, 0, 0, 0, 0));
+            } else {
+                throw new IOException("Unsupported track type " + trackType);
+            }
+        }
+        return streamList;
+    }
+
+    private static String getCodec(String codecId, byte[] codecPrivate) throws IOException {
+        if ("V_MS/VFW/FOURCC".equals(codecId) && codecPrivate != null && codecPrivate.length >= 20) {
+            // BITMAPINFOHEADER, the compression is a FourCC at offset 16
+            String fourcc = new String(codecPrivate, 16, 4, StandardCharsets.US_ASCII).toUpperCase();
+            if (FOURCC_MAP.containsKey(fourcc)) {
+                return FOURCC_MAP.get(fourcc);
+            }
+        }
+
+        String codec = CODEC_MAP.get(codecId);
+        if (codec == null && codecId.startsWith("A_AAC")) {
+            codec = "aac";
+        }
+        if (codec == null) {
+            throw new IOException("Unsupported codec " + codecId);
+        }
+        return codec;
+    }
+
+    private static List<Element> children(ChannelReader reader, Element parent) throws IOException {
+        List<Element> list = new ArrayList<>();
+        for (long position = parent.dataPosition; position < parent.getEnd();) {
+            Element element = readElement(reader, position);
+            if (element.hasUnknownSize() || element.getEnd() > parent.getEnd()) {
+                throw new IOException("Invalid element size at " + position);
+            }
+            list.add(element);
+            position = element.getEnd();
+        }
+        return list;
+    }
+
+    private static Element readElement(ChannelReader reader, long position) throws IOException {
+        int first = reader.readUnsignedByte(position);
+        int idLength = Integer.numberOfLeadingZeros(first) - 23;
+        if (idLength < 1 || idLength > 4) {
+            throw new IOException("Invalid element id at " + position);
+        }
+        long id = reader.readUnsigned(position, idLength);
+
+        long sizePosition = position + idLength;
+        int sizeFirst = reader.readUnsignedByte(sizePosition);
+        int sizeLength = Integer.numberOfLeadingZeros(sizeFirst) - 23;
+        if (sizeLength < 1 || sizeLength > 8) {
+            throw new IOException("Invalid element size at " + sizePosition);
+        }
+        long size = sizeFirst & (0xFF >> sizeLength);
+        boolean unknown = size == (0xFF >> sizeLength);
+        for (int i = 1; i < sizeLength; i++) {
+            int value = reader.readUnsignedByte(sizePosition + i);
+            unknown &= value == 0xFF;
+            size = (size << 8) | value;
+        }
+
+        return new Element(id, sizePosition + sizeLength, unknown ? -1 : size);
+    }
+
+    private static long readUnsigned(ChannelReader reader, Element element) throws IOException {
+        if (element.dataSize > 8) {
+            throw new IOException("Invalid integer size " + element.dataSize);
+        }
+        return reader.readUnsigned(element.dataPosition, (int) element.dataSize);
+    }
+
+    private static double readFloat(ChannelReader reader, Element element) throws IOException {
+        if (element.dataSize == 4) {
+            return Float.intBitsToFloat((int) reader.readUnsigned(element.dataPosition, 4));
+        }
+        if (element.dataSize == 8) {
+            return Double.longBitsToDouble(reader.readUnsigned(element.dataPosition, 8));
+        }
+        throw new IOException("Invalid float size " + element.dataSize);
+    }
+
+    private static String readString(ChannelReader reader, Element element) throws IOException {
+        byte[] bytes = reader.readBytes(element.dataPosition, (int) element.dataSize);
+        int length = 0;
+        while (length < bytes.length && bytes[length] != 0) {
+            length++;
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,179 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.probe;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import de.bitsunited.moviechecker.Util;
+
+/**
+ * Decides from the first bytes of a file, and optionally its extension, whether it can be media at all. Only files that
+ * are certainly not media are reported as such, everything unknown is left to the prober.
+ */
+public class MediaClassifier {
+
+    public enum Kind {
+        MEDIA, NON_MEDIA, UNKNOWN
+    }
+
+    // Enough for three MPEG transport stream packets
+    static final int HEADER_SIZE = 512;
+
+    private static final int TS_PACKET_SIZE = 188;
+    private static final int M2TS_PACKET_SIZE = 192;
+
+    private static final Set<String> NON_MEDIA_EXTENSIONS = new HashSet<>(Arrays.asList("nfo", "txt", "jpg", "jpeg", "png", "gif", "bmp",
+            "tbn", "srt", "sub", "idx", "ass", "ssa", "nzb", "sfv", "md5", "sha1", "par2", "xml", "json", "html", "htm", "url", "ini", "log",
+            "pdf", "db", "exe", "torrent"));
+
+    // Hidden files have no extension, they are matched by their lower case name
+    private static final Set<String> NON_MEDIA_NAMES = Collections.singleton(".ds_store");
+
+    private static final byte[][] MEDIA_SIGNATURES = { //
+            { 0x1A, 0x45, (byte) 0xDF, (byte) 0xA3 }, // Matroska, WebM
+            { 0x00, 0x00, 0x01, (byte) 0xBA }, // MPEG program stream, VOB
+            { 0x00, 0x00, 0x01, (byte) 0xB3 }, // MPEG video elementary stream
+            ascii("FLV"), //
+            ascii("OggS"), //
+            ascii(".RMF"), // RealMedia
+            { 0x30, 0x26, (byte) 0xB2, 0x75, (byte) 0x8E, 0x66, (byte) 0xCF, 0x11 }, // ASF, WMV
+            ascii("ID3"), //
+            ascii("fLaC") };
+
+    private static final String[] MP4_BOXES = { "ftyp", "moov", "mdat", "free", "skip", "wide", "pnot" };
+
+    private static final byte[][] NON_MEDIA_SIGNATURES = { //
+            { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF }, // JPEG
+            { (byte) 0x89, 0x50, 0x4E, 0x47 }, // PNG
+            ascii("GIF8"), //
+            ascii("%PDF"), //
+            { 0x50, 0x4B, 0x03, 0x04 }, // ZIP
+            ascii("Rar!"), //
+            { 0x37, 0x7A, (byte) 0xBC, (byte) 0xAF }, // 7z
+            { 0x1F, (byte) 0x8B }, // gzip
+            { 0x7F, 0x45, 0x4C, 0x46 }, // ELF
+            ascii("SQLite format 3"), //
+            ascii("PAR2") };
+
+    private final boolean extensionRules;
+
+    public MediaClassifier(boolean extensionRules) {
+        this.extensionRules = extensionRules;
+    }
+
+    public boolean isExtensionRules() {
+        return extensionRules;
+    }
+
+    public Kind classify(Path file, long size) throws IOException {
+        if (size == 0) {
+            return Kind.NON_MEDIA;
+        }
+        if (extensionRules && (NON_MEDIA_EXTENSIONS.contains(Util.getFileExtension(file))
+                || NON_MEDIA_NAMES.contains(file.getFileName().toString().toLowerCase(Locale.ROOT)))) {
+            return Kind.NON_MEDIA;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+        }
+        return classify(Arrays.copyOf(buffer.array(), buffer.position()));
+    }
+
+    static Kind classify(byte[] header) {
+        for (byte[] signature : MEDIA_SIGNATURES) {
+            if (startsWith(header, 0, signature)) {
+                return Kind.MEDIA;
+            }
+        }
+        for (String box : MP4_BOXES) {
+            if (startsWith(header, 4, ascii(box))) {
+                return Kind.MEDIA;
+            }
+        }
+        if (startsWith(header, 0, ascii("RIFF")) && (startsWith(header, 8, ascii("AVI ")) || startsWith(header, 8, ascii("WAVE")))) {
+            return Kind.MEDIA;
+        }
+        if (isTransportStream(header, 0, TS_PACKET_SIZE) || isTransportStream(header, 4, M2TS_PACKET_SIZE)) {
+            return Kind.MEDIA;
+        }
+
+        for (byte[] signature : NON_MEDIA_SIGNATURES) {
+            if (startsWith(header, 0, signature)) {
+                return Kind.NON_MEDIA;
+            }
+        }
+        if (header.length > 0 && isText(header)) {
+            return Kind.NON_MEDIA;
+        }
+        return Kind.UNKNOWN;
+    }
+
+    private static boolean isTransportStream(byte[] header, int offset, int packetSize) {
+        if (header.length < offset + 2 * packetSize + 1) {
+            return false;
+        }
+        for (int i = offset; i < header.length; i += packetSize) {
+            if (header[i] != 0x47) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Subtitles, NFOs and playlists; binary containers always have control bytes in their first bytes
+    private static boolean isText(byte[] header) {
+        if (startsWith(header, 0, new byte[] { (byte) 0xFF, (byte) 0xFE }) || startsWith(header, 0, new byte[] { (byte) 0xFE, (byte) 0xFF })) {
+            return true;
+        }
+        for (byte b : header) {
+            if ((b >= 0 && b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f') || b == 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWith(byte[] header, int offset, byte[] signature) {
+        if (header.length < offset + signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if (header[offset + i] != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,220 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.probe;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import de.bitsunited.moviechecker.probe.StreamInfo.StreamType;
+
+public class MediaInfo {
+
+    // Line breaks are not relied upon, the database stores the output in attributes which normalize them to spaces
+    private static final Pattern INPUT_PATTERN = Pattern.compile("Input #0, (.*?), from '");
+    private static final Pattern DURATION_PATTERN = Pattern.compile("Duration: (?:(\\d+):(\\d{2}):(\\d{2})\\.(\\d{2})|N/A)");
+    private static final Pattern BITRATE_PATTERN = Pattern.compile("bitrate: (\\d+) kb/s");
+    private static final Pattern STREAM_PATTERN = Pattern.compile(
+            "Stream #0:\\d+(?:\\[\\w+\\])?(?:\\((\\w+)\\))?[^:\\n]*?: (Video|Audio|Subtitle|Data|Attachment): ([^\\s,]+)");
+    private static final Pattern RESOLUTION_PATTERN = Pattern.compile(", (\\d{2,5})x(\\d{2,5})");
+    private static final Pattern SAMPLE_RATE_PATTERN = Pattern.compile(", (\\d+) Hz");
+    private static final Pattern CHANNELS_PATTERN = Pattern.compile(", (\\d+) channels|, (mono|stereo|[2-7]\\.[01])");
+
+    private final String container;
+    private final Duration duration;
+    private final Long bitrate;
+    private final List<StreamInfo> streamList;
+
+    public MediaInfo(String container, Duration duration, List<StreamInfo> streamList) {
+        this(container, duration, null, streamList);
+    }
+
+    public MediaInfo(String container, Duration duration, Long bitrate, List<StreamInfo> streamList) {
+        this.container = Objects.requireNonNull(container);
+        this.duration = duration;
+        this.bitrate = bitrate;
+        this.streamList = Collections.unmodifiableList(new ArrayList<>(streamList));
+    }
+
+    /**
+     * Reads the information back from the recorded ffprobe stderr output. Returns {@code null} if the output does not
+     * describe an input file, e.g. because ffprobe failed.
+     */
+    public static MediaInfo parse(String ffprobeOutput) {
+        if (ffprobeOutput == null) {
+            return null;
+        }
+
+        Matcher matcher = INPUT_PATTERN.matcher(ffprobeOutput);
+        if (!matcher.find()) {
+            return null;
+        }
+        String container = matcher.group(1);
+
+        Duration duration = null;
+        Long bitrate = null;
+        matcher = DURATION_PATTERN.matcher(ffprobeOutput);
+        if (matcher.find()) {
+            if (matcher.group(1) != null) {
+                duration = Duration.ofHours(Long.parseLong(matcher.group(1))).plusMinutes(Long.parseLong(matcher.group(2)))
+                        .plusSeconds(Long.parseLong(matcher.group(3))).plusMillis(Long.parseLong(matcher.group(4)) * 10);
+            }
+            Matcher bitrateMatcher = BITRATE_PATTERN.matcher(ffprobeOutput);
+            if (bitrateMatcher.find(matcher.end())) {
+                bitrate = Long.parseLong(bitrateMatcher.group(1)) * 1000;
+            }
+        }
+
+        List<StreamInfo> streamList = new ArrayList<>();
+        matcher = STREAM_PATTERN.matcher(ffprobeOutput);
+        boolean found = matcher.find();
+        while (found) {
+            String language = matcher.group(1);
+            String typeLabel = matcher.group(2);
+            String codec = matcher.group(3);
+            int start = matcher.end();
+            found = matcher.find();
+
+            // The details end with the line or at the next stream
+            int end = found ? matcher.start() : ffprobeOutput.length();
+            int lineEnd = ffprobeOutput.indexOf('\n', start);
+            if (lineEnd >= 0 && lineEnd < end) {
+                end = lineEnd;
+            }
+            streamList.add(parseStream(language, typeLabel, codec, ffprobeOutput.substring(start, end)));
+        }
+
+        return new MediaInfo(container, duration, bitrate, streamList);
+    }
+
+    private static StreamInfo parseStream(String language, String typeLabel, String codec, String details) {
+        StreamType type = StreamType.DATA;
+        for (StreamType t : StreamType.values()) {
+            if (t.getLabel().equals(typeLabel)) {
+                type = t;
+            }
+        }
+
+        int width = 0;
+        int height = 0;
+        Matcher matcher = RESOLUTION_PATTERN.matcher(details);
+        if (type == StreamType.VIDEO && matcher.find()) {
+            width = Integer.parseInt(matcher.group(1));
+            height = Integer.parseInt(matcher.group(2));
+        }
+
+        int sampleRate = 0;
+        int channels = 0;
+        if (type == StreamType.AUDIO) {
+            matcher = SAMPLE_RATE_PATTERN.matcher(details);
+            if (matcher.find()) {
+                sampleRate = Integer.parseInt(matcher.group(1));
+            }
+            matcher = CHANNELS_PATTERN.matcher(details);
+            if (matcher.find()) {
+                channels = parseChannels(matcher.group(1), matcher.group(2));
+            }
+        }
+
+        return new StreamInfo(type, codec, language, width, height, sampleRate, channels);
+    }
+
+    private static int parseChannels(String count, String layout) {
+        if (count != null) {
+            return Integer.parseInt(count);
+        }
+        if ("mono".equals(layout)) {
+            return 1;
+        }
+        if ("stereo".equals(layout)) {
+            return 2;
+        }
+        // Surround layouts like 5.1 or 7.1
+        return (layout.charAt(0) - '0') + (layout.charAt(2) - '0');
+    }
+
+    public String getContainer() {
+        return container;
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    public Long getBitrate() {
+        return bitrate;
+    }
+
+    public List<StreamInfo> getStreamList() {
+        return streamList;
+    }
+
+    public List<StreamInfo> getStreams(StreamType type) {
+        List<StreamInfo> list = new ArrayList<>();
+        streamList.stream().filter(s -> s.getType() == type).forEach(list::add);
+        return list;
+    }
+
+    /**
+     * Returns the first video stream or {@code null} if there is none.
+     */
+    public StreamInfo getVideoStream() {
+        return streamList.stream().filter(s -> s.getType() == StreamType.VIDEO).findFirst().orElse(null);
+    }
+
+    /**
+     * Formats the information like the stderr output of ffprobe, which is what the database records for every file.
+     */
+    public String toFfprobeOutput(Path file) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Input #0, ").append(container).append(", from '").append(file).append("':\n");
+        sb.append("  Duration: ").append(formatDuration(duration)).append(", start: 0.000000, bitrate: ");
+        sb.append(bitrate != null ? (bitrate / 1000) + " kb/s" : "N/A");
+
+        for (int i = 0; i < streamList.size(); i++) {
+            StreamInfo stream = streamList.get(i);
+            sb.append("\n    Stream #0:").append(i);
+            if (stream.getLanguage() != null) {
+                sb.append('(').append(stream.getLanguage()).append(')');
+            }
+            sb.append(": ").append(stream.getType().getLabel()).append(": ").append(stream.getCodec());
+            if (stream.getType() == StreamType.VIDEO && stream.getWidth() > 0 && stream.getHeight() > 0) {
+                sb.append(", ").append(stream.getWidth()).append('x').append(stream.getHeight());
+            }
+            if (stream.getType() == StreamType.AUDIO) {
+                if (stream.getSampleRate() > 0) {
+                    sb.append(", ").append(stream.getSampleRate()).append(" Hz");
+                }
+                if (stream.getChannels() > 0) {
+                    sb.append(", ").append(stream.getChannels()).append(" channels");
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String formatDuration(Duration duration) {
+        if (duration == null || duration.isZero() || duration.isNegative()) {
+            return "N/A";
+        }
+        long centis = duration.toMillis() / 10;
+        return String.format("%02d:%02d:%02d.%02d", centis / 360000, (centis / 6000) % 60, (centis / 100) % 60, centis % 100);
+    }
+}
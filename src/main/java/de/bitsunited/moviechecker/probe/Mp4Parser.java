@@ -0,0 +1,278 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.probe;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.bitsunited.moviechecker.probe.StreamInfo.StreamType;
+
+/**
+ * Reads duration and tracks from the movie box of ISO base media files (mp4, m4v, mov).
+ */
+class Mp4Parser implements ContainerParser {
+
+    private static final Set<String> TOP_LEVEL_BOXES = new HashSet<>(Arrays.asList("ftyp", "moov", "mdat", "free", "skip", "wide", "pnot"));
+
+    private static final Map<String, String> CODEC_MAP = new HashMap<>();
+
+    static {
+        CODEC_MAP.put("avc1", "h264");
+        CODEC_MAP.put("avc3", "h264");
+        CODEC_MAP.put("hvc1", "hevc");
+        CODEC_MAP.put("hev1", "hevc");
+        CODEC_MAP.put("dvh1", "hevc");
+        CODEC_MAP.put("dvhe", "hevc");
+        CODEC_MAP.put("mp4v", "mpeg4");
+        CODEC_MAP.put("av01", "av1");
+        CODEC_MAP.put("vp09", "vp9");
+        CODEC_MAP.put("jpeg", "mjpeg");
+        CODEC_MAP.put("apch", "prores");
+        CODEC_MAP.put("apcn", "prores");
+        CODEC_MAP.put("apcs", "prores");
+        CODEC_MAP.put("apco", "prores");
+        CODEC_MAP.put("ap4h", "prores");
+        CODEC_MAP.put("mp4a", "aac");
+        CODEC_MAP.put("ac-3", "ac3");
+        CODEC_MAP.put("ec-3", "eac3");
+        CODEC_MAP.put("Opus", "opus");
+        CODEC_MAP.put("fLaC", "flac");
+        CODEC_MAP.put("alac", "alac");
+        CODEC_MAP.put("sowt", "pcm_s16le");
+        CODEC_MAP.put("twos", "pcm_s16be");
+        CODEC_MAP.put(".mp3", "mp3");
+        CODEC_MAP.put("tx3g", "mov_text");
+        CODEC_MAP.put("wvtt", "webvtt");
+        CODEC_MAP.put("c608", "eia_608");
+    }
+
+    private static class Box {
+        private final String type;
+        private final long position;
+        private final long dataPosition;
+        private final long end;
+
+        public Box(String type, long position, long dataPosition, long end) {
+            this.type = type;
+            this.position = position;
+            this.dataPosition = dataPosition;
+            this.end = end;
+        }
+    }
+
+    @Override
+    public boolean accepts(ChannelReader reader) throws IOException {
+        return reader.size() >= 8 && TOP_LEVEL_BOXES.contains(readType(reader, 4));
+    }
+
+    @Override
+    public MediaInfo parse(ChannelReader reader) throws IOException {
+        Box moov = null;
+        for (long position = 0; position < reader.size() && moov == null;) {
+            Box box = readBox(reader, position, reader.size());
+            if ("moov".equals(box.type)) {
+                moov = box;
+            }
+            position = box.end;
+        }
+        if (moov == null) {
+            throw new IOException("Missing movie box");
+        }
+
+        Duration duration = null;
+        List<StreamInfo> streamList = new ArrayList<>();
+        for (Box box : children(reader, moov)) {
+            if ("mvhd".equals(box.type)) {
+                duration = readDuration(reader, box);
+            } else if ("trak".equals(box.type)) {
+                StreamInfo stream = readTrack(reader, box);
+                if (stream != null) {
+                    streamList.add(stream);
+                }
+            }
+        }
+
+        return new MediaInfo("mov,mp4,m4a,3gp,3g2,mj2", duration, streamList);
+    }
+
+    private static Duration readDuration(ChannelReader reader, Box header) throws IOException {
+        int version = reader.readUnsignedByte(header.dataPosition);
+        long timescale;
+        long duration;
+        if (version == 1) {
+            timescale = reader.readUnsigned(header.dataPosition + 20, 4);
+            duration = reader.readUnsigned(header.dataPosition + 24, 8);
+        } else {
+            timescale = reader.readUnsigned(header.dataPosition + 12, 4);
+            duration = reader.readUnsigned(header.dataPosition + 16, 4);
+        }
+        if (timescale == 0) {
+            return null;
+        }
+        return Duration.ofMillis(duration * 1000 / timescale);
+    }
+
+    private static StreamInfo readTrack(ChannelReader reader, Box trak) throws IOException {
+        Box mdia = find(reader, trak, "mdia");
+        Box hdlr = find(reader, mdia, "hdlr");
+        Box mdhd = find(reader, mdia, "mdhd");
+        Box stsd = find(reader, find(reader, find(reader, mdia, "minf"), "stbl"), "stsd");
+
+        String handler = readType(reader, hdlr.dataPosition + 8);
+        String language = readLanguage(reader, mdhd);
+
+        // First sample entry behind version, flags and entry count
+        Box entry = readBox(reader, stsd.dataPosition + 8, stsd.end);
+
+        if ("vide".equals(handler)) {
+            int width = (int) reader.readUnsigned(entry.dataPosition + 24, 2);
+            int height = (int) reader.readUnsigned(entry.dataPosition + 26, 2);
+            return new StreamInfo(StreamType.VIDEO, getCodec(entry.type), language, width, height, 0, 0);
+        }
+        if ("soun".equals(handler)) {
+            int soundVersion = (int) reader.readUnsigned(entry.dataPosition + 8, 2);
+            int channels = (int) reader.readUnsigned(entry.dataPosition + 16, 2);
+            int sampleRate = (int) reader.readUnsigned(entry.dataPosition + 24, 2);
+
+            String codec = getCodec(entry.type);
+            if ("mp4a".equals(entry.type)) {
+                long childPosition = entry.dataPosition + 28 + (soundVersion == 1 ? 16 : soundVersion == 2 ? 36 : 0);
+                codec = readEsdsCodec(reader, childPosition, entry.end, codec);
+            }
+            return new StreamInfo(StreamType.AUDIO, codec, language, 0, 0, sampleRate, channels);
+        }
+        if ("subt".equals(handler) || "text".equals(handler) || "sbtl".equals(handler) || "clcp".equals(handler)) {
+            return new StreamInfo(StreamType.SUBTITLE, getCodec(entry.type), language, 0, 0, 0, 0);
+        }
+        return new StreamInfo(StreamType.DATA, "none", language, 0, 0, 0, 0);
+    }
+
+    private static String readEsdsCodec(ChannelReader reader, long position, long end, String defaultCodec) throws IOException {
+        while (position + 8 <= end) {
+            Box box = readBox(reader, position, end);
+            if ("esds".equals(box.type)) {
+                // Skip version and flags, then the ES descriptor header and fields
+                long p = box.dataPosition + 4;
+                if (reader.readUnsignedByte(p) != 0x03) {
+                    return defaultCodec;
+                }
+                p = skipDescriptorLength(reader, p + 1);
+                int flags = reader.readUnsignedByte(p + 2);
+                p += 3;
+                if ((flags & 0x80) != 0) {
+                    p += 2;
+                }
+                if ((flags & 0x40) != 0) {
+                    p += 1 + reader.readUnsignedByte(p);
+                }
+                if ((flags & 0x20) != 0) {
+                    p += 2;
+                }
+                if (reader.readUnsignedByte(p) != 0x04) {
+                    return defaultCodec;
+                }
+                p = skipDescriptorLength(reader, p + 1);
+                int objectType = reader.readUnsignedByte(p);
+                if (objectType == 0x69 || objectType == 0x6B) {
+                    return "mp3";
+                }
+                if (objectType == 0xA5) {
+                    return "ac3";
+                }
+                if (objectType == 0xA6) {
+                    return "eac3";
+                }
+                return defaultCodec;
+            }
+            position = box.end;
+        }
+        return defaultCodec;
+    }
+
+    private static long skipDescriptorLength(ChannelReader reader, long position) throws IOException {
+        for (int i = 0; i < 4; i++) {
+            if ((reader.readUnsignedByte(position++) & 0x80) == 0) {
+                break;
+            }
+        }
+        return position;
+    }
+
+    private static String readLanguage(ChannelReader reader, Box mdhd) throws IOException {
+        int version = reader.readUnsignedByte(mdhd.dataPosition);
+        long position = mdhd.dataPosition + (version == 1 ? 32 : 20);
+        int packed = (int) reader.readUnsigned(position, 2);
+        if (packed == 0 || packed == 0x7FFF) {
+            return null;
+        }
+        char[] chars = new char[] { (char) (((packed >> 10) & 0x1F) + 0x60), (char) (((packed >> 5) & 0x1F) + 0x60), (char) ((packed & 0x1F) + 0x60) };
+        return new String(chars);
+    }
+
+    private static String getCodec(String format) throws IOException {
+        String codec = CODEC_MAP.get(format);
+        if (codec == null) {
+            throw new IOException("Unsupported sample format " + format);
+        }
+        return codec;
+    }
+
+    private static Box find(ChannelReader reader, Box parent, String type) throws IOException {
+        for (Box box : children(reader, parent)) {
+            if (type.equals(box.type)) {
+                return box;
+            }
+        }
+        throw new IOException("Missing " + type + " box in " + parent.type + " at " + parent.position);
+    }
+
+    private static List<Box> children(ChannelReader reader, Box parent) throws IOException {
+        List<Box> list = new ArrayList<>();
+        for (long position = parent.dataPosition; position + 8 <= parent.end;) {
+            Box box = readBox(reader, position, parent.end);
+            list.add(box);
+            position = box.end;
+        }
+        return list;
+    }
+
+    private static Box readBox(ChannelReader reader, long position, long parentEnd) throws IOException {
+        long size = reader.readUnsigned(position, 4);
+        String type = readType(reader, position + 4);
+        long dataPosition = position + 8;
+        if (size == 1) {
+            size = reader.readUnsigned(position + 8, 8);
+            dataPosition += 8;
+        } else if (size == 0) {
+            size = parentEnd - position;
+        }
+        if (size < dataPosition - position || position + size > parentEnd) {
+            throw new IOException("Invalid box size of " + type + " at " + position);
+        }
+        return new Box(type, position, dataPosition, position + size);
+    }
+
+    private static String readType(ChannelReader reader, long position) throws IOException {
+        return new String(reader.readBytes(position, 4), StandardCharsets.ISO_8859_1);
+    }
+}
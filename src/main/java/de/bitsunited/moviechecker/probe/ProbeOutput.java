@@ -0,0 +1,34 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.probe;
+
+public class ProbeOutput {
+
+    private final String stdOut;
+    private final String errOut;
+
+    public ProbeOutput(String stdOut, String errOut) {
+        this.stdOut = stdOut;
+        this.errOut = errOut;
+    }
+
+    public String getStdOut() {
+        return stdOut;
+    }
+
+    public String getErrOut() {
+        return errOut;
+    }
+}
@@ -0,0 +1,176 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.probe;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Probe limits for ffprobe in increasing tiers. A file is probed with the cheapest tier first and again with the next
+ * one while the output misses stream details. The outcome is counted per container, identified by the file extension,
+ * so containers that regularly need more data start with a higher tier. The counts are kept in a tab separated file.
+ */
+public class ProbeTiers {
+
+    // Bytes read and microseconds of media analyzed, the middle tier are the ffprobe defaults
+    private static final long[] PROBE_SIZES = { 1L << 20, 5_000_000L, 100_000_000L };
+    private static final long[] ANALYZE_DURATIONS = { 1_000_000L, 5_000_000L, 60_000_000L };
+
+    private static final String[] INCOMPLETE_MARKERS = { "Could not find codec parameters", "unspecified size", "unspecified pixel format",
+            "unspecified sample format", "Consider increasing the value for the 'analyzeduration'" };
+
+    static final int MIN_ATTEMPTS = 5;
+    static final double MIN_SUCCESS_RATE = 0.9;
+
+    private final Path tiersPath;
+
+    // Attempts and complete results per container and tier
+    private final Map<String, long[][]> countMap = new TreeMap<>();
+
+    public ProbeTiers(Path tiersPath) {
+        this.tiersPath = tiersPath;
+    }
+
+    public Path getTiersPath() {
+        return tiersPath;
+    }
+
+    public int getTierCount() {
+        return PROBE_SIZES.length;
+    }
+
+    public String[] getOptions(int tier) {
+        return new String[] { "-probesize", Long.toString(PROBE_SIZES[tier]), "-analyzeduration", Long.toString(ANALYZE_DURATIONS[tier]) };
+    }
+
+    /**
+     * Returns the cheapest tier that is either not tried often enough yet or worked for nearly all files of the
+     * container.
+     */
+    public synchronized int getStartTier(String container) {
+        long[][] counts = countMap.get(container);
+        if (counts == null) {
+            return 0;
+        }
+        for (int tier = 0; tier < counts.length - 1; tier++) {
+            long attempts = counts[tier][0];
+            if (attempts < MIN_ATTEMPTS || counts[tier][1] >= attempts * MIN_SUCCESS_RATE) {
+                return tier;
+            }
+        }
+        return counts.length - 1;
+    }
+
+    public synchronized void record(String container, int tier, boolean complete) {
+        long[][] counts = countMap.computeIfAbsent(container, c -> new long[PROBE_SIZES.length][2]);
+        counts[tier][0]++;
+        if (complete) {
+            counts[tier][1]++;
+        }
+    }
+
+    public static String getContainer(Path file) {
+        String name = file.getFileName().toString();
+        int i = name.lastIndexOf('.');
+        return i > 0 ? name.substring(i + 1).toLowerCase(Locale.ROOT) : "";
+    }
+
+    /**
+     * Returns true if ffprobe recognized the file and reported all stream details.
+     */
+    public static boolean isComplete(String errOut, MediaInfo info) {
+        if (info == null) {
+            return false;
+        }
+        for (String marker : INCOMPLETE_MARKERS) {
+            if (errOut.contains(marker)) {
+                return false;
+            }
+        }
+        for (StreamInfo stream : info.getStreamList()) {
+            if (stream.getType() == StreamInfo.StreamType.VIDEO && (stream.getWidth() <= 0 || stream.getHeight() <= 0)) {
+                return false;
+            }
+            if (stream.getType() == StreamInfo.StreamType.AUDIO && (stream.getSampleRate() <= 0 || stream.getChannels() <= 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if both results list the same streams with the same details, so probing more data added nothing.
+     */
+    public static boolean isSameStreams(MediaInfo info1, MediaInfo info2) {
+        List<StreamInfo> list1 = info1.getStreamList();
+        List<StreamInfo> list2 = info2.getStreamList();
+        if (list1.size() != list2.size()) {
+            return false;
+        }
+        for (int i = 0; i < list1.size(); i++) {
+            StreamInfo s1 = list1.get(i);
+            StreamInfo s2 = list2.get(i);
+            if (s1.getType() != s2.getType() || !Objects.equals(s1.getCodec(), s2.getCodec()) || s1.getWidth() != s2.getWidth()
+                    || s1.getHeight() != s2.getHeight() || s1.getSampleRate() != s2.getSampleRate() || s1.getChannels() != s2.getChannels()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public synchronized void load() throws IOException {
+        countMap.clear();
+        if (!Files.isRegularFile(tiersPath)) {
+            return;
+        }
+        for (String line : Files.readAllLines(tiersPath, StandardCharsets.UTF_8)) {
+            String[] values = line.split("\t", -1);
+            if (values.length != 4 || line.startsWith("#")) {
+                continue;
+            }
+            int tier = Integer.parseInt(values[1]);
+            if (tier < PROBE_SIZES.length) {
+                long[][] counts = countMap.computeIfAbsent(values[0], c -> new long[PROBE_SIZES.length][2]);
+                counts[tier][0] = Long.parseLong(values[2]);
+                counts[tier][1] = Long.parseLong(values[3]);
+            }
+        }
+    }
+
+    public synchronized void save() throws IOException {
+        Path tempPath = tiersPath.resolveSibling(tiersPath.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+            writer.write("#container\ttier\tattempts\tcomplete\n");
+            for (Map.Entry<String, long[][]> entry : countMap.entrySet()) {
+                long[][] counts = entry.getValue();
+                for (int tier = 0; tier < counts.length; tier++) {
+                    if (counts[tier][0] > 0) {
+                        writer.write(entry.getKey() + "\t" + tier + "\t" + counts[tier][0] + "\t" + counts[tier][1] + "\n");
+                    }
+                }
+            }
+        }
+        Files.move(tempPath, tiersPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,206 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.probe;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.bitsunited.moviechecker.Util;
+import de.bitsunited.moviechecker.event.ProbeEvent;
+
+/**
+ * Probes a file with the in-process container parsers and only launches ffprobe for other formats or when the parser
+ * fails.
+ */
+public class Prober {
+
+    private final List<ContainerParser> parserList;
+
+    private final AtomicLong nativeCounter;
+
+    private final AtomicLong processCounter;
+
+    private final AtomicLong retryCounter;
+
+    private volatile boolean nativeParsing;
+
+    private volatile ProbeTiers tiers;
+
+    private volatile MediaClassifier classifier;
+
+    public Prober() {
+        this.parserList = Arrays.asList(new MatroskaParser(), new Mp4Parser());
+        this.nativeCounter = new AtomicLong();
+        this.processCounter = new AtomicLong();
+        this.retryCounter = new AtomicLong();
+        this.nativeParsing = true;
+        this.classifier = new MediaClassifier(true);
+    }
+
+    public boolean isNativeParsing() {
+        return nativeParsing;
+    }
+
+    public void setNativeParsing(boolean nativeParsing) {
+        this.nativeParsing = nativeParsing;
+    }
+
+    public ProbeTiers getTiers() {
+        return tiers;
+    }
+
+    /**
+     * Sets the tiers of probe limits, without them ffprobe runs once with its default limits.
+     */
+    public void setTiers(ProbeTiers tiers) {
+        this.tiers = tiers;
+    }
+
+    public MediaClassifier getClassifier() {
+        return classifier;
+    }
+
+    /**
+     * Sets the classifier that spares probing files which cannot be media, {@code null} probes every file.
+     */
+    public void setClassifier(MediaClassifier classifier) {
+        this.classifier = classifier;
+    }
+
+    public ProbeOutput probe(Path file) throws IOException, InterruptedException {
+        ProbeEvent event = new ProbeEvent();
+        event.begin();
+        ProbeOutput output = doProbe(file, event);
+        if (event.shouldCommit()) {
+            event.path = file.toString();
+            event.outputLength = output.getStdOut().length() + output.getErrOut().length();
+            event.commit();
+        }
+        return output;
+    }
+
+    private ProbeOutput doProbe(Path file, ProbeEvent event) throws IOException, InterruptedException {
+        if (nativeParsing) {
+            MediaInfo info = parse(file);
+            if (info != null) {
+                nativeCounter.incrementAndGet();
+                event.method = "parser";
+                return new ProbeOutput("", info.toFfprobeOutput(file));
+            }
+        }
+        event.method = "ffprobe";
+
+        ProbeTiers currentTiers = tiers;
+        if (currentTiers == null) {
+            return runFfprobe(file, new String[0]);
+        }
+
+        String container = ProbeTiers.getContainer(file);
+        int tier = currentTiers.getStartTier(container);
+        // The result of an incomplete tier is recorded once the next tier shows whether more data helped
+        MediaInfo lowerInfo = null;
+        while (true) {
+            event.tier = tier;
+            ProbeOutput output = runFfprobe(file, currentTiers.getOptions(tier));
+            MediaInfo info = MediaInfo.parse(output.getErrOut());
+            // Larger limits do not help if ffprobe does not recognize the file at all
+            if (info == null) {
+                if (lowerInfo != null) {
+                    currentTiers.record(container, tier - 1, false);
+                }
+                return output;
+            }
+            // The same streams as the tier below mean the gaps are in the file itself, more data will not fill them
+            boolean same = lowerInfo != null && ProbeTiers.isSameStreams(lowerInfo, info);
+            boolean complete = same || ProbeTiers.isComplete(output.getErrOut(), info);
+            if (lowerInfo != null) {
+                currentTiers.record(container, tier - 1, same);
+            }
+            if (complete || tier == currentTiers.getTierCount() - 1) {
+                currentTiers.record(container, tier, complete);
+                return output;
+            }
+            lowerInfo = info;
+            tier++;
+            retryCounter.incrementAndGet();
+        }
+    }
+
+    ProbeOutput runFfprobe(Path file, String[] options) throws IOException, InterruptedException {
+        processCounter.incrementAndGet();
+
+        List<String> ffprobeCommand = new ArrayList<>();
+        ffprobeCommand.add("ffprobe");
+        ffprobeCommand.add("-hide_banner");
+        ffprobeCommand.addAll(Arrays.asList(options));
+        ffprobeCommand.add("-i");
+        ffprobeCommand.add(file.toString());
+        Process process = Runtime.getRuntime().exec(ffprobeCommand.toArray(new String[ffprobeCommand.size()]));
+
+        process.waitFor();
+
+        String stdOut = Util.read(process.getInputStream());
+        String errOut = Util.read(process.getErrorStream());
+
+        return new ProbeOutput(stdOut, errOut);
+    }
+
+    /**
+     * Returns the media information read by the in-process parsers or {@code null} if none of them understands the
+     * file.
+     */
+    public MediaInfo parse(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ChannelReader reader = new ChannelReader(channel);
+            for (ContainerParser parser : parserList) {
+                if (parser.accepts(reader)) {
+                    try {
+                        return parser.parse(reader);
+                    } catch (IOException e) {
+                        // Fall back to ffprobe
+                        return null;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    public long getNativeCount() {
+        return nativeCounter.get();
+    }
+
+    public long getProcessCount() {
+        return processCounter.get();
+    }
+
+    /**
+     * Returns the number of ffprobe runs repeated with larger limits.
+     */
+    public long getRetryCount() {
+        return retryCounter.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Parsed: " + getNativeCount() + ", ffprobe: " + getProcessCount() + ", retried: " + getRetryCount();
+    }
+}
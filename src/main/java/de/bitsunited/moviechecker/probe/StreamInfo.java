@@ -0,0 +1,80 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.probe;
+
+import java.util.Objects;
+
+public class StreamInfo {
+
+    public enum StreamType {
+        VIDEO("Video"), AUDIO("Audio"), SUBTITLE("Subtitle"), DATA("Data");
+
+        private final String label;
+
+        private StreamType(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private final StreamType type;
+    private final String codec;
+    private final String language;
+    private final int width;
+    private final int height;
+    private final int sampleRate;
+    private final int channels;
+
+    public StreamInfo(StreamType type, String codec, String language, int width, int height, int sampleRate, int channels) {
+        this.type = Objects.requireNonNull(type);
+        this.codec = Objects.requireNonNull(codec);
+        this.language = language;
+        this.width = width;
+        this.height = height;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+    }
+
+    public StreamType getType() {
+        return type;
+    }
+
+    public String getCodec() {
+        return codec;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+}
@@ -0,0 +1,139 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.scan;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+
+/**
+ * AIMD controller for the number of concurrent probes. After every window of completed probes the limit grows by one
+ * while the latency stays flat and shrinks multiplicatively when the latency climbs, the throughput drops after an
+ * increase or the system load is too high.
+ */
+public class AdaptiveLimit {
+
+    private static final double LATENCY_TOLERANCE = 1.5;
+
+    private static final double THROUGHPUT_TOLERANCE = 0.9;
+
+    private static final double BACKOFF_FACTOR = 0.75;
+
+    private static final double BASELINE_DRIFT = 0.05;
+
+    private final int maxLimit;
+
+    private final Double maxLoad;
+
+    private final OperatingSystemMXBean operatingSystem;
+
+    private int limit;
+
+    private int windowSamples;
+
+    private long windowLatencySum;
+
+    private long windowStart;
+
+    private double baselineLatency;
+
+    private double lastLatency;
+
+    private double lastThroughput;
+
+    private boolean lastIncrease;
+
+    private long increaseCount;
+
+    private long decreaseCount;
+
+    /**
+     * @param maxLoad maximum system load average per processor, {@code null} to ignore the system load
+     */
+    public AdaptiveLimit(int initialLimit, int maxLimit, Double maxLoad) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.limit = Math.max(1, Math.min(initialLimit, this.maxLimit));
+        this.maxLoad = maxLoad;
+        this.operatingSystem = ManagementFactory.getOperatingSystemMXBean();
+
+        this.windowStart = System.nanoTime();
+        this.baselineLatency = Double.NaN;
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    public int onSample(long latencyNanos) {
+        return onSample(latencyNanos, System.nanoTime());
+    }
+
+    synchronized int onSample(long latencyNanos, long now) {
+        windowSamples++;
+        windowLatencySum += latencyNanos;
+        if (windowSamples < Math.max(2, limit)) {
+            return limit;
+        }
+
+        double latency = (double) windowLatencySum / windowSamples;
+        double throughput = windowSamples * 1e9 / Math.max(1, now - windowStart);
+
+        if (Double.isNaN(baselineLatency) || latency < baselineLatency) {
+            baselineLatency = latency;
+        } else {
+            baselineLatency += (latency - baselineLatency) * BASELINE_DRIFT;
+        }
+
+        boolean overloaded = latency > baselineLatency * LATENCY_TOLERANCE || isSystemOverloaded();
+        if (!overloaded && lastIncrease && throughput < lastThroughput * THROUGHPUT_TOLERANCE) {
+            // The last increase only made the probes slower
+            overloaded = true;
+        }
+
+        lastIncrease = false;
+        if (overloaded) {
+            int newLimit = Math.max(1, (int) (limit * BACKOFF_FACTOR));
+            if (newLimit < limit) {
+                limit = newLimit;
+                decreaseCount++;
+            }
+        } else if (limit < maxLimit) {
+            limit++;
+            increaseCount++;
+            lastIncrease = true;
+        }
+
+        lastLatency = latency;
+        lastThroughput = throughput;
+        windowSamples = 0;
+        windowLatencySum = 0;
+        windowStart = now;
+
+        return limit;
+    }
+
+    private boolean isSystemOverloaded() {
+        if (maxLoad == null) {
+            return false;
+        }
+        double load = operatingSystem.getSystemLoadAverage();
+        return load >= 0 && load / operatingSystem.getAvailableProcessors() > maxLoad;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "adaptive limit " + limit + "/" + maxLimit + ", " + increaseCount + " increases, " + decreaseCount + " decreases, latency "
+                + Math.round(lastLatency / 1e6) + " ms, " + String.format("%.1f", lastThroughput) + " probes/s";
+    }
+}
@@ -0,0 +1,169 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.scan;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import de.bitsunited.moviechecker.Database;
+import de.bitsunited.moviechecker.scan.LeaseDirectory.Lease;
+import de.bitsunited.moviechecker.scan.LeaseDirectory.LeaseState;
+
+/**
+ * Scan that is shared between several processes. Every worker claims work units through the {@link LeaseDirectory}
+ * and writes its results into its own shard, which {@link #merge(Database, LeaseDirectory)} folds into the main
+ * database afterwards.
+ */
+public class CooperativeScan {
+
+    private final List<Path> directories;
+
+    private final LeaseDirectory leases;
+
+    private final ProbeScheduler scheduler;
+
+    private final Set<WorkUnit> heldUnits;
+
+    public CooperativeScan(Path directory, LeaseDirectory leases, ProbeScheduler scheduler) {
+        this(Collections.singletonList(directory), leases, scheduler);
+    }
+
+    /**
+     * Creates a scan over several roots, the work units of all roots are claimed from the same lease directory.
+     */
+    public CooperativeScan(List<Path> directories, LeaseDirectory leases, ProbeScheduler scheduler) {
+        this.directories = new ArrayList<>(directories);
+        this.leases = Objects.requireNonNull(leases);
+        this.scheduler = Objects.requireNonNull(scheduler);
+        this.heldUnits = ConcurrentHashMap.newKeySet();
+    }
+
+    public Result scan(Database database) throws IOException {
+        Database shard = new Database(leases.getShardPath(leases.getWorkerId()), null);
+        if (Files.isRegularFile(leases.getShardPath(leases.getWorkerId()))) {
+            shard.load();
+        }
+        shard.setAutoSave(true);
+
+        long renewMillis = Math.max(1, leases.getLeaseDuration().toMillis() / 3);
+        ScheduledExecutorService renewExecutor = Executors.newSingleThreadScheduledExecutor();
+        renewExecutor.scheduleAtFixedRate(() -> renewLeases(), renewMillis, renewMillis, TimeUnit.MILLISECONDS);
+
+        List<WorkUnit> unitList = new ArrayList<>();
+        VisitedSet visited = new VisitedSet(true);
+        for (Path directory : directories) {
+            if (visited.visitDirectory(directory)) {
+                unitList.addAll(WorkUnit.of(directory));
+            }
+        }
+
+        List<Result> resultList = new ArrayList<>();
+        try {
+            for (WorkUnit unit : unitList) {
+                if (!leases.claim(unit)) {
+                    continue;
+                }
+                heldUnits.add(unit);
+                try {
+                    System.out.println(leases.getWorkerId() + ": Scanning " + unit);
+
+                    // Start with the known entries so unchanged files are not probed again
+                    shard.addEntries(database, unit.getDirectory(), unit::contains);
+
+                    resultList.add(ForkJoinPool.commonPool().invoke(unit.createTask(shard, scheduler, visited)));
+
+                    // The walk only adds and updates, known files it did not see are gone. The merge removes whatever
+                    // the shard lacks
+                    shard.removeEntries(unit.getDirectory(), p -> unit.contains(p) && !visited.isVisitedPath(p));
+                    shard.removeNonMedia(unit.getDirectory(), p -> unit.contains(p) && !visited.isVisitedPath(p));
+                    visited.clearPaths();
+                    shard.save();
+
+                    leases.complete(unit);
+                } finally {
+                    heldUnits.remove(unit);
+                }
+            }
+        } finally {
+            renewExecutor.shutdownNow();
+        }
+        return Result.of(resultList);
+    }
+
+    private void renewLeases() {
+        for (WorkUnit unit : heldUnits) {
+            try {
+                leases.renew(unit);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Moves the results of all completed work units into the database. Returns the number of merged units.
+     */
+    public static int merge(Database database, LeaseDirectory leases) throws IOException {
+        Map<String, List<Lease>> doneMap = new HashMap<>();
+        Set<String> activeOwnerSet = new HashSet<>();
+        for (Lease lease : leases.list()) {
+            if (lease.getState() == LeaseState.DONE) {
+                doneMap.computeIfAbsent(lease.getOwner(), o -> new ArrayList<>()).add(lease);
+            } else {
+                activeOwnerSet.add(lease.getOwner());
+            }
+        }
+
+        int counter = 0;
+        for (Map.Entry<String, List<Lease>> entry : doneMap.entrySet()) {
+            Path shardPath = leases.getShardPath(entry.getKey());
+            Database shard = new Database(shardPath, null);
+            if (Files.isRegularFile(shardPath)) {
+                shard.load();
+            }
+
+            for (Lease lease : entry.getValue()) {
+                WorkUnit unit = lease.getUnit();
+                // The shard is authoritative for its units, entries it does not know about are gone
+                database.removeEntries(unit.getDirectory(), p -> unit.contains(p) && !shard.containsEntry(p));
+                database.removeNonMedia(unit.getDirectory(), p -> unit.contains(p) && !shard.containsNonMedia(p));
+                database.addEntries(shard, unit.getDirectory(), unit::contains);
+                database.save();
+
+                leases.delete(lease);
+                counter++;
+            }
+
+            if (!activeOwnerSet.contains(entry.getKey())) {
+                Files.deleteIfExists(shardPath);
+            }
+        }
+        return counter;
+    }
+}
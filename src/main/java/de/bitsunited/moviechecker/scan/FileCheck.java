@@ -17,12 +17,16 @@ package de.bitsunited.moviechecker.scan;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Instant;
 import java.util.Objects;
 import java.util.concurrent.RecursiveTask;
 
 import de.bitsunited.moviechecker.Database;
 import de.bitsunited.moviechecker.Util;
+import de.bitsunited.moviechecker.probe.MediaClassifier;
+import de.bitsunited.moviechecker.probe.ProbeOutput;
+import de.bitsunited.moviechecker.probe.Prober;
 import de.bitsunited.moviechecker.scan.Result.ResultState;
 
 public class FileCheck extends RecursiveTask<Result> {
@@ -33,44 +37,139 @@ public class FileCheck extends RecursiveTask<Result> {
 
     private final Database database;
 
+    private final Prober prober;
+
+    private Result result;
+
+    private Path absolutFile;
+
+    private Instant fileTime;
+
+    private Long size;
+
+    private String fileKey;
+
+    private Instant recordedTime;
+
     public FileCheck(Path file, Database database) {
+        this(file, database, new Prober());
+    }
+
+    public FileCheck(Path file, Database database, Prober prober) {
         this.file = Objects.requireNonNull(file);
         this.database = Objects.requireNonNull(database);
+        this.prober = Objects.requireNonNull(prober);
     }
 
     @Override
     public Result compute() {
+        if (!prepare()) {
+            return result;
+        }
+        return probe();
+    }
+
+    /**
+     * Compares the file with its database entry. Returns {@code true} if the file needs to be probed, otherwise the
+     * outcome is available from {@link #getResult()}.
+     */
+    public boolean prepare() {
+        return prepare(null);
+    }
+
+    /**
+     * Like {@link #prepare()} with the attributes the caller already read, so the file is not read again. Reads them
+     * if they are {@code null}.
+     */
+    public boolean prepare(BasicFileAttributes knownAttributes) {
         if (Util.hasFileExtension(file, "old")) {
-            return ResultState.OLD_FILE.getResult();
+            result = ResultState.OLD_FILE.getResult();
+            return false;
         }
         if (file.getFileName().toString().startsWith(".temp.")) {
-            return null;
+            result = null;
+            return false;
         }
         try {
-            Path absolutFile = file.toAbsolutePath();
-            Instant fileTime = Files.getLastModifiedTime(absolutFile).toInstant();
+            absolutFile = file.toAbsolutePath();
+            BasicFileAttributes attributes = knownAttributes != null ? knownAttributes
+                    : Files.readAttributes(absolutFile, BasicFileAttributes.class);
+            fileTime = attributes.lastModifiedTime().toInstant();
+            size = attributes.size();
+            fileKey = attributes.fileKey() != null ? attributes.fileKey().toString() : null;
 
-            Instant recordedTime = database.getEntryTime(absolutFile);
+            recordedTime = database.getEntryTime(absolutFile);
+            MediaClassifier classifier = prober.getClassifier();
 
             if (Objects.equals(fileTime, recordedTime)) {
-                return ResultState.UNCHANGED.getResult();
+                // Entries of files ffprobe did not recognize are replaced by a non media record
+                String errOut = database.getEntryErrOut(absolutFile);
+                if (classifier != null && (errOut == null || !errOut.contains("Input #0"))
+                        && classifier.classify(absolutFile, size) == MediaClassifier.Kind.NON_MEDIA) {
+                    database.addNonMedia(absolutFile, fileTime, size);
+                    result = ResultState.NON_MEDIA.getResult();
+                    return false;
+                }
+                if (!Objects.equals(size, database.getEntrySize(absolutFile)) || !Objects.equals(fileKey, database.getEntryFileKey(absolutFile))) {
+                    // Entries of older databases have no attributes, record them without probing again
+                    database.addEntry(absolutFile, fileTime, size, fileKey, database.getEntryStdOut(absolutFile), database.getEntryErrOut(absolutFile));
+                }
+                result = ResultState.UNCHANGED.getResult();
+                return false;
             }
 
-            String[] ffprobeCommand = new String[] { "ffprobe", "-hide_banner", "-i", absolutFile.toString() };
-            Process process = Runtime.getRuntime().exec(ffprobeCommand);
-
-            process.waitFor();
+            if (database.isNonMedia(absolutFile, fileTime, size)) {
+                result = ResultState.NON_MEDIA.getResult();
+                return false;
+            }
+            if (classifier != null && classifier.classify(absolutFile, size) == MediaClassifier.Kind.NON_MEDIA) {
+                database.addNonMedia(absolutFile, fileTime, size);
+                result = ResultState.NON_MEDIA.getResult();
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            result = ResultState.EXCEPTION.getResult();
+            return false;
+        }
+    }
 
-            String stdOut = Util.read(process.getInputStream());
-            String errOut = Util.read(process.getErrorStream());
+    public Result probe() {
+        try {
+            ProbeOutput output = prober.probe(absolutFile);
 
-            database.addEntry(absolutFile, fileTime, stdOut, errOut);
+            database.addEntry(absolutFile, fileTime, size, fileKey, output.getStdOut(), output.getErrOut());
 
-            return recordedTime == null ? ResultState.NEW.getResult() : ResultState.UPDATED.getResult();
+            result = recordedTime == null ? ResultState.NEW.getResult() : ResultState.UPDATED.getResult();
         } catch (IOException | InterruptedException e) {
             e.printStackTrace();
-            return ResultState.EXCEPTION.getResult();
+            result = ResultState.EXCEPTION.getResult();
         }
+        return result;
+    }
+
+    public Result getResult() {
+        return result;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public Instant getFileTime() {
+        return fileTime;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    public String getFileKey() {
+        return fileKey;
     }
 
+    public Instant getRecordedTime() {
+        return recordedTime;
+    }
 }
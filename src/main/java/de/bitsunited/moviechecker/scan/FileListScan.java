@@ -0,0 +1,171 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.scan;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+import de.bitsunited.moviechecker.Database;
+import de.bitsunited.moviechecker.scan.Result.ResultState;
+
+/**
+ * Checks the files of a list instead of walking directories, e.g. the files a download has just added. The paths are
+ * read one per line, or separated by NUL characters like the output of {@code find -print0}, and go to the probe queues
+ * while the list is still read. Only a limited number of probes are queued or running, so a long list is read at the
+ * pace the probes finish.
+ */
+public class FileListScan {
+
+    public static final int DEFAULT_IN_FLIGHT = 64;
+
+    private final Database database;
+
+    private final ProbeScheduler scheduler;
+
+    private final int maxInFlight;
+
+    private final Semaphore inFlight;
+
+    private final VisitedSet visited;
+
+    // Looking up the file store of every file is expensive, the files of a list are mostly in a few directories
+    private final Map<Path, ProbeQueue> queueMap;
+
+    private Result result;
+
+    public FileListScan(Database database, ProbeScheduler scheduler, int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("Invalid in flight limit: " + maxInFlight);
+        }
+        this.database = Objects.requireNonNull(database);
+        this.scheduler = Objects.requireNonNull(scheduler);
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.visited = new VisitedSet();
+        this.queueMap = new HashMap<>();
+    }
+
+    /**
+     * Checks the listed files and returns when all of them are done.
+     */
+    public Result scan(Reader reader, boolean nullSeparated) throws IOException {
+        synchronized (this) {
+            result = Result.of(Collections.emptyList());
+        }
+        try {
+            readPaths(reader, nullSeparated ? '\0' : '\n', this::handle);
+        } finally {
+            inFlight.acquireUninterruptibly(maxInFlight);
+            inFlight.release(maxInFlight);
+        }
+        synchronized (this) {
+            return result;
+        }
+    }
+
+    static void readPaths(Reader reader, char separator, Consumer<String> action) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        char[] buffer = new char[8192];
+        int length;
+        while ((length = reader.read(buffer)) >= 0) {
+            for (int i = 0; i < length; i++) {
+                if (buffer[i] == separator) {
+                    accept(builder, separator, action);
+                } else {
+                    builder.append(buffer[i]);
+                }
+            }
+        }
+        accept(builder, separator, action);
+    }
+
+    private static void accept(StringBuilder builder, char separator, Consumer<String> action) {
+        // Lists written on Windows end their lines with CR LF
+        if (separator == '\n' && builder.length() > 0 && builder.charAt(builder.length() - 1) == '\r') {
+            builder.setLength(builder.length() - 1);
+        }
+        if (builder.length() > 0) {
+            action.accept(builder.toString());
+        }
+        builder.setLength(0);
+    }
+
+    private void handle(String name) {
+        Path file;
+        BasicFileAttributes attributes;
+        try {
+            file = Paths.get(name).toAbsolutePath().normalize();
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                return;
+            }
+            // A file listed twice or under another path is probed once
+            if (!visited.visitFile(file, attributes)) {
+                add(ResultState.SKIPPED.getResult());
+                return;
+            }
+        } catch (InvalidPathException | IOException e) {
+            // Not a path or the file is gone
+            return;
+        }
+
+        FileCheck check = new FileCheck(file, database, scheduler.getProber());
+        if (!check.prepare(attributes)) {
+            add(check.getResult());
+            return;
+        }
+
+        ProbeQueue queue;
+        try {
+            queue = getQueue(file.getParent());
+        } catch (IOException e) {
+            e.printStackTrace();
+            add(ResultState.EXCEPTION.getResult());
+            return;
+        }
+        inFlight.acquireUninterruptibly();
+        queue.submit(check).whenComplete((r, e) -> {
+            add(e == null ? r : ResultState.EXCEPTION.getResult());
+            inFlight.release();
+        });
+    }
+
+    private ProbeQueue getQueue(Path directory) throws IOException {
+        ProbeQueue queue = queueMap.get(directory);
+        if (queue == null) {
+            queue = scheduler.getQueue(directory);
+            queueMap.put(directory, queue);
+        }
+        return queue;
+    }
+
+    private synchronized void add(Result other) {
+        if (other != null) {
+            result = Result.of(Arrays.asList(result, other));
+        }
+    }
+}
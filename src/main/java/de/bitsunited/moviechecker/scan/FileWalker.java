@@ -17,11 +17,19 @@ package de.bitsunited.moviechecker.scan;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.RecursiveTask;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import de.bitsunited.moviechecker.Database;
+import de.bitsunited.moviechecker.event.DirectoryPrepareEvent;
 import de.bitsunited.moviechecker.scan.Result.ResultState;
 
 public class FileWalker extends RecursiveTask<Result> {
@@ -32,25 +40,80 @@ public class FileWalker extends RecursiveTask<Result> {
 
     private final Database database;
 
-    public FileWalker(Path directory, Database database) {
+    private final ProbeScheduler scheduler;
+
+    private final VisitedSet visited;
+
+    private final Queue<CompletableFuture<Result>> pending;
+
+    private final boolean root;
+
+    public FileWalker(Path directory, Database database, ProbeScheduler scheduler) {
+        this(directory, database, scheduler, new VisitedSet());
+    }
+
+    public FileWalker(Path directory, Database database, ProbeScheduler scheduler, VisitedSet visited) {
+        this(directory, database, scheduler, visited, null);
+    }
+
+    /**
+     * Creates a walker that adds the probe futures to the given queue instead of joining them. Without a queue the
+     * walker joins its own futures.
+     */
+    FileWalker(Path directory, Database database, ProbeScheduler scheduler, VisitedSet visited,
+            Queue<CompletableFuture<Result>> pending) {
         this.directory = Objects.requireNonNull(directory);
         this.database = Objects.requireNonNull(database);
+        this.scheduler = Objects.requireNonNull(scheduler);
+        this.visited = Objects.requireNonNull(visited);
+        this.root = pending == null;
+        this.pending = root ? new ConcurrentLinkedQueue<>() : pending;
     }
 
     @Override
     protected Result compute() {
-        try {
-            return Result.ofTasks(Files.list(directory).filter(f -> Files.isRegularFile(f)).map(f -> handle(f)).collect(Collectors.toList()));
+        try (Stream<Path> stream = Files.list(directory)) {
+            // All files of a directory live on the same file store
+            ProbeQueue queue = scheduler.getQueue(directory);
+            // Covers the pass over the files: attributes, database lookup and queueing. The folder walker reports the
+            // listing itself
+            DirectoryPrepareEvent event = new DirectoryPrepareEvent();
+            event.begin();
+            List<CompletableFuture<Result>> list = stream.map(f -> handle(f, queue)).filter(Objects::nonNull).collect(Collectors.toList());
+            if (event.shouldCommit()) {
+                event.directory = directory.toString();
+                event.files = list.size();
+                event.commit();
+            }
+            pending.addAll(list);
         } catch (IOException e) {
             e.printStackTrace();
             return ResultState.EXCEPTION.getResult();
         }
+        return root ? Result.ofFutures(pending) : Result.of(Collections.emptyList());
     }
 
-    private RecursiveTask<Result> handle(Path file) {
-        FileCheck check = new FileCheck(file, database);
-        check.fork();
-        return check;
+    private CompletableFuture<Result> handle(Path file, ProbeQueue queue) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                return null;
+            }
+            // A hard link or the same file seen through another root is probed once
+            if (!visited.visitFile(file, attributes)) {
+                return CompletableFuture.completedFuture(ResultState.SKIPPED.getResult());
+            }
+        } catch (IOException e) {
+            // Dangling symlink or the file is gone
+            return null;
+        }
+
+        FileCheck check = new FileCheck(file, database, scheduler.getProber());
+        if (!check.prepare(attributes)) {
+            return CompletableFuture.completedFuture(check.getResult());
+        }
+        return queue.submit(check);
     }
 
 }
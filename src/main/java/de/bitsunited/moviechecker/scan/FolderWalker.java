@@ -17,14 +17,21 @@ package de.bitsunited.moviechecker.scan;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.RecursiveTask;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import de.bitsunited.moviechecker.Database;
+import de.bitsunited.moviechecker.event.DirectoryListEvent;
 import de.bitsunited.moviechecker.scan.Result.ResultState;
 
 public class FolderWalker extends RecursiveTask<Result> {
@@ -35,35 +42,113 @@ public class FolderWalker extends RecursiveTask<Result> {
 
     private final Database database;
 
-    public FolderWalker(Path directory, Database database) {
+    private final ProbeScheduler scheduler;
+
+    private final VisitedSet visited;
+
+    private final Queue<CompletableFuture<Result>> pending;
+
+    private final boolean root;
+
+    public FolderWalker(Path directory, Database database, ProbeScheduler scheduler) {
+        this(directory, database, scheduler, new VisitedSet());
+    }
+
+    /**
+     * Creates a walker that skips directories and files already in the visited set, which may be shared by the walkers
+     * of several scan roots.
+     */
+    public FolderWalker(Path directory, Database database, ProbeScheduler scheduler, VisitedSet visited) {
+        this(directory, database, scheduler, visited, null);
+    }
+
+    /**
+     * Creates a walker that adds the probe futures of the whole tree to the given queue. Without a queue the walker is
+     * a root: it walks and enqueues the whole tree first and joins the futures at the end, so the probe queues hold
+     * every pending file of the tree.
+     */
+    FolderWalker(Path directory, Database database, ProbeScheduler scheduler, VisitedSet visited,
+            Queue<CompletableFuture<Result>> pending) {
         this.directory = Objects.requireNonNull(directory);
         this.database = Objects.requireNonNull(database);
+        this.scheduler = Objects.requireNonNull(scheduler);
+        this.visited = Objects.requireNonNull(visited);
+        this.root = pending == null;
+        this.pending = root ? new ConcurrentLinkedQueue<>() : pending;
     }
 
     @Override
     protected Result compute() {
+        try {
+            // A symlink loop or an overlapping root leads back to a directory that is already scanned
+            if (!visited.visitDirectory(directory)) {
+                return Result.of(Collections.emptyList());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return ResultState.EXCEPTION.getResult();
+        }
+
         Set<RecursiveTask<Result>> subTaskSet = new HashSet<>();
 
-        FileWalker fileWalker = new FileWalker(directory, database);
+        FileWalker fileWalker = new FileWalker(directory, database, scheduler, visited, pending);
         fileWalker.fork();
         subTaskSet.add(fileWalker);
 
-        try {
-            List<Path> list = Files.list(directory).collect(Collectors.toList());
+        Result walkResult = Result.of(Collections.emptyList());
+        DirectoryListEvent event = new DirectoryListEvent();
+        event.begin();
+        try (Stream<Path> stream = Files.list(directory)) {
+            List<Path> list = stream.collect(Collectors.toList());
+            event.end();
+            if (event.shouldCommit()) {
+                event.directory = directory.toString();
+                event.entries = list.size();
+                event.commit();
+            }
 
             for (Path file : list) {
                 if (Files.isDirectory(file)) {
-                    FolderWalker walker = new FolderWalker(file, database);
+                    FolderWalker walker = new FolderWalker(file, database, scheduler, visited, pending);
                     walker.fork();
                     subTaskSet.add(walker);
                 }
             }
-
-            return Result.ofTasks(subTaskSet);
         } catch (IOException e) {
             e.printStackTrace();
-            return ResultState.EXCEPTION.getResult();
+            walkResult = ResultState.EXCEPTION.getResult();
+        }
+        // The file walker was forked before the listing and is joined even if the listing failed
+        walkResult = Result.of(Arrays.asList(walkResult, Result.ofTasks(subTaskSet)));
+        if (!root) {
+            return walkResult;
         }
+        return Result.of(Arrays.asList(walkResult, Result.ofFutures(pending)));
+    }
+
+    /**
+     * Creates one task scanning all roots with a shared visited set, so every physical directory and file is scanned
+     * once.
+     */
+    public static RecursiveTask<Result> of(List<Path> directories, Database database, ProbeScheduler scheduler) {
+        VisitedSet visited = new VisitedSet();
+        Queue<CompletableFuture<Result>> pending = new ConcurrentLinkedQueue<>();
+        return new RecursiveTask<Result>() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected Result compute() {
+                Set<RecursiveTask<Result>> taskSet = new HashSet<>();
+                for (Path directory : directories) {
+                    FolderWalker walker = new FolderWalker(directory, database, scheduler, visited, pending);
+                    walker.fork();
+                    taskSet.add(walker);
+                }
+                Result walkResult = Result.ofTasks(taskSet);
+                return Result.of(Arrays.asList(walkResult, Result.ofFutures(pending)));
+            }
+        };
     }
 
 }
@@ -0,0 +1,241 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.scan;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * Work directory shared by several scanning processes. Each {@link WorkUnit} is claimed through a lease file that is
+ * only modified while holding a {@link FileLock} on it.
+ */
+public class LeaseDirectory {
+
+    public enum LeaseState {
+        ACTIVE, DONE;
+    }
+
+    public static class Lease {
+        private final Path leaseFile;
+        private final WorkUnit unit;
+        private final String owner;
+        private final Instant expires;
+        private final LeaseState state;
+
+        private Lease(Path leaseFile, WorkUnit unit, String owner, Instant expires, LeaseState state) {
+            this.leaseFile = leaseFile;
+            this.unit = unit;
+            this.owner = owner;
+            this.expires = expires;
+            this.state = state;
+        }
+
+        public Path getLeaseFile() {
+            return leaseFile;
+        }
+
+        public WorkUnit getUnit() {
+            return unit;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public Instant getExpires() {
+            return expires;
+        }
+
+        public LeaseState getState() {
+            return state;
+        }
+    }
+
+    private static final String LEASE_EXTENSION = ".lease";
+
+    private final Path leaseDirectory;
+
+    private final Path shardDirectory;
+
+    private final String workerId;
+
+    private final Duration leaseDuration;
+
+    public LeaseDirectory(Path workDirectory, String workerId, Duration leaseDuration) throws IOException {
+        Objects.requireNonNull(workDirectory);
+        this.workerId = Objects.requireNonNull(workerId);
+        this.leaseDuration = Objects.requireNonNull(leaseDuration);
+
+        this.leaseDirectory = workDirectory.resolve("leases");
+        this.shardDirectory = workDirectory.resolve("shards");
+        Files.createDirectories(leaseDirectory);
+        Files.createDirectories(shardDirectory);
+    }
+
+    public String getWorkerId() {
+        return workerId;
+    }
+
+    public Duration getLeaseDuration() {
+        return leaseDuration;
+    }
+
+    public Path getShardPath(String owner) {
+        return shardDirectory.resolve(owner.replaceAll("[^A-Za-z0-9._-]", "_") + ".xml");
+    }
+
+    /**
+     * Claims the unit if it is neither done nor held by another worker with an unexpired lease.
+     */
+    public boolean claim(WorkUnit unit) throws IOException {
+        return update(unit, lease -> {
+            if (lease == null) {
+                return true;
+            }
+            if (lease.getState() == LeaseState.DONE) {
+                return false;
+            }
+            return workerId.equals(lease.getOwner()) || lease.getExpires().isBefore(Instant.now());
+        }, LeaseState.ACTIVE);
+    }
+
+    public boolean renew(WorkUnit unit) throws IOException {
+        return update(unit, lease -> lease != null && lease.getState() == LeaseState.ACTIVE && workerId.equals(lease.getOwner()),
+                LeaseState.ACTIVE);
+    }
+
+    public boolean complete(WorkUnit unit) throws IOException {
+        return update(unit, lease -> lease != null && workerId.equals(lease.getOwner()), LeaseState.DONE);
+    }
+
+    public List<Lease> list() throws IOException {
+        List<Lease> list = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(leaseDirectory, "*" + LEASE_EXTENSION)) {
+            for (Path leaseFile : stream) {
+                try (FileChannel channel = FileChannel.open(leaseFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    FileLock fileLock = channel.lock();
+                    try {
+                        Lease lease = read(leaseFile, channel);
+                        if (lease != null) {
+                            list.add(lease);
+                        }
+                    } finally {
+                        fileLock.release();
+                    }
+                }
+            }
+        }
+        return list;
+    }
+
+    public void delete(Lease lease) throws IOException {
+        Files.deleteIfExists(lease.getLeaseFile());
+    }
+
+    private interface LeaseCondition {
+        boolean test(Lease lease) throws IOException;
+    }
+
+    private boolean update(WorkUnit unit, LeaseCondition condition, LeaseState newState) throws IOException {
+        Path leaseFile = getLeaseFile(unit);
+        try (FileChannel channel = FileChannel.open(leaseFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileLock fileLock;
+            try {
+                fileLock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                // Held by another worker inside this JVM
+                return false;
+            }
+            if (fileLock == null) {
+                return false;
+            }
+            try {
+                Lease lease = read(leaseFile, channel);
+                if (!condition.test(lease)) {
+                    return false;
+                }
+                write(channel, new Lease(leaseFile, unit, workerId, Instant.now().plus(leaseDuration), newState));
+                return true;
+            } finally {
+                fileLock.release();
+            }
+        }
+    }
+
+    private Path getLeaseFile(WorkUnit unit) {
+        String key = unit.getDirectory().toUri().toString() + (unit.isRecursive() ? "" : "#files");
+        return leaseDirectory.resolve(UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)) + LEASE_EXTENSION);
+    }
+
+    private static Lease read(Path leaseFile, FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+            // Read the complete lease
+        }
+
+        Properties properties = new Properties();
+        properties.load(new ByteArrayInputStream(buffer.array(), 0, buffer.position()));
+
+        Path directory = Paths.get(URI.create(properties.getProperty("path")));
+        boolean recursive = Boolean.parseBoolean(properties.getProperty("recursive"));
+        String owner = properties.getProperty("owner");
+        Instant expires = Instant.parse(properties.getProperty("expires"));
+        LeaseState state = LeaseState.valueOf(properties.getProperty("state"));
+
+        return new Lease(leaseFile, new WorkUnit(directory, recursive), owner, expires, state);
+    }
+
+    private static void write(FileChannel channel, Lease lease) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("path", lease.getUnit().getDirectory().toUri().toString());
+        properties.setProperty("recursive", Boolean.toString(lease.getUnit().isRecursive()));
+        properties.setProperty("owner", lease.getOwner());
+        properties.setProperty("expires", lease.getExpires().toString());
+        properties.setProperty("state", lease.getState().name());
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        properties.store(outputStream, null);
+
+        ByteBuffer buffer = ByteBuffer.wrap(outputStream.toByteArray());
+        channel.truncate(0);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+        channel.force(true);
+    }
+}
@@ -0,0 +1,86 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.scan;
+
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Order in which the pending probes of a {@link ProbeQueue} are started.
+ */
+public enum ProbeOrder {
+    /**
+     * Files unknown to the database first, then changed files. Larger files and files with the oldest recorded time
+     * come first within each group.
+     */
+    VALUE(Comparator.comparing((FileCheck c) -> c.getRecordedTime() != null)
+            .thenComparing(FileCheck::getSize, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(FileCheck::getRecordedTime, Comparator.nullsFirst(Comparator.naturalOrder()))),
+
+    /**
+     * Files in the order they were found.
+     */
+    FIFO((c1, c2) -> 0),
+
+    /**
+     * Files by directory and inode, started in sweeps that move forward through this order and only wrap around when no
+     * later file is pending, so a rotating disk reads mostly sequentially.
+     */
+    LOCALITY(Comparator.comparing((FileCheck c) -> c.getFile().toAbsolutePath().getParent(), Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparingLong(c -> getInode(c.getFileKey()))
+            .thenComparing(c -> c.getFile().getFileName().toString()), true);
+
+    // The file key of Unix file systems reads like (dev=801,ino=1234)
+    private static final Pattern INODE_PATTERN = Pattern.compile("ino=(\\d+)");
+
+    private final Comparator<FileCheck> comparator;
+
+    private final boolean sweep;
+
+    private ProbeOrder(Comparator<FileCheck> comparator) {
+        this(comparator, false);
+    }
+
+    private ProbeOrder(Comparator<FileCheck> comparator, boolean sweep) {
+        this.comparator = comparator;
+        this.sweep = sweep;
+    }
+
+    public Comparator<FileCheck> getComparator() {
+        return comparator;
+    }
+
+    /**
+     * Returns true if pending probes are started in sweeps instead of always taking the first in order.
+     */
+    public boolean isSweep() {
+        return sweep;
+    }
+
+    /**
+     * Returns the inode number of a file key, files without one sort last.
+     */
+    static long getInode(String fileKey) {
+        if (fileKey != null) {
+            Matcher matcher = INODE_PATTERN.matcher(fileKey);
+            if (matcher.find()) {
+                return Long.parseLong(matcher.group(1));
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,252 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.scan;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import de.bitsunited.moviechecker.scan.Result.ResultState;
+
+/**
+ * Probe jobs of a single file store. At most {@code limit} jobs of the queue run at the same time, independent of the
+ * queues of other file stores. Pending jobs are started in the configured {@link ProbeOrder}.
+ */
+public class ProbeQueue {
+
+    private static class Job {
+        private final FileCheck check;
+        private final long sequence;
+        private final Supplier<Result> supplier;
+        private final CompletableFuture<Result> future;
+
+        public Job(FileCheck check, long sequence, Supplier<Result> supplier) {
+            this.check = check;
+            this.sequence = sequence;
+            this.supplier = supplier;
+            this.future = new CompletableFuture<>();
+        }
+    }
+
+    private final String name;
+
+    private final Executor executor;
+
+    private final TreeSet<Job> queue;
+
+    private final AdaptiveLimit adaptiveLimit;
+
+    private Comparator<FileCheck> order;
+
+    private boolean sweep;
+
+    // The last started job of the current sweep
+    private Job cursor;
+
+    private long sweeps;
+
+    private Instant deadline;
+
+    private int limit;
+
+    private int inFlight;
+
+    private long sequence;
+
+    private long completed;
+
+    private long skipped;
+
+    public ProbeQueue(String name, int limit, Executor executor) {
+        this.name = Objects.requireNonNull(name);
+        this.executor = Objects.requireNonNull(executor);
+        this.limit = Math.max(1, limit);
+        this.adaptiveLimit = null;
+        this.order = ProbeOrder.FIFO.getComparator();
+        this.queue = new TreeSet<>((j1, j2) -> compare(j1, j2));
+    }
+
+    public ProbeQueue(String name, AdaptiveLimit adaptiveLimit, Executor executor) {
+        this.name = Objects.requireNonNull(name);
+        this.executor = Objects.requireNonNull(executor);
+        this.adaptiveLimit = Objects.requireNonNull(adaptiveLimit);
+        this.limit = adaptiveLimit.getLimit();
+        this.order = ProbeOrder.FIFO.getComparator();
+        this.queue = new TreeSet<>((j1, j2) -> compare(j1, j2));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized void setOrder(Comparator<FileCheck> order) {
+        if (!queue.isEmpty()) {
+            throw new IllegalStateException("Order of a queue with pending jobs");
+        }
+        this.order = Objects.requireNonNull(order);
+        this.sweep = false;
+    }
+
+    public synchronized void setOrder(ProbeOrder order) {
+        setOrder(order.getComparator());
+        this.sweep = order.isSweep();
+    }
+
+    /**
+     * Jobs that did not start until the deadline are skipped.
+     */
+    public synchronized void setDeadline(Instant deadline) {
+        this.deadline = deadline;
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized long getCompleted() {
+        return completed;
+    }
+
+    public synchronized long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Returns the number of sweeps started through the pending jobs, if the order sweeps.
+     */
+    public synchronized long getSweeps() {
+        return sweeps;
+    }
+
+    public CompletableFuture<Result> submit(FileCheck check) {
+        Objects.requireNonNull(check);
+        return submit(check, check::probe);
+    }
+
+    public CompletableFuture<Result> submit(Supplier<Result> supplier) {
+        return submit(null, supplier);
+    }
+
+    private CompletableFuture<Result> submit(FileCheck check, Supplier<Result> supplier) {
+        Objects.requireNonNull(supplier);
+
+        Job job;
+        synchronized (this) {
+            job = new Job(check, sequence++, supplier);
+            queue.add(job);
+        }
+        dispatch();
+
+        return job.future;
+    }
+
+    private int compare(Job j1, Job j2) {
+        // Jobs without a file check go first, so the order stays consistent for the sorted set
+        if ((j1.check == null) != (j2.check == null)) {
+            return j1.check == null ? -1 : 1;
+        }
+        if (j1.check != null) {
+            int c = order.compare(j1.check, j2.check);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Long.compare(j1.sequence, j2.sequence);
+    }
+
+    private void run(Job job) {
+        long startTime = System.nanoTime();
+        Result result = null;
+        RuntimeException exception = null;
+        try {
+            result = job.supplier.get();
+        } catch (RuntimeException e) {
+            exception = e;
+        }
+        finished(System.nanoTime() - startTime);
+
+        if (exception != null) {
+            job.future.completeExceptionally(exception);
+        } else {
+            job.future.complete(result);
+        }
+    }
+
+    private void finished(long latencyNanos) {
+        synchronized (this) {
+            inFlight--;
+            completed++;
+            if (adaptiveLimit != null) {
+                limit = adaptiveLimit.onSample(latencyNanos);
+            }
+        }
+        dispatch();
+    }
+
+    private void dispatch() {
+        List<Job> startList = new ArrayList<>();
+        List<Job> skipList = new ArrayList<>();
+        synchronized (this) {
+            if (deadline != null && Instant.now().isAfter(deadline)) {
+                skipList.addAll(queue);
+                queue.clear();
+                skipped += skipList.size();
+            }
+            while (inFlight < limit && !queue.isEmpty()) {
+                inFlight++;
+                startList.add(poll());
+            }
+        }
+        skipList.forEach(j -> j.future.complete(ResultState.SKIPPED.getResult()));
+        startList.forEach(j -> executor.execute(() -> run(j)));
+    }
+
+    private Job poll() {
+        if (!sweep) {
+            return queue.pollFirst();
+        }
+        // Continue behind the last started job, start over from the first when the end is reached
+        Job job = cursor != null ? queue.higher(cursor) : null;
+        if (job == null) {
+            job = queue.first();
+            sweeps++;
+        }
+        queue.remove(job);
+        cursor = job;
+        return job;
+    }
+
+    @Override
+    public String toString() {
+        String skippedText = getSkipped() > 0 ? ", " + getSkipped() + " skipped" : "";
+        if (sweep) {
+            skippedText += ", " + getSweeps() + " sweeps";
+        }
+        if (adaptiveLimit != null) {
+            return name + ": " + getCompleted() + " probes" + skippedText + ", " + adaptiveLimit;
+        }
+        return name + ": " + getCompleted() + " probes" + skippedText + ", limit " + getLimit();
+    }
+}
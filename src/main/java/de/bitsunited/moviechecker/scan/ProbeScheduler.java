@@ -0,0 +1,139 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.scan;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import de.bitsunited.moviechecker.probe.Prober;
+
+/**
+ * Distributes probe jobs to one {@link ProbeQueue} per file store, so every device runs with its own concurrency and a
+ * slow mount cannot starve the others. Configured mount roots take precedence over the detected file stores.
+ */
+public class ProbeScheduler {
+
+    private final int defaultLimit;
+
+    private final Map<Path, Integer> rootLimitMap;
+
+    private final Map<Object, ProbeQueue> queueMap;
+
+    private final ExecutorService executor;
+
+    private final Prober prober;
+
+    private ProbeOrder order;
+
+    private Instant deadline;
+
+    private boolean adaptive;
+
+    private Integer adaptiveMaxLimit;
+
+    private Double adaptiveMaxLoad;
+
+    public ProbeScheduler(int defaultLimit, Map<Path, Integer> rootLimitMap) {
+        this.defaultLimit = defaultLimit;
+
+        // Longest roots first, so nested mounts win over their parents
+        List<Path> rootList = new ArrayList<>(Objects.requireNonNull(rootLimitMap).keySet());
+        rootList.sort(Comparator.comparingInt(Path::getNameCount).reversed());
+        this.rootLimitMap = new LinkedHashMap<>();
+        rootList.forEach(r -> this.rootLimitMap.put(r.toAbsolutePath(), rootLimitMap.get(r)));
+
+        this.prober = new Prober();
+        this.order = ProbeOrder.VALUE;
+        this.queueMap = new ConcurrentHashMap<>();
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public ProbeQueue getQueue(Path directory) throws IOException {
+        Path absolutDirectory = directory.toAbsolutePath();
+        for (Map.Entry<Path, Integer> entry : rootLimitMap.entrySet()) {
+            if (absolutDirectory.startsWith(entry.getKey())) {
+                return queueMap.computeIfAbsent(entry.getKey(), r -> createQueue(r.toString(), entry.getValue()));
+            }
+        }
+
+        FileStore store = Files.getFileStore(absolutDirectory);
+        return queueMap.computeIfAbsent(store, s -> createQueue(s.toString(), defaultLimit));
+    }
+
+    private ProbeQueue createQueue(String name, int limit) {
+        ProbeQueue queue;
+        if (adaptive) {
+            int maxLimit = adaptiveMaxLimit != null ? adaptiveMaxLimit : 4 * limit;
+            queue = new ProbeQueue(name, new AdaptiveLimit(limit, maxLimit, adaptiveMaxLoad), executor);
+        } else {
+            queue = new ProbeQueue(name, limit, executor);
+        }
+        queue.setOrder(order);
+        queue.setDeadline(deadline);
+        return queue;
+    }
+
+    public void setOrder(ProbeOrder order) {
+        this.order = Objects.requireNonNull(order);
+    }
+
+    /**
+     * Probes that did not start until the deadline are skipped, {@code null} for no deadline.
+     */
+    public void setDeadline(Instant deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Lets every queue adapt its limit to the observed probe latency, starting from the configured limit.
+     *
+     * @param maxLimit upper bound of the limit, {@code null} for four times the configured limit
+     * @param maxLoad maximum system load average per processor, {@code null} to ignore the system load
+     */
+    public void setAdaptive(Integer maxLimit, Double maxLoad) {
+        this.adaptive = true;
+        this.adaptiveMaxLimit = maxLimit;
+        this.adaptiveMaxLoad = maxLoad;
+    }
+
+    public Prober getProber() {
+        return prober;
+    }
+
+    public Collection<ProbeQueue> getQueues() {
+        return queueMap.values();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -18,11 +18,12 @@ import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.RecursiveTask;
 
 public class Result {
     public enum ResultState {
-        NEW, UPDATED, UNCHANGED, EXCEPTION, OLD_FILE;
+        NEW, UPDATED, UNCHANGED, EXCEPTION, OLD_FILE, SKIPPED, NON_MEDIA;
 
         public Result getResult() {
             return Result.of(this);
@@ -65,6 +66,19 @@ public class Result {
         return of(list);
     }
 
+    public static Result ofFutures(Collection<CompletableFuture<Result>> futureCollection) {
+        List<Result> list = new LinkedList<>();
+        if (futureCollection != null) {
+            for (CompletableFuture<Result> f : futureCollection) {
+                Result result = f.join();
+                if (result != null) {
+                    list.add(result);
+                }
+            }
+        }
+        return of(list);
+    }
+
     private final long[] stateCounterArray;
 
     private Result(long[] stateCounterArray) {
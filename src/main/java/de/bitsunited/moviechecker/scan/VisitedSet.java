@@ -0,0 +1,93 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.scan;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the directories and files a scan has seen by their file key (device and inode), so symlink loops end and
+ * directories or files reachable over several paths, e.g. overlapping scan roots or bind mounts, are scanned once.
+ * Without file keys the real path is used.
+ */
+public class VisitedSet {
+
+    private final Set<Object> directorySet = ConcurrentHashMap.newKeySet();
+
+    private final Set<Object> fileSet = ConcurrentHashMap.newKeySet();
+
+    // The paths under which files were seen, only if they are recorded
+    private final Set<Path> pathSet;
+
+    public VisitedSet() {
+        this(false);
+    }
+
+    /**
+     * Creates a set that optionally also records every path under which a file was seen, including the paths of files
+     * seen before.
+     */
+    public VisitedSet(boolean recordPaths) {
+        this.pathSet = recordPaths ? ConcurrentHashMap.newKeySet() : null;
+    }
+
+    /**
+     * Returns true if the directory was not visited before.
+     */
+    public boolean visitDirectory(Path directory) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(directory, BasicFileAttributes.class);
+        return directorySet.add(getKey(directory, attributes));
+    }
+
+    /**
+     * Returns true if the file was not visited before under this or another path.
+     */
+    public boolean visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+        if (pathSet != null) {
+            pathSet.add(file.toAbsolutePath());
+        }
+        return fileSet.add(getKey(file, attributes));
+    }
+
+    /**
+     * Returns true if a file was seen under the path. Paths are only known if they are recorded.
+     */
+    public boolean isVisitedPath(Path file) {
+        return pathSet != null && pathSet.contains(file.toAbsolutePath());
+    }
+
+    public void clearPaths() {
+        if (pathSet != null) {
+            pathSet.clear();
+        }
+    }
+
+    public int getDirectoryCount() {
+        return directorySet.size();
+    }
+
+    public int getFileCount() {
+        return fileSet.size();
+    }
+
+    private static Object getKey(Path path, BasicFileAttributes attributes) throws IOException {
+        Object fileKey = attributes.fileKey();
+        return fileKey != null ? fileKey : path.toRealPath();
+    }
+}
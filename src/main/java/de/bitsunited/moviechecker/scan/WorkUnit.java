@@ -0,0 +1,107 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.scan;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import de.bitsunited.moviechecker.Database;
+
+/**
+ * Part of a scan that can be claimed by a single worker: either the files directly inside a directory or a whole
+ * directory tree.
+ */
+public class WorkUnit {
+
+    private final Path directory;
+
+    private final boolean recursive;
+
+    public WorkUnit(Path directory, boolean recursive) {
+        this.directory = Objects.requireNonNull(directory).toAbsolutePath();
+        this.recursive = recursive;
+    }
+
+    /**
+     * Splits a scan directory into the files of the directory itself and one recursive unit per sub directory.
+     */
+    public static List<WorkUnit> of(Path directory) throws IOException {
+        List<WorkUnit> list = new ArrayList<>();
+        list.add(new WorkUnit(directory, false));
+
+        try (Stream<Path> stream = Files.list(directory)) {
+            List<Path> subDirectories = stream.filter(f -> Files.isDirectory(f)).collect(Collectors.toList());
+            Collections.sort(subDirectories);
+            subDirectories.forEach(d -> list.add(new WorkUnit(d, true)));
+        }
+        return list;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public boolean isRecursive() {
+        return recursive;
+    }
+
+    public boolean contains(Path path) {
+        if (recursive) {
+            return path.startsWith(directory) && !path.equals(directory);
+        }
+        return directory.equals(path.getParent());
+    }
+
+    public RecursiveTask<Result> createTask(Database database, ProbeScheduler scheduler) {
+        return createTask(database, scheduler, new VisitedSet());
+    }
+
+    public RecursiveTask<Result> createTask(Database database, ProbeScheduler scheduler, VisitedSet visited) {
+        if (recursive) {
+            return new FolderWalker(directory, database, scheduler, visited);
+        }
+        return new FileWalker(directory, database, scheduler, visited);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(directory, recursive);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        WorkUnit other = (WorkUnit) obj;
+        return recursive == other.recursive && directory.equals(other.directory);
+    }
+
+    @Override
+    public String toString() {
+        return directory + (recursive ? "" : " (files)");
+    }
+}
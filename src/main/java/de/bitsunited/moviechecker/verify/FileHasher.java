@@ -0,0 +1,82 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.verify;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes the SHA-256 digest of a file with large sequential reads into a direct buffer.
+ */
+public class FileHasher {
+
+    public static final int BUFFER_SIZE = 8 << 20;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final ByteBuffer buffer;
+    private final MessageDigest messageDigest;
+
+    public FileHasher() {
+        this(BUFFER_SIZE);
+    }
+
+    public FileHasher(int bufferSize) {
+        buffer = ByteBuffer.allocateDirect(bufferSize);
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the digest as lower case hex string. The limit, if not null, is charged for every block before it is read.
+     */
+    public String digest(Path path, ThroughputLimit limit) throws IOException, InterruptedException {
+        messageDigest.reset();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long remaining = channel.size();
+            while (true) {
+                if (limit != null) {
+                    limit.acquire(Math.min(remaining, buffer.capacity()));
+                }
+                buffer.clear();
+                int read = channel.read(buffer);
+                if (read < 0) {
+                    break;
+                }
+                remaining -= read;
+                buffer.flip();
+                messageDigest.update(buffer);
+            }
+        }
+        return toHex(messageDigest.digest());
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0x0f];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0x0f];
+        }
+        return new String(chars);
+    }
+}
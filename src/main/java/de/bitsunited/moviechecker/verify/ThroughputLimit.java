@@ -0,0 +1,59 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.verify;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the read rate of all threads sharing it. Every caller reserves the next free time slot for its bytes and
+ * sleeps until its slot starts.
+ */
+public class ThroughputLimit {
+
+    private final long bytesPerSecond;
+
+    private long nextNanos;
+
+    public ThroughputLimit(long bytesPerSecond) {
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("Throughput must be positive: " + bytesPerSecond);
+        }
+        this.bytesPerSecond = bytesPerSecond;
+        this.nextNanos = System.nanoTime();
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public void acquire(long bytes) throws InterruptedException {
+        long waitNanos = reserve(bytes, System.nanoTime());
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Reserves the slot for the bytes and returns the nanos to wait until it starts.
+     */
+    synchronized long reserve(long bytes, long nowNanos) {
+        if (nextNanos < nowNanos) {
+            nextNanos = nowNanos;
+        }
+        long waitNanos = nextNanos - nowNanos;
+        nextNanos += (long) (bytes * 1e9 / bytesPerSecond);
+        return waitNanos;
+    }
+}
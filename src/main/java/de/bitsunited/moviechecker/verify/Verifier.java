@@ -0,0 +1,314 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.verify;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.bitsunited.moviechecker.Database;
+
+/**
+ * Hashes the files of the database and compares the digests with the ones recorded before. A file whose content
+ * changed while its modification time did not is reported as mismatch, its recorded digest is kept.
+ * <p>
+ * Files on the same device are read by at most {@code deviceThreads} threads and optionally share a throughput
+ * limit, so a disk is read sequentially while several disks are read in parallel.
+ */
+public class Verifier {
+
+    public static final int DEFAULT_DEVICE_THREADS = 1;
+
+    private static final Duration SAVE_INTERVAL = Duration.ofMinutes(1);
+
+    private static final int MAX_READ_ATTEMPTS = 3;
+
+    public enum Status {
+        /** No digest was recorded before. */
+        HASHED,
+        /** The digest matches. */
+        OK,
+        /**
+         * The file was modified since the digest was recorded, the new digest is recorded. A file that kept changing
+         * while it was read is reported without recording a digest.
+         */
+        CHANGED,
+        /** The content differs although the modification time is unchanged. */
+        MISMATCH,
+        MISSING,
+        FAILED
+    }
+
+    public static class Outcome {
+        private final Path path;
+        private final Status status;
+        private final long size;
+        private final String message;
+
+        public Outcome(Path path, Status status, long size, String message) {
+            this.path = path;
+            this.status = status;
+            this.size = size;
+            this.message = message;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    private static class Device {
+        private final ThroughputLimit limit;
+
+        public Device(ThroughputLimit limit) {
+            this.limit = limit;
+        }
+    }
+
+    /**
+     * Hands out the files of a run with a queue per device. A thread takes the next file of a device with a free reader
+     * and only waits if all devices with files left are busy, so no pool thread blocks on one disk while another is
+     * idle.
+     */
+    private static class Dispatcher {
+        private final int deviceThreads;
+        private final AtomicReference<IOException> failure;
+
+        // Devices with files left, taken round robin
+        private final Map<Device, Deque<Integer>> queueMap = new LinkedHashMap<>();
+        private final Map<Device, Integer> readerMap = new HashMap<>();
+
+        public Dispatcher(int deviceThreads, AtomicReference<IOException> failure) {
+            this.deviceThreads = deviceThreads;
+            this.failure = failure;
+        }
+
+        public synchronized void add(Device device, int index) {
+            queueMap.computeIfAbsent(device, d -> new ArrayDeque<>()).add(index);
+        }
+
+        /**
+         * Returns the index of the next file and takes a reader of its device, or null if no file is left.
+         */
+        public synchronized Integer next() throws InterruptedException {
+            while (failure.get() == null && !queueMap.isEmpty()) {
+                for (Map.Entry<Device, Deque<Integer>> entry : queueMap.entrySet()) {
+                    Device device = entry.getKey();
+                    int readers = readerMap.getOrDefault(device, 0);
+                    if (readers < deviceThreads) {
+                        Deque<Integer> queue = entry.getValue();
+                        Integer index = queue.poll();
+                        queueMap.remove(device);
+                        if (!queue.isEmpty()) {
+                            queueMap.put(device, queue);
+                        }
+                        readerMap.put(device, readers + 1);
+                        return index;
+                    }
+                }
+                wait();
+            }
+            return null;
+        }
+
+        public synchronized void done(Device device) {
+            readerMap.merge(device, -1, Integer::sum);
+            notifyAll();
+        }
+    }
+
+    private final Database database;
+    private final int threads;
+    private final int deviceThreads;
+    private final Long deviceBytesPerSecond;
+
+    private final Map<FileStore, Device> deviceMap = new ConcurrentHashMap<>();
+    private final ThreadLocal<FileHasher> hasher = ThreadLocal.withInitial(FileHasher::new);
+    private Instant lastSave;
+
+    /**
+     * @param deviceBytesPerSecond
+     *            the read limit per device, unlimited if null
+     */
+    public Verifier(Database database, int threads, int deviceThreads, Long deviceBytesPerSecond) {
+        this.database = database;
+        this.threads = threads;
+        this.deviceThreads = deviceThreads;
+        this.deviceBytesPerSecond = deviceBytesPerSecond;
+    }
+
+    /**
+     * Verifies the files and returns the outcomes in the order of the list. The database is saved periodically if
+     * auto save is off.
+     */
+    public List<Outcome> verify(List<Path> pathList) throws IOException {
+        Outcome[] outcomes = new Outcome[pathList.size()];
+        Device[] devices = new Device[pathList.size()];
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        Dispatcher dispatcher = new Dispatcher(deviceThreads, failure);
+        for (int i = 0; i < devices.length; i++) {
+            Path path = pathList.get(i);
+            try {
+                devices[i] = getDevice(path);
+                dispatcher.add(devices[i], i);
+            } catch (NoSuchFileException e) {
+                outcomes[i] = new Outcome(path, Status.MISSING, 0, null);
+            } catch (IOException e) {
+                outcomes[i] = new Outcome(path, Status.FAILED, 0, e.toString());
+            }
+        }
+        lastSave = Instant.now();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> futureList = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                futureList.add(executor.submit(() -> {
+                    Integer index;
+                    while ((index = dispatcher.next()) != null) {
+                        try {
+                            outcomes[index] = verify(pathList.get(index), devices[index]);
+                        } finally {
+                            dispatcher.done(devices[index]);
+                        }
+                        saveIfDue();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futureList) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        failure.compareAndSet(null, (IOException) e.getCause());
+                    } else {
+                        throw new RuntimeException(e.getCause());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        if (!database.isAutoSave()) {
+            database.save();
+        }
+
+        List<Outcome> outcomeList = new ArrayList<>(outcomes.length);
+        Collections.addAll(outcomeList, outcomes);
+        return outcomeList;
+    }
+
+    private Outcome verify(Path path, Device device) throws InterruptedException {
+        BasicFileAttributes attributes = null;
+        String digest = null;
+        // A file written while it is hashed would look like a damaged one, the digest only counts if the file did not
+        // change during the read
+        for (int attempt = 0; digest == null; attempt++) {
+            if (attempt == MAX_READ_ATTEMPTS) {
+                return new Outcome(path, Status.CHANGED, attributes.size(), "modified while reading, not recorded");
+            }
+            try {
+                attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                digest = hasher.get().digest(path, device.limit);
+                BasicFileAttributes afterAttributes = Files.readAttributes(path, BasicFileAttributes.class);
+                if (!afterAttributes.lastModifiedTime().equals(attributes.lastModifiedTime()) || afterAttributes.size() != attributes.size()) {
+                    digest = null;
+                }
+            } catch (NoSuchFileException e) {
+                return new Outcome(path, Status.MISSING, 0, null);
+            } catch (IOException e) {
+                return new Outcome(path, Status.FAILED, attributes != null ? attributes.size() : 0, e.toString());
+            }
+        }
+        Instant fileTime = attributes.lastModifiedTime().toInstant();
+
+        String recordedDigest = database.getEntryDigest(path);
+        Instant recordedTime = database.getEntryDigestTime(path);
+        if (recordedDigest == null) {
+            database.setEntryDigest(path, digest, fileTime);
+            return new Outcome(path, Status.HASHED, attributes.size(), null);
+        }
+        if (recordedDigest.equals(digest)) {
+            if (!fileTime.equals(recordedTime)) {
+                database.setEntryDigest(path, digest, fileTime);
+            }
+            return new Outcome(path, Status.OK, attributes.size(), null);
+        }
+        // A different size with the same modification time was written by a tool that keeps the time, not damaged
+        Long recordedSize = database.getEntrySize(path);
+        if (fileTime.equals(recordedTime) && (recordedSize == null || recordedSize == attributes.size())) {
+            return new Outcome(path, Status.MISMATCH, attributes.size(), "recorded " + recordedDigest + ", read " + digest);
+        }
+        database.setEntryDigest(path, digest, fileTime);
+        return new Outcome(path, Status.CHANGED, attributes.size(), null);
+    }
+
+    private Device getDevice(Path path) throws IOException {
+        FileStore store = Files.getFileStore(path);
+        return deviceMap.computeIfAbsent(store, s -> new Device(deviceBytesPerSecond != null ? new ThroughputLimit(deviceBytesPerSecond) : null));
+    }
+
+    private void saveIfDue() throws IOException {
+        if (database.isAutoSave()) {
+            return;
+        }
+        synchronized (this) {
+            Instant now = Instant.now();
+            if (Duration.between(lastSave, now).compareTo(SAVE_INTERVAL) < 0) {
+                return;
+            }
+            lastSave = now;
+        }
+        database.save();
+    }
+}
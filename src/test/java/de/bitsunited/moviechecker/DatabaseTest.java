@@ -21,15 +21,19 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.FileTime;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.Before;
@@ -55,6 +59,7 @@ public class DatabaseTest {
         if (!Files.isDirectory(directory)) {
             Files.createDirectories(directory);
         }
+        Files.deleteIfExists(PERSISTENCE_PATH);
 
         this.testee = new Database(PERSISTENCE_PATH, null);
     }
@@ -147,6 +152,29 @@ public class DatabaseTest {
         assertNull(testee.getEntryErrOut(P1));
     }
 
+    @Test
+    public void testAddAndRemoveEntries() throws IOException {
+        Database source = new Database(PERSISTENCE_PATH, null);
+        source.addEntry(P1, T1, "Std Out 1", "Err Out 1");
+        source.addEntry(P2, T2, "Std Out 2", "Err Out 2");
+
+        testee.addEntries(source, p -> p.equals(P2));
+        assertFalse(testee.containsEntry(P1));
+        assertEquals(T2, testee.getEntryTime(P2));
+        assertTrue(testee.isDirty());
+
+        testee.save();
+        testee.addEntries(source, p -> p.equals(P2));
+        assertFalse(testee.isDirty());
+
+        testee.removeEntries(p -> p.equals(P1));
+        assertFalse(testee.isDirty());
+
+        testee.removeEntries(p -> p.equals(P2));
+        assertTrue(testee.isDirty());
+        assertTrue(testee.getPathList().isEmpty());
+    }
+
     @Test
     public void testRemoveNotExistingEntry() {
         testee.removeEntry(P1);
@@ -163,6 +191,104 @@ public class DatabaseTest {
         testee.load();
     }
 
+    @Test
+    public void testLoadFlatFormat() throws IOException {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><database version=\"3\">" + "<entry path=\"" + P1.toUri()
+                + "\" time=\"" + T1 + "\" size=\"4711\" stdout=\"Std Out 1\" errout=\"Err Out 1\"></entry>" + "<entry path=\"" + P2.toUri()
+                + "\" time=\"" + T2 + "\" stdout=\"Std Out 2\" errout=\"Err Out 2\"></entry></database>";
+        Files.write(PERSISTENCE_PATH, xml.getBytes(StandardCharsets.UTF_8));
+
+        testee.load();
+        assertEquals(3, testee.getVersion());
+        assertEquals(T1, testee.getEntryTime(P1));
+        assertEquals(Long.valueOf(4711), testee.getEntrySize(P1));
+        assertEquals("Err Out 2", testee.getEntryErrOut(P2));
+
+        // Saved nested, every directory name once
+        testee.addEntry(P2, T1, "Std Out 2", "Err Out 2");
+        testee.save();
+        String content = new String(Files.readAllBytes(PERSISTENCE_PATH), StandardCharsets.UTF_8);
+        assertFalse(content.contains("path="));
+        assertEquals(1, content.split("name=\"tmp\"", -1).length - 1);
+
+        Database database = new Database(PERSISTENCE_PATH, null);
+        database.load();
+        assertEquals(Arrays.asList(P1, P2), database.getPathList());
+        assertEquals(T1, database.getEntryTime(P2));
+    }
+
+    @Test
+    public void testSubtree() {
+        Path directory = Paths.get("/movies/a");
+        Path[] paths = { Paths.get("/movies/ab"), Paths.get("/movies/a b/x"), Paths.get("/movies/a/y/z"), Paths.get("/movies/a/x"), directory };
+        for (Path path : paths) {
+            testee.addEntry(path, T1, "", "");
+        }
+
+        List<Path> pathList = testee.getPathList();
+        assertEquals(Arrays.asList(directory, Paths.get("/movies/a/x"), Paths.get("/movies/a/y/z"), Paths.get("/movies/a b/x"),
+                Paths.get("/movies/ab")), pathList);
+
+        List<Database.Entry> entryList = testee.entriesUnder(directory);
+        assertEquals(2, entryList.size());
+        assertEquals(Paths.get("/movies/a/x"), entryList.get(0).getPath());
+        assertEquals(Paths.get("/movies/a/y/z"), entryList.get(1).getPath());
+        assertEquals(2, testee.countUnder(directory));
+        assertEquals(0, testee.countUnder(Paths.get("/movies/a/x")));
+
+        assertEquals(1, testee.removeEntries(directory, p -> p.getNameCount() > 3));
+        assertEquals(1, testee.removeUnder(directory));
+        assertEquals(0, testee.countUnder(directory));
+        assertEquals(3, testee.getPathList().size());
+    }
+
+    @Test
+    public void testForEachEntry() {
+        // More entries than one chunk, each chunk ends within a directory and its subdirectory
+        for (int i = 0; i < 1500; i++) {
+            testee.addEntry(Paths.get("/movies/" + (i % 3 == 0 ? "a" : "a.b"), i % 2 == 0 ? "x" : "x/y", i + ".mkv"), T1, "", "");
+        }
+
+        List<Path> pathList = new ArrayList<>();
+        testee.forEachEntry(e -> pathList.add(e.getPath()));
+        assertEquals(testee.getPathList(), pathList);
+    }
+
+    @Test
+    public void testDirectoryStats() throws IOException {
+        Path p3 = P1.resolveSibling("show/3.file");
+        String h264 = "Input #0, matroska,webm, from 'x':\n  Duration: 00:10:00.00, start: 0.000000, bitrate: N/A\n"
+                + "    Stream #0:0: Video: h264, 1280x720";
+        testee.addEntry(P1, T1, 100L, null, "", h264);
+        testee.addEntry(P2, T1, 200L, null, "", "Err Out 2");
+        testee.addEntry(p3, T1, 400L, null, "", h264);
+
+        DirectoryStats stats = testee.getDirectoryStats(P1.getParent());
+        assertEquals(3, stats.getFileCount());
+        assertEquals(700, stats.getTotalSize());
+        assertEquals(Duration.ofMinutes(20), stats.getTotalDuration());
+        assertEquals(500, stats.getCodecSize("h264"));
+        assertEquals(200, stats.getCodecSize(DirectoryStats.UNKNOWN_CODEC));
+        assertEquals(3, testee.getStats().getFileCount());
+        assertEquals(1, testee.getSubdirectoryList(P1.getParent()).size());
+
+        testee.addEntry(p3, T2, 300L, null, "", "Err Out 3");
+        testee.removeEntry(P1);
+        stats = testee.getDirectoryStats(P1.getParent());
+        assertEquals(2, stats.getFileCount());
+        assertEquals(500, stats.getTotalSize());
+        assertEquals(0, stats.getCodecCount("h264"));
+        assertEquals(300, testee.getDirectoryStats(p3.getParent()).getTotalSize());
+
+        testee.removeEntry(p3);
+        assertNull(testee.getDirectoryStats(p3.getParent()));
+
+        testee.save();
+        Database database = new Database(PERSISTENCE_PATH, null);
+        database.load();
+        assertEquals(200, database.getDirectoryStats(P1.getParent()).getTotalSize());
+    }
+
     @Test
     public void testSaveAndLoad() throws IOException {
         testee.addEntry(P1, T1, "Std Out 1", "Err Out 1");
@@ -191,6 +317,159 @@ public class DatabaseTest {
         assertNull(testee.getEntryErrOut(P2));
     }
 
+    @Test
+    public void testSaveAndLoadAttributes() throws IOException {
+        testee.addEntry(P1, T1, 4711L, "(dev=801,ino=42)", "Std Out 1", "Err Out 1");
+        testee.addEntry(P2, T2, "Std Out 2", "Err Out 2");
+
+        assertEquals(Long.valueOf(4711L), testee.getEntrySize(P1));
+        assertEquals("(dev=801,ino=42)", testee.getEntryFileKey(P1));
+
+        testee.save();
+
+        testee = new Database(PERSISTENCE_PATH, null);
+        testee.load();
+
+        assertEquals(T1, testee.getEntryTime(P1));
+        assertEquals(Long.valueOf(4711L), testee.getEntrySize(P1));
+        assertEquals("(dev=801,ino=42)", testee.getEntryFileKey(P1));
+
+        assertEquals(T2, testee.getEntryTime(P2));
+        assertNull(testee.getEntrySize(P2));
+        assertNull(testee.getEntryFileKey(P2));
+    }
+
+    @Test
+    public void testUpdateAttributes() throws IOException {
+        testee.addEntry(P1, T1, "Std Out 1", "Err Out 1");
+        testee.save();
+
+        testee.addEntry(P1, T1, 4711L, null, "Std Out 1", "Err Out 1");
+        assertTrue(testee.isDirty());
+        assertEquals(Long.valueOf(4711L), testee.getEntrySize(P1));
+    }
+
+    @Test
+    public void testSaveAndLoadDigest() throws IOException {
+        testee.addEntry(P1, T1, 4711L, null, "Std Out 1", "Err Out 1");
+        testee.setEntryDigest(P1, "abc123", T1);
+        testee.setEntryDigest(P2, "def456", T2);
+        assertNull(testee.getEntryDigest(P2));
+
+        // A rescan keeps the digest
+        testee.addEntry(P1, T2, 4711L, null, "Std Out 1", "Err Out 1");
+        testee.save();
+
+        testee = new Database(PERSISTENCE_PATH, null);
+        testee.load();
+
+        assertEquals("abc123", testee.getEntryDigest(P1));
+        assertEquals(T1, testee.getEntryDigestTime(P1));
+        assertEquals(T2, testee.getEntryTime(P1));
+    }
+
+    @Test
+    public void testNonMedia() throws IOException {
+        testee.addEntry(P1, T1, 12L, null, "", "P1: Invalid data found when processing input");
+        testee.addNonMedia(P1, T1, 12L);
+        testee.addNonMedia(P2, T2, 34L);
+
+        assertFalse(testee.containsEntry(P1));
+        assertTrue(testee.getPathList().isEmpty());
+        assertTrue(testee.isNonMedia(P1, T1, 12L));
+        assertFalse(testee.isNonMedia(P1, T2, 12L));
+        assertFalse(testee.isNonMedia(P1, T1, 13L));
+
+        testee.save();
+        testee = new Database(PERSISTENCE_PATH, null);
+        testee.load();
+
+        assertEquals(2, testee.getNonMediaCount());
+        assertTrue(testee.isNonMedia(P2, T2, 34L));
+
+        // A file that turns out to be media loses its record
+        testee.addEntry(P2, T2, 34L, null, "", "Input #0");
+        assertFalse(testee.containsNonMedia(P2));
+        assertEquals(1, testee.removeNonMedia(null, p -> true));
+        assertEquals(0, testee.getNonMediaCount());
+    }
+
+    @Test
+    public void testConcurrentSave() throws IOException {
+        testee.addEntry(P1, T1, "Std Out 1", "Err Out 1");
+        testee.save();
+        assertEquals(1, testee.getVersion());
+
+        Database other = new Database(PERSISTENCE_PATH, null);
+        other.load();
+
+        testee.addEntry(P2, T2, "Std Out 2", "Err Out 2");
+        testee.save();
+        assertEquals(2, testee.getVersion());
+
+        other.removeEntry(P1);
+        other.save();
+        assertEquals(3, other.getVersion());
+
+        // The second writer keeps the entry written by the first one
+        assertFalse(other.containsEntry(P1));
+        assertTrue(other.containsEntry(P2));
+
+        Database reader = new Database(PERSISTENCE_PATH, null);
+        reader.load();
+        assertEquals(3, reader.getVersion());
+        assertFalse(reader.containsEntry(P1));
+        assertEquals(T2, reader.getEntryTime(P2));
+    }
+
+    @Test
+    public void testShards() throws IOException {
+        Path a = Paths.get("target/tmp/a").toAbsolutePath();
+        Path b = Paths.get("target/tmp/b").toAbsolutePath();
+        Path pa = a.resolve("x/1.file");
+        Path pb = b.resolve("2.file");
+        Path pb2 = b.resolve("3.file");
+
+        testee.addEntry(pa, T1, "Std Out 1", "Err Out 1");
+        testee.addEntry(pb, T1, "Std Out 2", "Err Out 2");
+        testee.setShardScheme(ShardScheme.byDepth(a.getNameCount()));
+        testee.save();
+        assertEquals(2, testee.getShardCount());
+        assertTrue(Files.isDirectory(Paths.get("target/tmp/db.xml.shards")));
+
+        // Only the shard of the directory is read
+        Database scoped = new Database(PERSISTENCE_PATH, null);
+        scoped.load(Arrays.asList(a));
+        assertTrue(scoped.isPartial());
+        assertTrue(scoped.containsEntry(pa));
+        assertFalse(scoped.containsEntry(pb));
+
+        testee.addEntry(pb, T2, "Std Out 2", "Err Out 2");
+        testee.save();
+
+        // The shard that was not loaded is read before the change goes on top
+        scoped.addEntry(pb2, T1, "Std Out 3", "Err Out 3");
+        scoped.save();
+        assertEquals(3, scoped.getVersion());
+
+        Database reader = new Database(PERSISTENCE_PATH, null);
+        reader.load();
+        assertFalse(reader.isPartial());
+        assertEquals(3, reader.getPathList().size());
+        assertEquals(T2, reader.getEntryTime(pb));
+        assertEquals(ShardScheme.byDepth(a.getNameCount()), reader.getShardScheme());
+
+        reader.setShardScheme(null);
+        reader.save();
+        assertEquals(0, reader.getShardCount());
+        assertFalse(Files.exists(Paths.get("target/tmp/db.xml.shards")));
+
+        testee = new Database(PERSISTENCE_PATH, null);
+        testee.load(Arrays.asList(a));
+        assertFalse(testee.isPartial());
+        assertEquals(3, testee.getPathList().size());
+    }
+
     @Test
     public void testSaveAgain() throws IOException, InterruptedException {
         testee.addEntry(P1, T1, "Std Out 1", "Err Out 1");
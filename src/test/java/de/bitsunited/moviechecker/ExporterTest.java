@@ -0,0 +1,116 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.bitsunited.moviechecker.probe.MediaInfo;
+
+public class ExporterTest {
+
+    private static final Path PERSISTENCE_PATH = Paths.get("target/tmp/export.xml");
+
+    private static final Path P1 = Paths.get("/movies/a,b.mkv");
+
+    private static final Path P2 = Paths.get("/movies/c.avi");
+
+    private static final Instant T1 = Instant.parse("2016-10-26T11:03:46Z");
+
+    private static final String ERR_OUT = "Input #0, matroska,webm, from '/movies/a,b.mkv':\n"
+            + "  Duration: 01:30:05.50, start: 0.000000, bitrate: 4500 kb/s\n"
+            + "    Stream #0:0(eng): Video: h264 (High), yuv420p(progressive), 1920x1080 [SAR 1:1 DAR 16:9], 25 fps\n"
+            + "    Stream #0:1(ger): Audio: ac3, 48000 Hz, 5.1(side), fltp, 448 kb/s (default)\n"
+            + "    Stream #0:2(eng): Audio: aac (LC), 44100 Hz, stereo, fltp\n" + "    Stream #0:3(ger): Subtitle: subrip\n";
+
+    private Database database;
+
+    @Before
+    public void setup() throws IOException {
+        Files.createDirectories(PERSISTENCE_PATH.getParent());
+        Files.deleteIfExists(PERSISTENCE_PATH);
+
+        database = new Database(PERSISTENCE_PATH, null);
+        database.setAutoSave(false);
+        database.addEntry(P2, T1, null, null, "", "/movies/c.avi: Invalid data found when processing input\n");
+        database.addEntry(P1, T1, 1234L, null, "", ERR_OUT);
+    }
+
+    @Test
+    public void testParse() {
+        MediaInfo info = MediaInfo.parse(ERR_OUT);
+        assertEquals("matroska,webm", info.getContainer());
+        assertEquals(Duration.ofSeconds(5405, 500_000_000), info.getDuration());
+        assertEquals(Long.valueOf(4_500_000), info.getBitrate());
+        assertEquals(4, info.getStreamList().size());
+        assertEquals("h264", info.getVideoStream().getCodec());
+        assertEquals(1920, info.getVideoStream().getWidth());
+        assertEquals(6, info.getStreamList().get(1).getChannels());
+        assertEquals(2, info.getStreamList().get(2).getChannels());
+        assertEquals("ger", info.getStreamList().get(3).getLanguage());
+
+        // Reloaded databases have the line breaks normalized to spaces
+        MediaInfo normalized = MediaInfo.parse(ERR_OUT.replace('\n', ' '));
+        assertEquals(info.getDuration(), normalized.getDuration());
+        assertEquals(4, normalized.getStreamList().size());
+        assertEquals(1080, normalized.getVideoStream().getHeight());
+        assertEquals(6, normalized.getStreamList().get(1).getChannels());
+        assertEquals(0, normalized.getStreamList().get(2).getWidth());
+
+        MediaInfo copy = MediaInfo.parse(info.toFfprobeOutput(P1));
+        assertEquals(info.getDuration(), copy.getDuration());
+        assertEquals(info.getStreamList().size(), copy.getStreamList().size());
+
+        assertNull(MediaInfo.parse("/movies/c.avi: Invalid data found when processing input"));
+    }
+
+    @Test
+    public void testCsv() throws IOException {
+        StringWriter writer = new StringWriter();
+        assertEquals(2, new Exporter(Exporter.Format.CSV, writer).export(database));
+
+        String[] lines = writer.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("path,size,time,container,duration,bitrate,video_codec,width,height,audio_codecs,audio_languages,subtitle_languages",
+                lines[0]);
+        assertEquals("\"/movies/a,b.mkv\",1234,2016-10-26T11:03:46Z,\"matroska,webm\",5405.5,4500000,h264,1920,1080,ac3|aac,ger|eng,ger",
+                lines[1]);
+        assertEquals("/movies/c.avi,,2016-10-26T11:03:46Z,,,,,,,,,", lines[2]);
+    }
+
+    @Test
+    public void testJsonLines() throws IOException {
+        StringWriter writer = new StringWriter();
+        new Exporter(Exporter.Format.JSONL, writer).export(database);
+
+        String[] lines = writer.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("{\"path\":\"/movies/a,b.mkv\",\"size\":1234,\"time\":\"2016-10-26T11:03:46Z\",\"container\":\"matroska,webm\","
+                + "\"duration\":5405.5,\"bitrate\":4500000,\"video_codec\":\"h264\",\"width\":1920,\"height\":1080,"
+                + "\"audio_codecs\":[\"ac3\",\"aac\"],\"audio_languages\":[\"ger\",\"eng\"],\"subtitle_languages\":[\"ger\"]}", lines[0]);
+        assertEquals("{\"path\":\"/movies/c.avi\",\"time\":\"2016-10-26T11:03:46Z\"}", lines[1]);
+    }
+}
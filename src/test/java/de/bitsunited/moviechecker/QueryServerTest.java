@@ -0,0 +1,61 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.time.Instant;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueryServerTest {
+
+    private QueryServer testee;
+
+    @Before
+    public void setup() throws IOException {
+        Database database = new Database(Paths.get("target/tmp/query.xml"), null);
+        database.addEntry(Paths.get("target/tmp/1.mkv").toAbsolutePath(), Instant.now(), 20000L, null, "", "Stream #0:0: Video: h264, yuv420p");
+        database.addEntry(Paths.get("target/tmp/2.mkv").toAbsolutePath(), Instant.now(), 30000L, null, "", "Stream #0:0: Video: hevc, yuv420p");
+
+        testee = new QueryServer(database, 0);
+        testee.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        testee.stop();
+    }
+
+    @Test
+    public void testQuery() throws IOException {
+        assertEquals(Paths.get("target/tmp/2.mkv").toAbsolutePath() + " [30 kB]\nFound: 1\n", query("find", "-e", "hevc"));
+        assertEquals("  h264\n  hevc\nFound: 2\n", query("list"));
+        assertEquals("Unknown query: [scan]\n", query("scan"));
+    }
+
+    private String query(String... args) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(outputStream, true, "UTF-8");
+        QueryServer.query(testee.getPort(), args, out);
+        return outputStream.toString("UTF-8").replace(System.lineSeparator(), "\n");
+    }
+}
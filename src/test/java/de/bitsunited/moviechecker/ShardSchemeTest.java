@@ -0,0 +1,72 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+public class ShardSchemeTest {
+
+    private static final Path MOVIES = Paths.get("/media/movies");
+
+    @Test
+    public void testDepth() {
+        ShardScheme scheme = ShardScheme.byDepth(2);
+
+        String key = scheme.getKey(MOVIES.resolve("A/B"));
+        assertEquals(MOVIES.toString(), key);
+        assertEquals(key, scheme.getKey(MOVIES));
+        assertEquals(Paths.get("/media").toString(), scheme.getKey(Paths.get("/media")));
+
+        assertTrue(scheme.covers(key, MOVIES.resolve("A")));
+        assertTrue(scheme.covers(key, Paths.get("/media")));
+        assertFalse(scheme.covers(key, Paths.get("/media/series")));
+
+        // The files directly in a shallow directory are not below its subdirectories
+        String shallowKey = scheme.getKey(Paths.get("/media"));
+        assertTrue(scheme.covers(shallowKey, Paths.get("/")));
+        assertFalse(scheme.covers(shallowKey, MOVIES));
+    }
+
+    @Test
+    public void testHash() {
+        ShardScheme scheme = ShardScheme.byHash(16);
+
+        String key = scheme.getKey(MOVIES.resolve("A"));
+        assertEquals(key, scheme.getKey(MOVIES.resolve("A")));
+        assertTrue(Integer.parseInt(key) < 16);
+        assertTrue(scheme.covers(key, Paths.get("/other")));
+    }
+
+    @Test
+    public void testParse() {
+        assertEquals(ShardScheme.byDepth(3), ShardScheme.parse("depth:3"));
+        assertEquals(ShardScheme.byHash(8), ShardScheme.parse("hash:8"));
+        assertNotEquals(ShardScheme.byDepth(8), ShardScheme.parse("hash:8"));
+        assertEquals("hash:8", ShardScheme.parse("HASH:8").toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseInvalid() {
+        ShardScheme.parse("depth");
+    }
+}
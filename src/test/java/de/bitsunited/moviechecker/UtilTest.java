@@ -21,6 +21,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.Arrays;
 
 import org.junit.Test;
 
@@ -44,6 +45,13 @@ public class UtilTest {
         assertFalse(Util.hasFileExtension(Paths.get("file.mkv").toAbsolutePath(), "mpg"));
     }
 
+    @Test
+    public void testGetFileExtension() {
+        assertEquals("mkv", Util.getFileExtension(Paths.get("file.MKV").toAbsolutePath()));
+        assertEquals("", Util.getFileExtension(Paths.get("file")));
+        assertEquals("", Util.getFileExtension(Paths.get(".DS_Store")));
+    }
+
     @Test
     public void testReplaceFileExtension() {
         assertEquals(Paths.get("file.mkv"), Util.replaceFileExtension(Paths.get("file.mpg"), "mkv"));
@@ -71,4 +79,11 @@ public class UtilTest {
         assertNull(Util.findParameter(args, "-x"));
         assertNull(Util.findParameter(args, "-y"));
     }
+
+    @Test
+    public void testFindParameters() {
+        String[] args = new String[] { "scan", "-s", "/a", "--scan", "/b", "-d", "database.xml", "-s" };
+        assertEquals(Arrays.asList("/a", "/b"), Util.findParameters(args, "-s", "--scan"));
+        assertTrue(Util.findParameters(args, "-x").isEmpty());
+    }
 }
@@ -0,0 +1,47 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.convert;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ChecksumCopyTest {
+
+    private static final Path DIRECTORY = Paths.get("target/tmp/copy");
+
+    @Test
+    public void testCopy() throws IOException {
+        Files.createDirectories(DIRECTORY);
+        Path source = DIRECTORY.resolve("source.mkv");
+        Path target = DIRECTORY.resolve("target.mkv");
+
+        byte[] content = new byte[3 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(content);
+        Files.write(source, content);
+        Files.write(target, new byte[5 * 1024 * 1024]);
+
+        long checksum = ChecksumCopy.copy(source, target);
+        assertArrayEquals(content, Files.readAllBytes(target));
+        assertEquals(ChecksumCopy.checksum(source), checksum);
+    }
+}
@@ -0,0 +1,72 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.convert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ConvertHistoryTest {
+
+    private static final Path HISTORY_PATH = Paths.get("target/tmp/convert-history.tsv");
+
+    @Test
+    public void testAppendAndLoad() throws IOException {
+        Files.createDirectories(HISTORY_PATH.getParent());
+        Files.deleteIfExists(HISTORY_PATH);
+        ConvertHistory testee = new ConvertHistory(HISTORY_PATH);
+        assertNull(testee.getAverageSpeed());
+
+        Path path = Paths.get("/movies/with\ttab.avi");
+        Instant time = Instant.parse("2016-10-26T11:03:46Z");
+        testee.append(new ConvertHistory.Sample(time, path, "mpeg4", 720, 576, 2_000_000L, 700, Duration.ofMinutes(90), "slow", 22,
+                Duration.ofMinutes(45), Duration.ofMinutes(170), 400));
+        testee.append(new ConvertHistory.Sample(time, path, "h264", 0, 0, null, 700, Duration.ofMinutes(30), "veryslow", 20, Duration.ofMinutes(75),
+                null, 400));
+        Files.write(HISTORY_PATH, "2016-10-26T11:03:46Z\tfile:///movies/old.avi\tmpeg4\t1000\t60.0\t30.0\t500\n".getBytes(),
+                StandardOpenOption.APPEND);
+
+        List<ConvertHistory.Sample> list = testee.load();
+        assertEquals(3, list.size());
+        assertEquals(path, list.get(0).getPath());
+        assertEquals(time, list.get(0).getTime());
+        assertEquals("mpeg4", list.get(0).getCodec());
+        assertEquals(576, list.get(0).getHeight());
+        assertEquals(Long.valueOf(2_000_000), list.get(0).getBitrate());
+        assertEquals("slow", list.get(0).getPreset());
+        assertEquals(22, list.get(0).getCrf());
+        assertEquals(Duration.ofMinutes(170), list.get(0).getCpuDuration());
+        assertEquals(2.0, list.get(0).getSpeed(), 0.001);
+        assertEquals(Duration.ofMinutes(75), list.get(1).getEncodeDuration());
+        assertNull(list.get(1).getBitrate());
+        assertNull(list.get(1).getCpuDuration());
+
+        // Records of older versions
+        assertEquals("veryslow", list.get(2).getPreset());
+        assertEquals(20, list.get(2).getCrf());
+        assertEquals(0.5, list.get(2).getSizeRatio(), 0.001);
+        assertEquals(121.0 / 120.5, testee.getAverageSpeed(), 0.001);
+    }
+}
@@ -0,0 +1,73 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.convert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.bitsunited.moviechecker.convert.ConvertPlanner.Action;
+import de.bitsunited.moviechecker.convert.ConvertPlanner.Plan;
+import de.bitsunited.moviechecker.probe.MediaInfo;
+
+public class ConvertPlannerTest {
+
+    private static final Path MKV = Paths.get("/movies/a.mkv");
+
+    private static final Path MP4 = Paths.get("/movies/a.mp4");
+
+    private final ConvertPlanner planner = new ConvertPlanner(ConvertPlanner.DEFAULT_VIDEO_CODECS, ConvertPlanner.DEFAULT_AUDIO_CODECS, "aac");
+
+    private static MediaInfo info(String container, String file, String... streams) {
+        StringBuilder sb = new StringBuilder("Input #0, " + container + ", from '" + file + "':\n");
+        sb.append("  Duration: 01:30:00.00, start: 0.000000, bitrate: 4000 kb/s\n");
+        for (int i = 0; i < streams.length; i++) {
+            sb.append("    Stream #0:").append(i).append(": ").append(streams[i]).append('\n');
+        }
+        return MediaInfo.parse(sb.toString());
+    }
+
+    @Test
+    public void testPlan() {
+        String h264 = "Video: h264 (High), yuv420p, 1920x1080, 25 fps";
+        String ac3 = "Audio: ac3, 48000 Hz, 5.1(side), fltp, 448 kb/s";
+
+        assertEquals(Action.SKIP, planner.plan(MKV, info("matroska,webm", "a.mkv", h264, ac3)).getAction());
+        assertEquals(Action.REMUX, planner.plan(MP4, info("mov,mp4,m4a,3gp,3g2,mj2", "a.mp4", h264, ac3)).getAction());
+        assertEquals(Action.ENCODE, planner.plan(MKV, info("matroska,webm", "a.mkv", "Video: mpeg4 (Simple Profile), yuv420p, 720x400", ac3))
+                .getAction());
+        assertEquals(Action.ENCODE, planner.plan(MKV, null).getAction());
+
+        // Only the second audio stream is transcoded, with a bitrate for its channels
+        Plan plan = planner.plan(MKV, info("matroska,webm", "a.mkv", h264, ac3, "Audio: pcm_s16le, 48000 Hz, stereo, s16, 1536 kb/s"));
+        assertEquals(Action.AUDIO, plan.getAction());
+        List<String> options = plan.getStreamOptions();
+        assertEquals(Arrays.asList("-c:a", "copy", "-c:s", "copy", "-c:a:1", "aac", "-b:a:1", "128k"), options);
+    }
+
+    @Test
+    public void testMp4Subtitles() {
+        Plan plan = planner.plan(MP4, info("mov,mp4,m4a,3gp,3g2,mj2", "a.mp4", "Video: h264 (High), yuv420p, 1280x720",
+                "Audio: aac (LC), 48000 Hz, stereo, fltp", "Subtitle: mov_text (tx3g / 0x67337874)"));
+        assertEquals(Action.REMUX, plan.getAction());
+        assertTrue(plan.getStreamOptions().containsAll(Arrays.asList("-c:s:0", "srt")));
+    }
+}
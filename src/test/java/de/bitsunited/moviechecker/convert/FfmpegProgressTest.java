@@ -0,0 +1,58 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.convert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.Test;
+
+public class FfmpegProgressTest {
+
+    private static final String[] REPORT = { "frame=1200", "fps=48.31", "stream_0_0_q=28.0", "bitrate=2400.5kbits/s", "total_size=15006720",
+            "out_time_us=50000000", "out_time_ms=50000000", "out_time=00:00:50.000000", "dup_frames=0", "drop_frames=0", "speed=2.5x",
+            "progress=continue" };
+
+    @Test
+    public void testUpdate() {
+        FfmpegProgress testee = new FfmpegProgress();
+        assertNull(testee.estimateRemaining(Duration.ofMinutes(1)));
+
+        for (int i = 0; i < REPORT.length - 1; i++) {
+            assertFalse(testee.update(REPORT[i]));
+        }
+        assertTrue(testee.update(REPORT[REPORT.length - 1]));
+        assertFalse(testee.isEnd());
+
+        assertEquals(1200, testee.getFrame());
+        assertEquals(48.31, testee.getFps(), 0.001);
+        assertEquals("2400.5kbits/s", testee.getBitrate());
+        assertEquals(15006720, testee.getTotalSize());
+        assertEquals(Duration.ofSeconds(50), testee.getOutTime());
+        assertEquals(2.5, testee.getSpeed(), 0.001);
+        assertEquals(Duration.ofSeconds(4), testee.estimateRemaining(Duration.ofMinutes(1)));
+
+        testee.update("speed=N/A");
+        testee.update("bitrate=N/A");
+        assertTrue(testee.update("progress=end"));
+        assertTrue(testee.isEnd());
+        assertNull(testee.getBitrate());
+        assertNull(testee.estimateRemaining(Duration.ofMinutes(1)));
+    }
+}
@@ -0,0 +1,74 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.convert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalTime;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+public class LoadGovernorTest {
+
+    private static final LocalTime NOON = LocalTime.of(12, 0);
+
+    @Test
+    public void testComputeAllowed() {
+        LoadGovernor testee = new LoadGovernor(3, 0.5, LocalTime.of(22, 0), LocalTime.of(7, 0));
+        assertTrue(testee.isInWindow(LocalTime.of(23, 30)));
+        assertTrue(testee.isInWindow(LocalTime.of(6, 59)));
+        assertFalse(testee.isInWindow(NOON));
+
+        LocalTime night = LocalTime.of(1, 0);
+        assertEquals(0, testee.computeAllowed(3, 0.1, NOON));
+        assertEquals(3, testee.computeAllowed(3, null, night));
+        assertEquals(2, testee.computeAllowed(3, 0.6, night));
+        assertEquals(0, testee.computeAllowed(0, 0.6, night));
+        assertEquals(2, testee.computeAllowed(2, 0.45, night));
+        assertEquals(3, testee.computeAllowed(2, 0.2, night));
+        assertEquals(3, testee.computeAllowed(3, 0.2, night));
+    }
+
+    @Test
+    public void testSuspendAndResume() throws IOException, InterruptedException {
+        Assume.assumeTrue(Files.isExecutable(Paths.get("/bin/sh")));
+
+        LoadGovernor testee = new LoadGovernor(1, 0.5, null, null);
+        testee.acquire();
+        EncodeProcess process = EncodeProcess.start(new String[] { "sleep", "1" });
+        assertNotNull(process.getPid());
+        testee.attach(process);
+
+        testee.update(0.9, NOON);
+        assertEquals(0, testee.getAllowed());
+        assertTrue(process.isSuspended());
+
+        testee.update(0.1, NOON);
+        assertEquals(1, testee.getAllowed());
+        assertFalse(process.isSuspended());
+        assertTrue(process.getPausedDuration().toNanos() > 0);
+
+        assertEquals(0, process.waitFor());
+        testee.release(process);
+        testee.acquire();
+    }
+}
@@ -0,0 +1,70 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.convert;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.bitsunited.moviechecker.convert.ConvertHistory.Sample;
+
+public class PresetAdvisorTest {
+
+    private static final long GB = 1L << 30;
+
+    private static Sample sample(String preset, long inputSize, long outputSize, Duration cpuDuration) {
+        return new Sample(Instant.now(), Paths.get("/movies/a.avi"), "mpeg4", 720, 576, null, inputSize, Duration.ofHours(1), preset, 20,
+                cpuDuration, cpuDuration, outputSize);
+    }
+
+    @Test
+    public void testSelect() {
+        List<Sample> list = new ArrayList<>();
+        for (int i = 0; i < PresetAdvisor.MIN_SAMPLES; i++) {
+            // slow saves 2 GB in 1 CPU hour, veryslow 2.2 GB in 4 CPU hours
+            list.add(sample("slow", 4 * GB, 2 * GB, Duration.ofHours(1)));
+            list.add(sample("veryslow", 4 * GB, 18 * GB / 10, Duration.ofHours(4)));
+        }
+        List<String> presetList = Arrays.asList("slow", "veryslow");
+
+        PresetAdvisor advisor = new PresetAdvisor(list, presetList, 0.5 * GB, 20);
+        assertEquals("veryslow", advisor.select("mpeg4", 576, 4 * GB, Duration.ofHours(1)));
+
+        advisor = new PresetAdvisor(list, presetList, 1.0 * GB, 20);
+        assertEquals("slow", advisor.select("mpeg4", 576, 4 * GB, Duration.ofHours(1)));
+
+        // Nobody reaches the target, the most efficient is chosen
+        advisor = new PresetAdvisor(list, presetList, 10.0 * GB, 20);
+        assertEquals("slow", advisor.select("h264", 1080, 4 * GB, null));
+
+        // Unknown presets and other crf values are tried first
+        advisor = new PresetAdvisor(list, Arrays.asList("slow", "slower", "veryslow"), 1.0 * GB, 20);
+        assertEquals("slower", advisor.select("mpeg4", 576, 4 * GB, Duration.ofHours(1)));
+        advisor = new PresetAdvisor(list, presetList, 1.0 * GB, 18);
+        assertEquals("slow", advisor.select("mpeg4", 576, 4 * GB, Duration.ofHours(1)));
+        for (int i = 0; i < PresetAdvisor.MIN_SAMPLES; i++) {
+            advisor.add(new Sample(Instant.now(), Paths.get("/movies/a.avi"), "mpeg4", 720, 576, null, 4 * GB, Duration.ofHours(1), "slow", 18,
+                    Duration.ofHours(1), null, GB));
+        }
+        assertEquals("veryslow", advisor.select("mpeg4", 576, 4 * GB, Duration.ofHours(1)));
+    }
+}
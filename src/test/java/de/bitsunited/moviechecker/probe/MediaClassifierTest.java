@@ -0,0 +1,68 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.probe;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+import de.bitsunited.moviechecker.probe.MediaClassifier.Kind;
+
+public class MediaClassifierTest {
+
+    private static final Path DIRECTORY = Paths.get("target/tmp/classify").toAbsolutePath();
+
+    @Test
+    public void testHeaders() {
+        assertEquals(Kind.MEDIA, MediaClassifier.classify(new byte[] { 0x1A, 0x45, (byte) 0xDF, (byte) 0xA3, (byte) 0x9F, 0x42, (byte) 0x86 }));
+        assertEquals(Kind.MEDIA, MediaClassifier.classify(new byte[] { 0x00, 0x00, 0x00, 0x20, 'f', 't', 'y', 'p', 'i', 's', 'o', 'm' }));
+        assertEquals(Kind.MEDIA, MediaClassifier.classify(new byte[] { 'R', 'I', 'F', 'F', 0x10, 0x00, 0x00, 0x00, 'A', 'V', 'I', ' ' }));
+
+        byte[] transportStream = new byte[MediaClassifier.HEADER_SIZE];
+        for (int i = 0; i < transportStream.length; i += 188) {
+            transportStream[i] = 0x47;
+        }
+        assertEquals(Kind.MEDIA, MediaClassifier.classify(transportStream));
+
+        assertEquals(Kind.NON_MEDIA, MediaClassifier.classify(new byte[] { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0x00, 0x10 }));
+        assertEquals(Kind.NON_MEDIA, MediaClassifier.classify("1\r\n00:00:01,000 --> 00:00:02,000\r\nHallo Welt\r\n".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(Kind.UNKNOWN, MediaClassifier.classify(new byte[] { 0x12, 0x34, 0x00, 0x56 }));
+        assertEquals(Kind.UNKNOWN, MediaClassifier.classify(new byte[0]));
+    }
+
+    @Test
+    public void testFiles() throws IOException {
+        Files.createDirectories(DIRECTORY);
+        Path nfo = DIRECTORY.resolve("movie.nfo");
+        Files.write(nfo, new byte[] { 0x00, 0x01 });
+        Path dsStore = DIRECTORY.resolve(".DS_Store");
+        Files.write(dsStore, new byte[] { 0x00, 0x00, 0x00, 0x01, 'B', 'u', 'd', '1' });
+        Path sample = DIRECTORY.resolve("sample.bin");
+        Files.write(sample, "<html></html>".getBytes(StandardCharsets.US_ASCII));
+
+        assertEquals(Kind.NON_MEDIA, new MediaClassifier(true).classify(nfo, Files.size(nfo)));
+        assertEquals(Kind.UNKNOWN, new MediaClassifier(false).classify(nfo, Files.size(nfo)));
+        assertEquals(Kind.NON_MEDIA, new MediaClassifier(true).classify(dsStore, Files.size(dsStore)));
+        assertEquals(Kind.UNKNOWN, new MediaClassifier(false).classify(dsStore, Files.size(dsStore)));
+        assertEquals(Kind.NON_MEDIA, new MediaClassifier(false).classify(sample, Files.size(sample)));
+        assertEquals(Kind.NON_MEDIA, new MediaClassifier(false).classify(sample, 0));
+    }
+}
@@ -0,0 +1,135 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.probe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProbeTiersTest {
+
+    private static final Path TIERS_PATH = Paths.get("target/tmp/probe/probe-tiers.tsv").toAbsolutePath();
+
+    private static final String COMPLETE = "Input #0, avi, from 'movie.avi':\n" //
+            + "  Duration: 01:30:00.00, start: 0.000000, bitrate: 1200 kb/s\n" //
+            + "    Stream #0:0: Video: mpeg4 (Advanced Simple Profile) (XVID / 0x44495658), yuv420p, 720x400, 25 fps\n" //
+            + "    Stream #0:1: Audio: mp3 (U[0][0][0] / 0x0055), 48000 Hz, stereo, fltp, 128 kb/s\n";
+
+    private static final String INCOMPLETE = "Input #0, mpegts, from 'movie.ts':\n" //
+            + "  Duration: 01:30:00.00, start: 0.000000, bitrate: 8000 kb/s\n" //
+            + "    Stream #0:0[0x100]: Video: h264 ([27][0][0][0] / 0x001B), none, 90k tbr, 90k tbn\n" //
+            + "    Stream #0:1[0x101](ger): Audio: ac3 ([129][0][0][0] / 0x0081), 0 channels\n";
+
+    private ProbeTiers testee;
+
+    @Before
+    public void setup() throws IOException {
+        Files.createDirectories(TIERS_PATH.getParent());
+        Files.deleteIfExists(TIERS_PATH);
+        testee = new ProbeTiers(TIERS_PATH);
+    }
+
+    @Test
+    public void testIsComplete() {
+        assertTrue(ProbeTiers.isComplete(COMPLETE, MediaInfo.parse(COMPLETE)));
+        assertFalse(ProbeTiers.isComplete(INCOMPLETE, MediaInfo.parse(INCOMPLETE)));
+        String unspecified = COMPLETE + "[mpeg4 @ 0x1] Could not find codec parameters for stream 0 (Video: mpeg4, none): unspecified size\n";
+        assertFalse(ProbeTiers.isComplete(unspecified, MediaInfo.parse(unspecified)));
+        assertFalse(ProbeTiers.isComplete("movie.txt: Invalid data found when processing input", null));
+        // ffprobe warns about the duration of every AVI or transport stream, and silent files never get an audio stream
+        String estimated = "[mp3 @ 0x1] Estimating duration from bitrate, this may be inaccurate\n" + COMPLETE;
+        assertTrue(ProbeTiers.isComplete(estimated, MediaInfo.parse(estimated)));
+        String noAudio = COMPLETE.substring(0, COMPLETE.indexOf("    Stream #0:1"));
+        assertTrue(ProbeTiers.isComplete(noAudio, MediaInfo.parse(noAudio)));
+    }
+
+    @Test
+    public void testEscalation() throws IOException, InterruptedException {
+        Path file = TIERS_PATH.resolveSibling("movie.ts");
+        Files.write(file, new byte[16]);
+        String estimated = "[mp2 @ 0x1] Estimating duration from bitrate, this may be inaccurate\n" + COMPLETE;
+        String unspecified = COMPLETE + "[mpeg4 @ 0x1] Could not find codec parameters for stream 0 (Video: mpeg4, none): unspecified size\n";
+
+        // A warning that more data never clears does not escalate
+        List<String> probeSizes = new ArrayList<>();
+        stubProber(probeSizes, estimated, estimated).probe(file);
+        assertEquals(1, probeSizes.size());
+
+        // A deeper probe that finds the same streams stops, and the lower tier counts as enough
+        for (int i = 0; i < ProbeTiers.MIN_ATTEMPTS; i++) {
+            probeSizes.clear();
+            stubProber(probeSizes, unspecified, unspecified, unspecified).probe(file);
+            assertEquals(2, probeSizes.size());
+        }
+        assertEquals(0, testee.getStartTier("ts"));
+
+        // Escalation goes on while more data adds details
+        probeSizes.clear();
+        stubProber(probeSizes, INCOMPLETE, COMPLETE).probe(file);
+        assertEquals(2, probeSizes.size());
+        assertEquals(testee.getOptions(1)[1], probeSizes.get(1));
+    }
+
+    // Returns the outputs tier by tier and records the probe sizes
+    private Prober stubProber(List<String> probeSizes, String... errOuts) {
+        Prober prober = new Prober() {
+            @Override
+            ProbeOutput runFfprobe(Path file, String[] options) {
+                probeSizes.add(options[1]);
+                return new ProbeOutput("", errOuts[probeSizes.size() - 1]);
+            }
+        };
+        prober.setNativeParsing(false);
+        prober.setTiers(testee);
+        return prober;
+    }
+
+    @Test
+    public void testStartTier() throws IOException {
+        assertEquals("ts", ProbeTiers.getContainer(Paths.get("/movies/Movie.TS")));
+
+        // Every tier is tried often enough before it is skipped
+        for (int i = 0; i < ProbeTiers.MIN_ATTEMPTS - 1; i++) {
+            testee.record("ts", 0, false);
+            testee.record("avi", 0, true);
+        }
+        assertEquals(0, testee.getStartTier("ts"));
+        testee.record("ts", 0, false);
+        assertEquals(1, testee.getStartTier("ts"));
+        assertEquals(0, testee.getStartTier("avi"));
+        assertEquals(0, testee.getStartTier("mkv"));
+
+        for (int i = 0; i < ProbeTiers.MIN_ATTEMPTS; i++) {
+            testee.record("ts", 1, i == 0);
+        }
+        assertEquals(2, testee.getStartTier("ts"));
+
+        testee.save();
+        testee = new ProbeTiers(TIERS_PATH);
+        testee.load();
+        assertEquals(2, testee.getStartTier("ts"));
+        assertEquals(0, testee.getStartTier("avi"));
+    }
+}
@@ -0,0 +1,180 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.probe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProberTest {
+
+    private static final Path DIRECTORY = Paths.get("target/tmp/probe").toAbsolutePath();
+
+    private Prober testee;
+
+    @Before
+    public void setup() throws IOException {
+        Files.createDirectories(DIRECTORY);
+        testee = new Prober();
+    }
+
+    @Test
+    public void testMatroska() throws IOException {
+        byte[] header = ebml(0x1A45DFA3, ebml(0x4282, "matroska".getBytes(StandardCharsets.US_ASCII)));
+        byte[] info = ebml(0x1549A966, ebml(0x2AD7B1, 0x0F, 0x42, 0x40), ebml(0x4489, float64(5025000.0)));
+        byte[] video = ebml(0xAE, ebml(0x83, 1), ebml(0x86, ascii("V_MPEG4/ISO/AVC")), ebml(0xE0, ebml(0xB0, 0x07, 0x80), ebml(0xBA, 0x04, 0x38)));
+        byte[] audio = ebml(0xAE, ebml(0x83, 2), ebml(0x86, ascii("A_AC3")), ebml(0x22B59C, ascii("ger")),
+                ebml(0xE1, ebml(0xB5, float64(48000.0)), ebml(0x9F, 6)));
+        byte[] subtitle = ebml(0xAE, ebml(0x83, 17), ebml(0x86, ascii("S_TEXT/UTF8")));
+        byte[] cluster = concat(bytes(0x1F, 0x43, 0xB6, 0x75, 0x01, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF), new byte[64]);
+        byte[] segment = ebml(0x18538067, info, ebml(0x1654AE6B, video, audio, subtitle), cluster);
+
+        Path file = DIRECTORY.resolve("movie.mkv");
+        Files.write(file, concat(header, segment));
+
+        assertEquals("Input #0, matroska,webm, from '" + file + "':\n" //
+                + "  Duration: 01:23:45.00, start: 0.000000, bitrate: N/A\n" //
+                + "    Stream #0:0(eng): Video: h264, 1920x1080\n" //
+                + "    Stream #0:1(ger): Audio: ac3, 48000 Hz, 6 channels\n" //
+                + "    Stream #0:2(eng): Subtitle: subrip", testee.parse(file).toFfprobeOutput(file));
+    }
+
+    @Test
+    public void testMatroskaUnknownCodec() throws IOException {
+        byte[] header = ebml(0x1A45DFA3, ebml(0x4282, ascii("matroska")));
+        byte[] video = ebml(0xAE, ebml(0x83, 1), ebml(0x86, ascii("V_REAL/RV40")));
+        byte[] segment = ebml(0x18538067, ebml(0x1654AE6B, video));
+
+        Path file = DIRECTORY.resolve("unknown.mkv");
+        Files.write(file, concat(header, segment));
+
+        assertNull(testee.parse(file));
+    }
+
+    @Test
+    public void testMp4() throws IOException {
+        byte[] ftyp = box("ftyp", ascii("isom"), new byte[4], ascii("isommp42"));
+        byte[] mdat = box("mdat", new byte[32]);
+        byte[] mvhd = box("mvhd", new byte[12], int32(1000), int32(5025000), new byte[80]);
+
+        byte[] videoEntry = box("avc1", new byte[24], int16(1280), int16(720), new byte[50]);
+        byte[] videoTrack = track("vide", 0x55C4, videoEntry);
+
+        byte[] esds = box("esds", new byte[4], bytes(0x03, 0x19, 0x00, 0x01, 0x00, 0x04, 0x11, 0x40), new byte[20]);
+        byte[] audioEntry = box("mp4a", new byte[8], new byte[8], int16(2), int16(16), new byte[4], int16(44100), new byte[2], esds);
+        byte[] audioTrack = track("soun", 0x15C7, audioEntry);
+
+        Path file = DIRECTORY.resolve("movie.mp4");
+        Files.write(file, concat(ftyp, mdat, box("moov", mvhd, videoTrack, audioTrack)));
+
+        assertEquals("Input #0, mov,mp4,m4a,3gp,3g2,mj2, from '" + file + "':\n" //
+                + "  Duration: 01:23:45.00, start: 0.000000, bitrate: N/A\n" //
+                + "    Stream #0:0(und): Video: h264, 1280x720\n" //
+                + "    Stream #0:1(eng): Audio: aac, 44100 Hz, 2 channels", testee.parse(file).toFfprobeOutput(file));
+    }
+
+    @Test
+    public void testOtherFormat() throws IOException {
+        Path file = DIRECTORY.resolve("movie.avi");
+        Files.write(file, concat(ascii("RIFF"), new byte[4], ascii("AVI LIST"), new byte[64]));
+
+        assertNull(testee.parse(file));
+    }
+
+    private static byte[] track(String handler, int language, byte[] sampleEntry) throws IOException {
+        byte[] mdhd = box("mdhd", new byte[20], int16(language), new byte[2]);
+        byte[] hdlr = box("hdlr", new byte[8], ascii(handler), new byte[13]);
+        byte[] stsd = box("stsd", new byte[4], int32(1), sampleEntry);
+        return box("trak", box("tkhd", new byte[84]), box("mdia", mdhd, hdlr, box("minf", box("stbl", stsd))));
+    }
+
+    private static byte[] ebml(int id, byte[]... payloads) throws IOException {
+        byte[] payload = concat(payloads);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(out);
+        if (id > 0xFFFFFF) {
+            data.writeInt(id);
+        } else if (id > 0xFFFF) {
+            data.write(id >> 16);
+            data.writeShort(id);
+        } else if (id > 0xFF) {
+            data.writeShort(id);
+        } else {
+            data.write(id);
+        }
+        // Eight byte size
+        data.write(0x01);
+        data.write(new byte[3]);
+        data.writeInt(payload.length);
+        data.write(payload);
+        return out.toByteArray();
+    }
+
+    private static byte[] ebml(int id, int... values) throws IOException {
+        return ebml(id, bytes(values));
+    }
+
+    private static byte[] box(String type, byte[]... payloads) throws IOException {
+        byte[] payload = concat(payloads);
+        return concat(int32(payload.length + 8), ascii(type), payload);
+    }
+
+    private static byte[] concat(byte[]... arrays) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] array : arrays) {
+            out.write(array);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] int16(int value) {
+        return bytes(value >> 8, value);
+    }
+
+    private static byte[] int32(int value) {
+        return bytes(value >> 24, value >> 16, value >> 8, value);
+    }
+
+    private static byte[] float64(double value) {
+        long bits = Double.doubleToLongBits(value);
+        byte[] bytes = new byte[8];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (bits >> (56 - 8 * i));
+        }
+        return bytes;
+    }
+}
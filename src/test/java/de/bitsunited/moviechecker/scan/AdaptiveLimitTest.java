@@ -0,0 +1,73 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.scan;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class AdaptiveLimitTest {
+
+    private static final long MS = 1000000;
+
+    @Test
+    public void testIncreaseWhileFlat() {
+        AdaptiveLimit testee = new AdaptiveLimit(2, 4, null);
+
+        long now = 0;
+        for (int i = 0; i < 20; i++) {
+            now += 100 * MS;
+            testee.onSample(100 * MS, now);
+        }
+        assertEquals(4, testee.getLimit());
+    }
+
+    @Test
+    public void testDecreaseOnLatency() {
+        AdaptiveLimit testee = new AdaptiveLimit(4, 8, null);
+
+        long now = 0;
+        for (int i = 0; i < 4; i++) {
+            now += 25 * MS;
+            testee.onSample(100 * MS, now);
+        }
+        assertEquals(5, testee.getLimit());
+
+        for (int i = 0; i < 5; i++) {
+            now += 20 * MS;
+            testee.onSample(300 * MS, now);
+        }
+        assertEquals(3, testee.getLimit());
+    }
+
+    @Test
+    public void testDecreaseOnThroughput() {
+        AdaptiveLimit testee = new AdaptiveLimit(2, 8, null);
+
+        long now = 0;
+        for (int i = 0; i < 2; i++) {
+            now += 50 * MS;
+            testee.onSample(100 * MS, now);
+        }
+        assertEquals(3, testee.getLimit());
+
+        // Same latency, but the additional probe halves the throughput
+        for (int i = 0; i < 3; i++) {
+            now += 100 * MS;
+            testee.onSample(100 * MS, now);
+        }
+        assertEquals(2, testee.getLimit());
+    }
+}
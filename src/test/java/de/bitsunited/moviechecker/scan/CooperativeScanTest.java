@@ -0,0 +1,100 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.scan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.bitsunited.moviechecker.Database;
+
+public class CooperativeScanTest {
+
+    private static final Path DIRECTORY = Paths.get("target/tmp/cooperative").toAbsolutePath();
+
+    private static final Path WORK_DIRECTORY = DIRECTORY.resolve("work");
+
+    private static final Path MOVIES_A = DIRECTORY.resolve("movies/a");
+
+    private static final Path MOVIES_B = DIRECTORY.resolve("movies/b");
+
+    @Before
+    public void setup() throws IOException {
+        if (Files.isDirectory(DIRECTORY)) {
+            try (Stream<Path> stream = Files.walk(DIRECTORY)) {
+                for (Path path : stream.sorted(Collections.reverseOrder()).toArray(Path[]::new)) {
+                    Files.delete(path);
+                }
+            }
+        }
+        Files.createDirectories(MOVIES_A);
+        Files.createDirectories(MOVIES_B);
+    }
+
+    @Test
+    public void testMerge() throws IOException {
+        Path x = write(MOVIES_A.resolve("x.nfo"));
+        Path old = write(MOVIES_A.resolve("old.nfo"));
+        Path y = write(MOVIES_B.resolve("y.nfo"));
+
+        Database database = new Database(DIRECTORY.resolve("db.xml"), null);
+        assertEquals(2, scan(database));
+        assertTrue(database.containsNonMedia(x));
+        assertTrue(database.containsNonMedia(old));
+        assertTrue(database.containsNonMedia(y));
+
+        // Deleted files leave the database on the next merge, the known files of the units stay
+        Files.delete(old);
+        Path gone = MOVIES_B.resolve("gone.mkv");
+        database.addEntry(gone, Instant.now(), "", "");
+        assertEquals(2, scan(database));
+        assertTrue(database.containsNonMedia(x));
+        assertFalse(database.containsNonMedia(old));
+        assertTrue(database.containsNonMedia(y));
+        assertFalse(database.containsEntry(gone));
+    }
+
+    // Two workers scan disjoint roots with the same lease directory, then the results are merged
+    private static int scan(Database database) throws IOException {
+        ProbeScheduler scheduler = new ProbeScheduler(1, Collections.emptyMap());
+        try {
+            LeaseDirectory worker1 = new LeaseDirectory(WORK_DIRECTORY, "worker1", Duration.ofMinutes(10));
+            LeaseDirectory worker2 = new LeaseDirectory(WORK_DIRECTORY, "worker2", Duration.ofMinutes(10));
+            new CooperativeScan(MOVIES_A, worker1, scheduler).scan(database);
+            new CooperativeScan(MOVIES_B, worker2, scheduler).scan(database);
+            return CooperativeScan.merge(database, worker1);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    private static Path write(Path file) throws IOException {
+        Files.write(file, "Plot".getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,69 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.scan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.bitsunited.moviechecker.Database;
+import de.bitsunited.moviechecker.scan.Result.ResultState;
+
+public class FileListScanTest {
+
+    private static final Path DIRECTORY = Paths.get("target/tmp/filelist").toAbsolutePath();
+
+    @Test
+    public void testReadPaths() throws IOException {
+        List<String> list = new ArrayList<>();
+        FileListScan.readPaths(new StringReader("a b.mkv\r\n\nc.mkv"), '\n', list::add);
+        assertEquals(Arrays.asList("a b.mkv", "c.mkv"), list);
+
+        list.clear();
+        FileListScan.readPaths(new StringReader("line\nbreak.mkv\0d.mkv\0"), '\0', list::add);
+        assertEquals(Arrays.asList("line\nbreak.mkv", "d.mkv"), list);
+    }
+
+    @Test
+    public void testScan() throws IOException {
+        Files.createDirectories(DIRECTORY);
+        Path info = DIRECTORY.resolve("movie.nfo");
+        Files.write(info, "Plot".getBytes(StandardCharsets.UTF_8));
+
+        Database database = new Database(DIRECTORY.resolve("db.xml"), null);
+        ProbeScheduler scheduler = new ProbeScheduler(1, Collections.emptyMap());
+        String list = info + "\n" + DIRECTORY.resolve("missing.mkv") + "\n" + DIRECTORY.resolve(".").resolve("movie.nfo") + "\n";
+        Result result = new FileListScan(database, scheduler, 2).scan(new StringReader(list), false);
+        scheduler.shutdown();
+
+        // The second path of the same file is skipped, missing files are left out
+        assertEquals(1, result.getCount(ResultState.NON_MEDIA));
+        assertEquals(1, result.getCount(ResultState.SKIPPED));
+        assertEquals(0, result.getCount(ResultState.EXCEPTION));
+        assertTrue(database.containsNonMedia(info));
+    }
+}
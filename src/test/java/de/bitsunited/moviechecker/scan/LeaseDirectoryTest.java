@@ -0,0 +1,97 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.scan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.bitsunited.moviechecker.scan.LeaseDirectory.Lease;
+import de.bitsunited.moviechecker.scan.LeaseDirectory.LeaseState;
+
+public class LeaseDirectoryTest {
+
+    private static final Path WORK_DIRECTORY = Paths.get("target/tmp/work");
+
+    private static final WorkUnit UNIT = new WorkUnit(Paths.get("target/tmp/movies/show"), true);
+
+    @Before
+    public void setup() throws IOException {
+        if (Files.isDirectory(WORK_DIRECTORY.resolve("leases"))) {
+            for (Path file : Files.list(WORK_DIRECTORY.resolve("leases")).toArray(Path[]::new)) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testClaim() throws IOException {
+        LeaseDirectory worker1 = new LeaseDirectory(WORK_DIRECTORY, "worker1", Duration.ofMinutes(10));
+        LeaseDirectory worker2 = new LeaseDirectory(WORK_DIRECTORY, "worker2", Duration.ofMinutes(10));
+
+        assertTrue(worker1.claim(UNIT));
+        assertFalse(worker2.claim(UNIT));
+        assertTrue(worker1.renew(UNIT));
+        assertFalse(worker2.renew(UNIT));
+
+        List<Lease> list = worker2.list();
+        assertEquals(1, list.size());
+        assertEquals(UNIT, list.get(0).getUnit());
+        assertEquals("worker1", list.get(0).getOwner());
+        assertEquals(LeaseState.ACTIVE, list.get(0).getState());
+    }
+
+    @Test
+    public void testClaimExpired() throws IOException, InterruptedException {
+        LeaseDirectory worker1 = new LeaseDirectory(WORK_DIRECTORY, "worker1", Duration.ofMillis(10));
+        LeaseDirectory worker2 = new LeaseDirectory(WORK_DIRECTORY, "worker2", Duration.ofMinutes(10));
+
+        assertTrue(worker1.claim(UNIT));
+        Thread.sleep(50);
+
+        assertTrue(worker2.claim(UNIT));
+        assertFalse(worker1.renew(UNIT));
+        assertFalse(worker1.complete(UNIT));
+    }
+
+    @Test
+    public void testComplete() throws IOException {
+        LeaseDirectory worker1 = new LeaseDirectory(WORK_DIRECTORY, "worker1", Duration.ofMillis(10));
+        LeaseDirectory worker2 = new LeaseDirectory(WORK_DIRECTORY, "worker2", Duration.ofMinutes(10));
+
+        assertTrue(worker1.claim(UNIT));
+        assertTrue(worker1.complete(UNIT));
+
+        assertFalse(worker2.claim(UNIT));
+        assertFalse(worker1.claim(UNIT));
+
+        List<Lease> list = worker2.list();
+        assertEquals(1, list.size());
+        assertEquals(LeaseState.DONE, list.get(0).getState());
+
+        worker2.delete(list.get(0));
+        assertTrue(worker2.claim(UNIT));
+    }
+}
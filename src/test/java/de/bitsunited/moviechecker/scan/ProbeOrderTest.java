@@ -0,0 +1,136 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.scan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.bitsunited.moviechecker.Database;
+import de.bitsunited.moviechecker.probe.ProbeOutput;
+import de.bitsunited.moviechecker.probe.Prober;
+
+public class ProbeOrderTest {
+
+    private static final Path DIRECTORY = Paths.get("target/tmp/order").toAbsolutePath();
+
+    // Only the order is tested, the probes return at once
+    private static final Prober STUB_PROBER = new Prober() {
+        @Override
+        public ProbeOutput probe(Path file) {
+            return new ProbeOutput("", "");
+        }
+    };
+
+    private Database database;
+
+    @Before
+    public void setup() throws IOException {
+        Files.createDirectories(DIRECTORY);
+        database = new Database(DIRECTORY.resolve("db.xml"), null);
+    }
+
+    @Test
+    public void testValueOrder() throws IOException {
+        FileCheck changedSmall = prepare("changed-small.mkv", 10, Instant.parse("2016-01-01T00:00:00Z"));
+        FileCheck changedOld = prepare("changed-old.mkv", 10, Instant.parse("2015-01-01T00:00:00Z"));
+        FileCheck changedLarge = prepare("changed-large.mkv", 1000, Instant.parse("2016-01-01T00:00:00Z"));
+        FileCheck newSmall = prepare("new-small.mkv", 10, null);
+        FileCheck newLarge = prepare("new-large.mkv", 1000, null);
+
+        List<FileCheck> list = new ArrayList<>(Arrays.asList(changedSmall, changedOld, newSmall, changedLarge, newLarge));
+        list.sort(ProbeOrder.VALUE.getComparator());
+
+        assertEquals(Arrays.asList(newLarge, newSmall, changedLarge, changedOld, changedSmall), list);
+    }
+
+    @Test
+    public void testLocalityOrder() throws IOException {
+        assertEquals(1234L, ProbeOrder.getInode("(dev=801,ino=1234)"));
+        assertEquals(Long.MAX_VALUE, ProbeOrder.getInode(null));
+
+        FileCheck b2 = prepare("b/2.mkv", 10, null);
+        FileCheck a1 = prepare("a/1.mkv", 10, null);
+        FileCheck b1 = prepare("b/1.mkv", 10, null);
+
+        List<FileCheck> list = new ArrayList<>(Arrays.asList(b2, a1, b1));
+        list.sort(ProbeOrder.LOCALITY.getComparator());
+
+        assertEquals(a1, list.get(0));
+        assertEquals(ProbeOrder.getInode(b1.getFileKey()) < ProbeOrder.getInode(b2.getFileKey()) ? b1 : b2, list.get(1));
+    }
+
+    @Test
+    public void testSweep() throws IOException {
+        List<Runnable> started = new ArrayList<>();
+        ProbeQueue queue = new ProbeQueue("test", 1, started::add);
+        queue.setOrder(ProbeOrder.LOCALITY);
+
+        FileCheck d5 = prepare("d5/movie.mkv", 10, null);
+        FileCheck d2 = prepare("d2/movie.mkv", 10, null);
+        FileCheck d7 = prepare("d7/movie.mkv", 10, null);
+        FileCheck d9 = prepare("d9/movie.mkv", 10, null);
+        FileCheck d6 = prepare("d6/movie.mkv", 10, null);
+
+        List<CompletableFuture<Result>> futureList = new ArrayList<>();
+        futureList.add(queue.submit(d5));
+        futureList.add(queue.submit(d2));
+        futureList.add(queue.submit(d7));
+        futureList.add(queue.submit(d9));
+        assertEquals(Arrays.asList(true, false, false, false), run(started, futureList));
+        assertEquals(Arrays.asList(true, false, true, false), run(started, futureList));
+
+        // Behind the cursor, waits for the next sweep
+        futureList.add(queue.submit(d6));
+        assertEquals(Arrays.asList(true, false, true, true, false), run(started, futureList));
+        assertEquals(Arrays.asList(true, true, true, true, false), run(started, futureList));
+        assertEquals(Arrays.asList(true, true, true, true, true), run(started, futureList));
+        assertEquals(2, queue.getSweeps());
+    }
+
+    private static List<Boolean> run(List<Runnable> started, List<CompletableFuture<Result>> futureList) {
+        started.remove(0).run();
+        List<Boolean> doneList = new ArrayList<>();
+        futureList.forEach(f -> doneList.add(f.isDone()));
+        return doneList;
+    }
+
+    private FileCheck prepare(String name, int size, Instant recordedTime) throws IOException {
+        Path file = DIRECTORY.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[size]);
+        if (recordedTime != null) {
+            database.addEntry(file, recordedTime, "", "");
+        } else {
+            database.removeEntry(file);
+        }
+
+        FileCheck check = new FileCheck(file, database, STUB_PROBER);
+        assertTrue(check.prepare());
+        return check;
+    }
+}
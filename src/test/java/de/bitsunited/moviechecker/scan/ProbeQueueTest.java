@@ -0,0 +1,97 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.scan;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.bitsunited.moviechecker.scan.Result.ResultState;
+
+public class ProbeQueueTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setup() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testLimit() {
+        ProbeQueue testee = new ProbeQueue("test", 2, executor);
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<CompletableFuture<Result>> list = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            list.add(testee.submit(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                running.decrementAndGet();
+                return ResultState.NEW.getResult();
+            }));
+        }
+
+        Result result = Result.ofFutures(list);
+        assertEquals(10, result.getCount(ResultState.NEW));
+        assertEquals(2, maxRunning.get());
+        assertEquals(10, testee.getCompleted());
+        assertEquals(0, testee.getInFlight());
+    }
+
+    @Test
+    public void testDeadline() throws InterruptedException {
+        ProbeQueue testee = new ProbeQueue("test", 1, executor);
+        testee.setDeadline(Instant.now().plusMillis(200));
+
+        List<CompletableFuture<Result>> list = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            list.add(testee.submit(() -> {
+                try {
+                    Thread.sleep(150);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return ResultState.NEW.getResult();
+            }));
+        }
+
+        Result result = Result.ofFutures(list);
+        assertEquals(2, result.getCount(ResultState.NEW));
+        assertEquals(3, result.getCount(ResultState.SKIPPED));
+        assertEquals(3, testee.getSkipped());
+    }
+}
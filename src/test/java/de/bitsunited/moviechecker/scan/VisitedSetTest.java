@@ -0,0 +1,67 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.scan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class VisitedSetTest {
+
+    private static final Path DIRECTORY = Paths.get("target/tmp/visited").toAbsolutePath();
+
+    private static final Path SHOW = DIRECTORY.resolve("show");
+
+    @Before
+    public void setup() throws IOException {
+        Files.createDirectories(SHOW);
+        Files.deleteIfExists(SHOW.resolve("loop"));
+        Files.deleteIfExists(SHOW.resolve("link.mkv"));
+        Files.deleteIfExists(SHOW.resolve("1.mkv"));
+        Files.write(SHOW.resolve("1.mkv"), new byte[] { 1 });
+    }
+
+    @Test
+    public void testSymlinkLoop() throws IOException {
+        Path loop = Files.createSymbolicLink(SHOW.resolve("loop"), DIRECTORY);
+
+        VisitedSet visited = new VisitedSet();
+        assertTrue(visited.visitDirectory(DIRECTORY));
+        assertTrue(visited.visitDirectory(SHOW));
+        assertFalse(visited.visitDirectory(loop));
+        assertFalse(visited.visitDirectory(loop.resolve("show")));
+        assertEquals(2, visited.getDirectoryCount());
+    }
+
+    @Test
+    public void testHardLink() throws IOException {
+        Path file = SHOW.resolve("1.mkv");
+        Path link = Files.createLink(SHOW.resolve("link.mkv"), file);
+
+        VisitedSet visited = new VisitedSet();
+        assertTrue(visited.visitFile(file, Files.readAttributes(file, BasicFileAttributes.class)));
+        assertFalse(visited.visitFile(link, Files.readAttributes(link, BasicFileAttributes.class)));
+        assertEquals(1, visited.getFileCount());
+    }
+}
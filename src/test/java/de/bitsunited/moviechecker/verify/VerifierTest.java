@@ -0,0 +1,117 @@
+//   Copyright 2016 @bitsunited
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+//
+package de.bitsunited.moviechecker.verify;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.bitsunited.moviechecker.Database;
+
+public class VerifierTest {
+
+    private static final Path DIRECTORY = Paths.get("target/tmp/verify").toAbsolutePath();
+
+    private static final Path P1 = DIRECTORY.resolve("1.mkv");
+
+    private static final Path P2 = DIRECTORY.resolve("2.mkv");
+
+    private Database database;
+
+    @Before
+    public void setup() throws IOException {
+        Files.createDirectories(DIRECTORY);
+        Files.write(P1, "first movie".getBytes(StandardCharsets.UTF_8));
+        Files.write(P2, "second movie".getBytes(StandardCharsets.UTF_8));
+
+        database = new Database(DIRECTORY.resolve("db.xml"), null);
+        database.addEntry(P1, Instant.now(), "", "");
+        database.addEntry(P2, Instant.now(), "", "");
+    }
+
+    @Test
+    public void testDigest() throws IOException, InterruptedException {
+        // SHA-256 of "abc", read in blocks smaller than the file
+        Path path = DIRECTORY.resolve("abc.txt");
+        Files.write(path, "abc".getBytes(StandardCharsets.UTF_8));
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", new FileHasher(2).digest(path, null));
+    }
+
+    @Test
+    public void testVerify() throws IOException {
+        Verifier verifier = new Verifier(database, 2, 1, null);
+        List<Verifier.Outcome> outcomeList = verifier.verify(Arrays.asList(P1, P2));
+        assertEquals(Verifier.Status.HASHED, outcomeList.get(0).getStatus());
+        assertEquals(Verifier.Status.HASHED, outcomeList.get(1).getStatus());
+
+        outcomeList = verifier.verify(Arrays.asList(P1, P2));
+        assertEquals(Verifier.Status.OK, outcomeList.get(0).getStatus());
+        assertEquals(11, outcomeList.get(0).getSize());
+
+        // Same modification time with different content is reported, a new modification time is accepted
+        FileTime time1 = Files.getLastModifiedTime(P1);
+        Files.write(P1, "first movie, damaged".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(P1, time1);
+        Files.write(P2, "second movie, recut".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(P2, FileTime.from(Files.getLastModifiedTime(P2).toInstant().plusSeconds(60)));
+
+        outcomeList = verifier.verify(Arrays.asList(P1, P2, DIRECTORY.resolve("missing.mkv")));
+        assertEquals(Verifier.Status.MISMATCH, outcomeList.get(0).getStatus());
+        assertEquals(Verifier.Status.CHANGED, outcomeList.get(1).getStatus());
+        assertEquals(Verifier.Status.MISSING, outcomeList.get(2).getStatus());
+
+        // The recorded digest is kept for a mismatch
+        outcomeList = verifier.verify(Arrays.asList(P1, P2));
+        assertEquals(Verifier.Status.MISMATCH, outcomeList.get(0).getStatus());
+        assertEquals(Verifier.Status.OK, outcomeList.get(1).getStatus());
+    }
+
+    @Test
+    public void testSameTimeOtherSize() throws IOException {
+        database.addEntry(P1, Instant.now(), Files.size(P1), null, "", "");
+        Verifier verifier = new Verifier(database, 1, 1, null);
+        assertEquals(Verifier.Status.HASHED, verifier.verify(Arrays.asList(P1)).get(0).getStatus());
+
+        // Same size is damage, a new size is a rewrite that kept the modification time
+        FileTime time1 = Files.getLastModifiedTime(P1);
+        Files.write(P1, "first MOVIE".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(P1, time1);
+        assertEquals(Verifier.Status.MISMATCH, verifier.verify(Arrays.asList(P1)).get(0).getStatus());
+
+        Files.write(P1, "first movie, recut".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(P1, time1);
+        assertEquals(Verifier.Status.CHANGED, verifier.verify(Arrays.asList(P1)).get(0).getStatus());
+    }
+
+    @Test
+    public void testThroughputLimit() {
+        ThroughputLimit limit = new ThroughputLimit(1000);
+        long now = System.nanoTime() + 1_000_000_000L;
+        assertEquals(0, limit.reserve(500, now));
+        assertEquals(500_000_000L, limit.reserve(500, now));
+        assertEquals(500_000_000L, limit.reserve(500, now + 500_000_000L));
+    }
+}